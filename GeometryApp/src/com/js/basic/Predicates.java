@@ -0,0 +1,287 @@
+package com.js.basic;
+
+/**
+ * Robust geometric predicates, after Shewchuk's "Adaptive Precision
+ * Floating-Point Arithmetic and Fast Robust Geometric Predicates".
+ *
+ * Each predicate first evaluates its determinant in double precision, along
+ * with a bound on the rounding error; if the result's magnitude exceeds the
+ * bound, its sign is certainly correct, and is returned. Only for nearly
+ * degenerate inputs is the determinant evaluated exactly, using floating
+ * point expansions (sums of nonoverlapping doubles). The returned value has
+ * the correct sign (including zero), and approximates the determinant
+ */
+public final class Predicates {
+
+  // Machine epsilon for doubles, and error bounds for the fast versions of
+  // the predicates
+  private static final double EPSILON = Math.ulp(1.0) / 2;
+  private static final double SPLITTER = (1 << 27) + 1;
+  private static final double ORIENT_ERROR_BOUND = (3 + 16 * EPSILON)
+      * EPSILON;
+  private static final double INCIRCLE_ERROR_BOUND = (10 + 96 * EPSILON)
+      * EPSILON;
+
+  /**
+   * Determine the orientation of three points
+   *
+   * @return positive if a, b, c are in CCW order (i.e., c is to the left of
+   *         the directed line ab), negative if CW, zero if collinear
+   */
+  public static double orient2d(Point a, Point b, Point c) {
+    return orient2d(a.x, a.y, b.x, b.y, c.x, c.y);
+  }
+
+  public static double orient2d(double ax, double ay, double bx, double by,
+      double cx, double cy) {
+    double detLeft = (ax - cx) * (by - cy);
+    double detRight = (ay - cy) * (bx - cx);
+    double det = detLeft - detRight;
+    double detSum;
+    if (detLeft > 0) {
+      if (detRight <= 0)
+        return det;
+      detSum = detLeft + detRight;
+    } else if (detLeft < 0) {
+      if (detRight >= 0)
+        return det;
+      detSum = -detLeft - detRight;
+    } else {
+      return det;
+    }
+    double errorBound = ORIENT_ERROR_BOUND * detSum;
+    if (det >= errorBound || -det >= errorBound)
+      return det;
+    return orient2dExact(ax, ay, bx, by, cx, cy);
+  }
+
+  /**
+   * Determine if a point lies within the circle through three others
+   *
+   * @param a
+   * @param b
+   * @param c
+   *          points in CCW order
+   * @param d
+   *          query point
+   * @return positive if d lies inside the circle through a, b, c; negative if
+   *         outside; zero if on it. The signs are reversed if a, b, c are in
+   *         CW order
+   */
+  public static double incircle(Point a, Point b, Point c, Point d) {
+    return incircle(a.x, a.y, b.x, b.y, c.x, c.y, d.x, d.y);
+  }
+
+  public static double incircle(double ax, double ay, double bx, double by,
+      double cx, double cy, double dx, double dy) {
+    double adx = ax - dx;
+    double bdx = bx - dx;
+    double cdx = cx - dx;
+    double ady = ay - dy;
+    double bdy = by - dy;
+    double cdy = cy - dy;
+
+    double bdxcdy = bdx * cdy;
+    double cdxbdy = cdx * bdy;
+    double alift = adx * adx + ady * ady;
+
+    double cdxady = cdx * ady;
+    double adxcdy = adx * cdy;
+    double blift = bdx * bdx + bdy * bdy;
+
+    double adxbdy = adx * bdy;
+    double bdxady = bdx * ady;
+    double clift = cdx * cdx + cdy * cdy;
+
+    double det = alift * (bdxcdy - cdxbdy) + blift * (cdxady - adxcdy) + clift
+        * (adxbdy - bdxady);
+    double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * alift
+        + (Math.abs(cdxady) + Math.abs(adxcdy)) * blift
+        + (Math.abs(adxbdy) + Math.abs(bdxady)) * clift;
+    double errorBound = INCIRCLE_ERROR_BOUND * permanent;
+    if (det > errorBound || -det > errorBound)
+      return det;
+    return incircleExact(ax, ay, bx, by, cx, cy, dx, dy);
+  }
+
+  private static double orient2dExact(double ax, double ay, double bx,
+      double by, double cx, double cy) {
+    double[] acx = difference(ax, cx);
+    double[] acy = difference(ay, cy);
+    double[] bcx = difference(bx, cx);
+    double[] bcy = difference(by, cy);
+    double[] det = sum(product(acx, bcy), negate(product(acy, bcx)));
+    return mostSignificant(det);
+  }
+
+  private static double incircleExact(double ax, double ay, double bx,
+      double by, double cx, double cy, double dx, double dy) {
+    double[] adx = difference(ax, dx);
+    double[] ady = difference(ay, dy);
+    double[] bdx = difference(bx, dx);
+    double[] bdy = difference(by, dy);
+    double[] cdx = difference(cx, dx);
+    double[] cdy = difference(cy, dy);
+
+    double[] alift = sum(product(adx, adx), product(ady, ady));
+    double[] blift = sum(product(bdx, bdx), product(bdy, bdy));
+    double[] clift = sum(product(cdx, cdx), product(cdy, cdy));
+
+    double[] bc = sum(product(bdx, cdy), negate(product(cdx, bdy)));
+    double[] ca = sum(product(cdx, ady), negate(product(adx, cdy)));
+    double[] ab = sum(product(adx, bdy), negate(product(bdx, ady)));
+
+    double[] det = sum(sum(product(alift, bc), product(blift, ca)),
+        product(clift, ab));
+    return mostSignificant(det);
+  }
+
+  // Expansion arithmetic. An expansion is an array of nonoverlapping doubles,
+  // in order of increasing magnitude, whose sum is the value represented;
+  // zero components are eliminated, so the last component (if any) has the
+  // sign of the value
+
+  private static double mostSignificant(double[] expansion) {
+    if (expansion.length == 0)
+      return 0;
+    return expansion[expansion.length - 1];
+  }
+
+  /**
+   * Calculate a - b exactly, as an expansion
+   */
+  private static double[] difference(double a, double b) {
+    double x = a - b;
+    double bVirtual = a - x;
+    double aVirtual = x + bVirtual;
+    double bRoundoff = bVirtual - b;
+    double aRoundoff = a - aVirtual;
+    double y = aRoundoff + bRoundoff;
+    return compress(y, x);
+  }
+
+  private static double[] compress(double low, double high) {
+    if (low == 0) {
+      if (high == 0)
+        return new double[0];
+      return new double[] { high };
+    }
+    return new double[] { low, high };
+  }
+
+  private static double[] negate(double[] e) {
+    double[] result = new double[e.length];
+    for (int i = 0; i < e.length; i++)
+      result[i] = -e[i];
+    return result;
+  }
+
+  /**
+   * Calculate the sum of two expansions, by adding each component of f to e
+   */
+  private static double[] sum(double[] e, double[] f) {
+    double[] result = e;
+    for (double component : f)
+      result = grow(result, component);
+    return result;
+  }
+
+  /**
+   * Add a double to an expansion
+   */
+  private static double[] grow(double[] e, double b) {
+    double[] h = new double[e.length + 1];
+    int length = 0;
+    double q = b;
+    for (double component : e) {
+      double x = q + component;
+      double bVirtual = x - q;
+      double aVirtual = x - bVirtual;
+      double bRoundoff = component - bVirtual;
+      double aRoundoff = q - aVirtual;
+      double y = aRoundoff + bRoundoff;
+      q = x;
+      if (y != 0)
+        h[length++] = y;
+    }
+    if (q != 0 || length == 0)
+      h[length++] = q;
+    return trim(h, length);
+  }
+
+  /**
+   * Calculate the product of two expansions, by summing the products of e with
+   * each component of f
+   */
+  private static double[] product(double[] e, double[] f) {
+    double[] result = new double[0];
+    for (double component : f)
+      result = sum(result, scale(e, component));
+    return result;
+  }
+
+  /**
+   * Multiply an expansion by a double
+   */
+  private static double[] scale(double[] e, double b) {
+    if (e.length == 0)
+      return e;
+    double[] h = new double[e.length * 2];
+    int length = 0;
+    double bHigh = splitHigh(b);
+    double bLow = b - bHigh;
+
+    double q = e[0] * b;
+    double y = productRoundoff(e[0], q, b, bHigh, bLow);
+    if (y != 0)
+      h[length++] = y;
+    for (int i = 1; i < e.length; i++) {
+      double product1 = e[i] * b;
+      double product0 = productRoundoff(e[i], product1, b, bHigh, bLow);
+
+      // q + product0
+      double sum = q + product0;
+      double bVirtual = sum - q;
+      double aVirtual = sum - bVirtual;
+      y = (q - aVirtual) + (product0 - bVirtual);
+      if (y != 0)
+        h[length++] = y;
+
+      // product1 + sum, where product1 has the larger magnitude
+      q = product1 + sum;
+      y = sum - (q - product1);
+      if (y != 0)
+        h[length++] = y;
+    }
+    if (q != 0 || length == 0)
+      h[length++] = q;
+    return trim(h, length);
+  }
+
+  private static double splitHigh(double a) {
+    double c = SPLITTER * a;
+    double aBig = c - a;
+    return c - aBig;
+  }
+
+  /**
+   * Calculate the rounding error of a product x = a * b
+   */
+  private static double productRoundoff(double a, double x, double b,
+      double bHigh, double bLow) {
+    double aHigh = splitHigh(a);
+    double aLow = a - aHigh;
+    double error1 = x - (aHigh * bHigh);
+    double error2 = error1 - (aLow * bHigh);
+    double error3 = error2 - (aHigh * bLow);
+    return (aLow * bLow) - error3;
+  }
+
+  private static double[] trim(double[] h, int length) {
+    if (length == h.length)
+      return h;
+    double[] result = new double[length];
+    System.arraycopy(h, 0, result, 0, length);
+    return result;
+  }
+}
@@ -0,0 +1,158 @@
+package com.js.geometry;
+
+import java.util.Arrays;
+
+import com.js.basic.GeometryException;
+
+/**
+ * An array of the edges leaving a vertex, sorted by pseudo-angle, allowing
+ * the insertion point for a new edge to be found by binary search. Used by
+ * vertices whose degree is too high for a linear scan of their edge ring to
+ * be efficient
+ */
+final class AngularIndex {
+
+	/**
+	 * Construct an index of the edges in a vertex's ring
+	 */
+	public AngularIndex(Vertex vertex, int degree) {
+		int capacity = 16;
+		while (capacity < degree * 2)
+			capacity *= 2;
+		mAngles = new float[capacity];
+		mEdges = new Edge[capacity];
+		Edge first = vertex.edges();
+		Edge edge = first;
+		do {
+			mAngles[mSize] = edge.angle();
+			mEdges[mSize] = edge;
+			mSize++;
+			edge = edge.nextEdge();
+		} while (edge != first);
+		sortByAngle();
+	}
+
+	/**
+	 * Sort the edges by angle. The ring order can differ from pseudo-angle
+	 * order where nearly parallel edges were ordered exactly, but only
+	 * locally, so an insertion sort is close to linear here. It's also
+	 * stable, keeping equal angles in ring order
+	 */
+	private void sortByAngle() {
+		for (int i = 1; i < mSize; i++) {
+			float angle = mAngles[i];
+			Edge edge = mEdges[i];
+			int j = i;
+			while (j > 0 && mAngles[j - 1] > angle) {
+				mAngles[j] = mAngles[j - 1];
+				mEdges[j] = mEdges[j - 1];
+				j--;
+			}
+			mAngles[j] = angle;
+			mEdges[j] = edge;
+		}
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Find the edge that a new edge with a particular angle should be inserted
+	 * after: the last edge whose angle is not greater than it, or if there is
+	 * no such edge, the one with the greatest angle
+	 */
+	public Edge predecessor(float angle) {
+		int position = upperBound(angle);
+		if (position == 0)
+			position = mSize;
+		return mEdges[position - 1];
+	}
+
+	/**
+	 * Add an edge, maintaining the sort order
+	 */
+	public void add(Edge edge) {
+		float angle = edge.angle();
+		int position = upperBound(angle);
+		if (mSize == mAngles.length) {
+			mAngles = Arrays.copyOf(mAngles, mSize * 2);
+			mEdges = Arrays.copyOf(mEdges, mSize * 2);
+		}
+		System.arraycopy(mAngles, position, mAngles, position + 1, mSize
+				- position);
+		System.arraycopy(mEdges, position, mEdges, position + 1, mSize
+				- position);
+		mAngles[position] = angle;
+		mEdges[position] = edge;
+		mSize++;
+	}
+
+	/**
+	 * Remove an edge
+	 */
+	public void remove(Edge edge) {
+		int position = find(edge);
+		mSize--;
+		System.arraycopy(mAngles, position + 1, mAngles, position, mSize
+				- position);
+		System.arraycopy(mEdges, position + 1, mEdges, position, mSize
+				- position);
+		mEdges[mSize] = null;
+	}
+
+	/**
+	 * Find the position of an edge. It should lie among the edges sharing its
+	 * angle; the full scan is a safeguard, so a missing edge is reported
+	 * rather than running off the end of the array
+	 */
+	private int find(Edge edge) {
+		float angle = edge.angle();
+		int end = upperBound(angle);
+		for (int position = lowerBound(angle); position < end; position++)
+			if (mEdges[position] == edge)
+				return position;
+		for (int position = 0; position < mSize; position++)
+			if (mEdges[position] == edge)
+				return position;
+		GeometryException.raise("edge not in angular index: " + edge);
+		return -1;
+	}
+
+	/**
+	 * Find the position of the first angle that is greater than or equal to a
+	 * value
+	 */
+	private int lowerBound(float angle) {
+		int low = 0;
+		int high = mSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mAngles[mid] < angle)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Find the position of the first angle that is greater than a value
+	 */
+	private int upperBound(float angle) {
+		int low = 0;
+		int high = mSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (mAngles[mid] <= angle)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private float[] mAngles;
+	private Edge[] mEdges;
+	private int mSize;
+}
@@ -0,0 +1,237 @@
+package com.js.geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.js.basic.GeometryException;
+
+/**
+ * Triangulates many polygons in parallel, without any AlgorithmStepper
+ * rendering; intended for bulk (e.g. server side) triangulation.
+ *
+ * The polygons are divided into contiguous ranges, which are triangulated by a
+ * fixed pool of worker threads; each worker reuses a single Mesh. The results
+ * are returned as flat arrays of vertex indices, and are independent of the
+ * number of threads
+ */
+public class BatchTriangulator {
+
+	/**
+	 * The triangles produced for a batch of polygons. The triangles for
+	 * polygon i occupy indices [triangleStart(i), triangleStart(i+1)) of the
+	 * index array; each triangle is three consecutive indices into that
+	 * polygon's vertices, in CCW order
+	 */
+	public static class Result {
+
+		private Result(int polygonCount) {
+			mTriangleStarts = new int[polygonCount + 1];
+			mErrors = new GeometryException[polygonCount];
+		}
+
+		public int numPolygons() {
+			return mErrors.length;
+		}
+
+		public int[] indices() {
+			return mIndices;
+		}
+
+		public int triangleStart(int polygon) {
+			return mTriangleStarts[polygon];
+		}
+
+		/**
+		 * Get the number of triangles produced for a polygon
+		 */
+		public int numTriangles(int polygon) {
+			return (mTriangleStarts[polygon + 1] - mTriangleStarts[polygon]) / 3;
+		}
+
+		/**
+		 * Get the exception that prevented a polygon from being triangulated,
+		 * or null if it succeeded; a polygon that failed has no triangles
+		 */
+		public GeometryException error(int polygon) {
+			return mErrors[polygon];
+		}
+
+		private int[] mIndices;
+		private int[] mTriangleStarts;
+		private GeometryException[] mErrors;
+	}
+
+	/**
+	 * Construct a triangulator with one worker thread per available processor
+	 */
+	public BatchTriangulator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public BatchTriangulator(int threadCount) {
+		if (threadCount < 1)
+			throw new IllegalArgumentException("bad thread count: "
+					+ threadCount);
+		mThreadCount = threadCount;
+		mExecutor = Executors.newFixedThreadPool(threadCount,
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "BatchTriangulator");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Stop the worker threads; the triangulator can't be used afterward
+	 */
+	public void shutdown() {
+		mExecutor.shutdown();
+	}
+
+	/**
+	 * Triangulate a list of CCW polygons
+	 */
+	public Result triangulate(List<Polygon> polygons) {
+		int polygonCount = polygons.size();
+		Result result = new Result(polygonCount);
+
+		// Use a few more ranges than threads, to balance the load if the
+		// polygons vary in size
+		int rangeCount = Math.max(1,
+				Math.min(polygonCount, mThreadCount * RANGES_PER_THREAD));
+		List<Future<IntArray>> futures = new ArrayList();
+		for (int i = 0; i < rangeCount; i++) {
+			int start = (int) ((long) polygonCount * i / rangeCount);
+			int end = (int) ((long) polygonCount * (i + 1) / rangeCount);
+			futures.add(mExecutor.submit(new RangeTask(polygons, start, end,
+					result)));
+		}
+
+		// Gather each range's indices, converting its triangle counts to
+		// starting positions
+		IntArray[] rangeIndices = new IntArray[rangeCount];
+		int totalIndices = 0;
+		for (int i = 0; i < rangeCount; i++) {
+			rangeIndices[i] = waitFor(futures.get(i));
+			totalIndices += rangeIndices[i].size();
+		}
+		int[] indices = new int[totalIndices];
+		int position = 0;
+		for (IntArray range : rangeIndices) {
+			System.arraycopy(range.array(false), 0, indices, position,
+					range.size());
+			position += range.size();
+		}
+		int[] starts = result.mTriangleStarts;
+		int indexCount = 0;
+		for (int i = 0; i < polygonCount; i++) {
+			int polygonIndexCount = starts[i];
+			starts[i] = indexCount;
+			indexCount += polygonIndexCount;
+		}
+		starts[polygonCount] = indexCount;
+		result.mIndices = indices;
+		return result;
+	}
+
+	private static IntArray waitFor(Future<IntArray> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Triangulates a range of polygons, storing each polygon's index count
+	 * (temporarily) in the result's triangle starts array
+	 */
+	private class RangeTask implements Callable<IntArray> {
+
+		public RangeTask(List<Polygon> polygons, int start, int end,
+				Result result) {
+			mPolygons = polygons;
+			mStart = start;
+			mEnd = end;
+			mResult = result;
+		}
+
+		@Override
+		public IntArray call() {
+			Mesh mesh = mWorkerMesh.get();
+			IntArray indices = new IntArray();
+			for (int i = mStart; i < mEnd; i++) {
+				int sizeBefore = indices.size();
+				try {
+					mesh.clear();
+					Polygon polygon = mPolygons.get(i);
+					PolygonTriangulator.triangulator(null, mesh, polygon)
+							.triangulate();
+					extractTriangles(mesh, indices);
+				} catch (GeometryException e) {
+					while (indices.size() > sizeBefore)
+						indices.pop();
+					mResult.mErrors[i] = e;
+				}
+				mResult.mTriangleStarts[i] = indices.size() - sizeBefore;
+			}
+			return indices;
+		}
+
+		private List<Polygon> mPolygons;
+		private int mStart;
+		private int mEnd;
+		private Result mResult;
+	}
+
+	/**
+	 * Append the vertex indices of a triangulated polygon's triangles. Every
+	 * face is a triangle, except for the one outside the polygon
+	 */
+	private static void extractTriangles(Mesh mesh, IntArray indices) {
+		if (mesh.numVertices() == 0)
+			return;
+		Edge boundaryEdge = mesh.vertex(0).edges();
+		while (!boundaryEdge.isPolygon())
+			boundaryEdge = boundaryEdge.nextEdge();
+		int exteriorFace = mesh.faceOf(boundaryEdge.dual());
+		int faceIdBound = mesh.faceIdBound();
+		for (int face = 0; face < faceIdBound; face++) {
+			if (face == exteriorFace)
+				continue;
+			Edge abEdge = mesh.faceEdge(face);
+			if (abEdge == null)
+				continue;
+			Edge bcEdge = abEdge.nextFaceEdge();
+			Edge caEdge = bcEdge.nextFaceEdge();
+			indices.add(caEdge.destVertex().index());
+			indices.add(abEdge.destVertex().index());
+			indices.add(bcEdge.destVertex().index());
+		}
+	}
+
+	private static final int RANGES_PER_THREAD = 4;
+
+	private final ThreadLocal<Mesh> mWorkerMesh = new ThreadLocal<Mesh>() {
+		@Override
+		protected Mesh initialValue() {
+			return new Mesh();
+		}
+	};
+	private int mThreadCount;
+	private ExecutorService mExecutor;
+}
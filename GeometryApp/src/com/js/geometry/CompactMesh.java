@@ -0,0 +1,598 @@
+package com.js.geometry;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.js.basic.GeometryException;
+import com.js.basic.Point;
+import com.js.basic.Predicates;
+
+import static com.js.basic.MyMath.*;
+
+/**
+ * An index-based version of Mesh, which stores its vertices and half edges in
+ * parallel arrays of primitives rather than as individual Vertex and Edge
+ * objects. It is intended for very large meshes, where the per-object overhead
+ * (and garbage collection) of Mesh becomes significant.
+ *
+ * Vertices and half edges are identified by their integer indices. The two
+ * halves of an edge occupy adjacent slots, so the dual of edge e is (e ^ 1).
+ *
+ * Algorithms written for Mesh (e.g. PolygonTriangulator, PolygonMesh) can be
+ * run on a CompactMesh by converting it with toMesh() and, if necessary,
+ * converting the result back with setTo(Mesh).
+ */
+public final class CompactMesh {
+
+	/**
+	 * Index representing a missing vertex or edge
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * Construct a CompactMesh from a Mesh. The vertices will have the same
+	 * indices as in the original, and each vertex's edges will have the same
+	 * order
+	 */
+	public static CompactMesh fromMesh(Mesh mesh) {
+		CompactMesh m = new CompactMesh();
+		m.setTo(mesh);
+		return m;
+	}
+
+	public CompactMesh() {
+		allocateVertices(16);
+		allocateEdges(32);
+	}
+
+	public void clear() {
+		mVertexCount = 0;
+		mEdgeCount = 0;
+		mFreeEdge = NONE;
+	}
+
+	public int numVertices() {
+		return mVertexCount;
+	}
+
+	public int addVertex(Point location) {
+		return addVertex(location.x, location.y);
+	}
+
+	public int addVertex(float x, float y) {
+		testForOverflow(x);
+		testForOverflow(y);
+		if (mVertexCount == mVertexX.length)
+			allocateVertices(Math.max(16, mVertexCount * 2));
+		int v = mVertexCount++;
+		mVertexX[v] = x;
+		mVertexY[v] = y;
+		mVertexEdges[v] = NONE;
+		mVertexFlags[v] = 0;
+		return v;
+	}
+
+	public float vertexX(int vertex) {
+		return mVertexX[vertex];
+	}
+
+	public float vertexY(int vertex) {
+		return mVertexY[vertex];
+	}
+
+	/**
+	 * Construct a Point containing a vertex's location
+	 */
+	public Point vertexLocation(int vertex) {
+		return new Point(mVertexX[vertex], mVertexY[vertex]);
+	}
+
+	/**
+	 * Get the first edge leaving a vertex, or NONE
+	 */
+	public int vertexEdges(int vertex) {
+		return mVertexEdges[vertex];
+	}
+
+	public int vertexFlags(int vertex) {
+		return mVertexFlags[vertex];
+	}
+
+	public void addVertexFlags(int vertex, int flags) {
+		mVertexFlags[vertex] |= flags;
+	}
+
+	public void clearVertexFlags(int vertex, int flags) {
+		mVertexFlags[vertex] &= ~flags;
+	}
+
+	public int addEdge(int v0, int v1) {
+		return addEdge(v0, v1, false);
+	}
+
+	public int addEdge(int v0, int v1, boolean ifNoEdgeExists) {
+		if (ifNoEdgeExists) {
+			int existing = edgeExistsBetween(v0, v1);
+			if (existing != NONE)
+				return existing;
+		}
+		int edge = allocateEdgePair();
+		int dual = edge ^ 1;
+
+		float angle = pseudoPolarAngle(mVertexX[v1] - mVertexX[v0],
+				mVertexY[v1] - mVertexY[v0]);
+
+		mEdgeAngle[edge] = angle;
+		mEdgeDest[edge] = v1;
+		mEdgeFlags[edge] = 0;
+
+		mEdgeAngle[dual] = normalizePseudoAngle(angle + PSEUDO_ANGLE_RANGE_12);
+		mEdgeDest[dual] = v0;
+		mEdgeFlags[dual] = 0;
+
+		addEdgeToVertex(edge, v0);
+		addEdgeToVertex(dual, v1);
+		return edge;
+	}
+
+	public int edgeExistsBetween(int sourceVert, int destVert) {
+		int first = mVertexEdges[sourceVert];
+		if (first == NONE)
+			return NONE;
+		int edge = first;
+		while (true) {
+			if (mEdgeDest[edge] == destVert)
+				return edge;
+			edge = mEdgeNext[edge];
+			if (edge == first)
+				return NONE;
+		}
+	}
+
+	/**
+	 * Delete a vertex. Deletes all edges incident with vertex as well. The
+	 * order of the vertices may change as a result; specifically, the last
+	 * vertex will be moved to the deleted vertex's index
+	 */
+	public void deleteVertex(int vertex) {
+		while (mVertexEdges[vertex] != NONE)
+			deleteEdge(mVertexEdges[vertex]);
+
+		int lastVertex = mVertexCount - 1;
+		if (lastVertex != vertex) {
+			mVertexX[vertex] = mVertexX[lastVertex];
+			mVertexY[vertex] = mVertexY[lastVertex];
+			mVertexFlags[vertex] = mVertexFlags[lastVertex];
+			int first = mVertexEdges[lastVertex];
+			mVertexEdges[vertex] = first;
+			// Edges entering the moved vertex must refer to its new index
+			if (first != NONE) {
+				int edge = first;
+				do {
+					mEdgeDest[edge ^ 1] = vertex;
+					edge = mEdgeNext[edge];
+				} while (edge != first);
+			}
+		}
+		mVertexCount--;
+	}
+
+	/**
+	 * Delete an edge (and its dual). The edge's slots may be reused by
+	 * subsequently added edges
+	 */
+	public void deleteEdge(int edge) {
+		int dual = edge ^ 1;
+		removeEdgeFromVertex(edge, mEdgeDest[dual]);
+		removeEdgeFromVertex(dual, mEdgeDest[edge]);
+		mEdgeFlags[edge] = Edge.FLAG_DELETED;
+		mEdgeFlags[dual] = Edge.FLAG_DELETED;
+
+		// Thread the pair onto the free list, using the next pointer of its
+		// even half
+		int pair = edge & ~1;
+		mEdgeNext[pair] = mFreeEdge;
+		mFreeEdge = pair;
+	}
+
+	public int dual(int edge) {
+		return edge ^ 1;
+	}
+
+	public int nextEdge(int edge) {
+		return mEdgeNext[edge];
+	}
+
+	public int prevEdge(int edge) {
+		return mEdgePrev[edge];
+	}
+
+	public int destVertex(int edge) {
+		return mEdgeDest[edge];
+	}
+
+	public int sourceVertex(int edge) {
+		return mEdgeDest[edge ^ 1];
+	}
+
+	public float angle(int edge) {
+		return mEdgeAngle[edge];
+	}
+
+	/**
+	 * Find the next edge in the CCW face this edge bounds
+	 */
+	public int nextFaceEdge(int edge) {
+		return mEdgePrev[edge ^ 1];
+	}
+
+	/**
+	 * Find the previous edge in the CCW face this edge bounds
+	 */
+	public int prevFaceEdge(int edge) {
+		return mEdgeNext[edge] ^ 1;
+	}
+
+	public int edgeFlags(int edge) {
+		return mEdgeFlags[edge];
+	}
+
+	/**
+	 * Determine if an edge's flags contain all of a particular subset of flags
+	 */
+	public boolean edgeHasFlags(int edge, int flags) {
+		return (mEdgeFlags[edge] & flags) == flags;
+	}
+
+	public void addEdgeFlags(int edge, int flags) {
+		mEdgeFlags[edge] |= flags;
+	}
+
+	public void clearEdgeFlags(int edge, int flags) {
+		mEdgeFlags[edge] &= ~flags;
+	}
+
+	public boolean deleted(int edge) {
+		return edgeHasFlags(edge, Edge.FLAG_DELETED);
+	}
+
+	/**
+	 * Construct a list of all the edges
+	 *
+	 * @param omitDuals
+	 *            if true, exactly one of an edge or its dual will appear in the
+	 *            array
+	 * @return array of edge indices
+	 */
+	public IntArray constructListOfEdges(boolean omitDuals) {
+		IntArray edges = new IntArray();
+		for (int vertex = 0; vertex < mVertexCount; vertex++) {
+			int first = mVertexEdges[vertex];
+			if (first == NONE)
+				continue;
+			int edge = first;
+			do {
+				if (!omitDuals || mEdgeAngle[edge] >= 0)
+					edges.add(edge);
+				edge = mEdgeNext[edge];
+			} while (edge != first);
+		}
+		return edges;
+	}
+
+	/**
+	 * Replace this mesh's contents with those of a Mesh
+	 */
+	public void setTo(Mesh mesh) {
+		clear();
+		int nVertices = mesh.numVertices();
+		for (int i = 0; i < nVertices; i++) {
+			Vertex v = mesh.vertex(i);
+			int index = addVertex(v.x, v.y);
+			mVertexFlags[index] = v.flags();
+		}
+
+		// Assign slots to each edge pair, then link the rings in the same
+		// order as the original's
+		Map<Edge, Integer> edgeIndices = new IdentityHashMap();
+		for (int i = 0; i < nVertices; i++) {
+			Edge first = mesh.vertex(i).edges();
+			if (first == null)
+				continue;
+			Edge edge = first;
+			do {
+				if (!edgeIndices.containsKey(edge)) {
+					int index = allocateEdgePair();
+					edgeIndices.put(edge, index);
+					edgeIndices.put(edge.dual(), index ^ 1);
+				}
+				edge = edge.nextEdge();
+			} while (edge != first);
+		}
+		for (Map.Entry<Edge, Integer> entry : edgeIndices.entrySet()) {
+			Edge edge = entry.getKey();
+			int index = entry.getValue();
+			mEdgeAngle[index] = edge.angle();
+			mEdgeFlags[index] = edge.flags();
+			mEdgeDest[index] = edge.destVertex().index();
+			mEdgeNext[index] = edgeIndices.get(edge.nextEdge());
+			mEdgePrev[index] = edgeIndices.get(edge.prevEdge());
+		}
+		for (int i = 0; i < nVertices; i++) {
+			Edge first = mesh.vertex(i).edges();
+			mVertexEdges[i] = (first == null) ? NONE : edgeIndices.get(first);
+		}
+	}
+
+	/**
+	 * Construct a Mesh with the same contents as this one
+	 */
+	public Mesh toMesh() {
+		Mesh mesh = new Mesh();
+		Vertex[] vertices = new Vertex[mVertexCount];
+		for (int i = 0; i < mVertexCount; i++) {
+			Vertex v = mesh.addVertex(new Point(mVertexX[i], mVertexY[i]));
+			v.addFlags(mVertexFlags[i]);
+			vertices[i] = v;
+		}
+
+		Edge[] edges = new Edge[mEdgeCount];
+		int liveEdges = 0;
+		for (int i = 0; i < mVertexCount; i++) {
+			int first = mVertexEdges[i];
+			if (first == NONE)
+				continue;
+			int index = first;
+			do {
+				Edge edge = new Edge();
+				edge.setAngle(mEdgeAngle[index]);
+				edge.setDestVertex(vertices[mEdgeDest[index]]);
+				edge.addFlags(mEdgeFlags[index]);
+				edges[index] = edge;
+				index = mEdgeNext[index];
+			} while (index != first);
+		}
+		for (int i = 0; i < mVertexCount; i++) {
+			int first = mVertexEdges[i];
+			if (first == NONE)
+				continue;
+			int degree = 0;
+			int index = first;
+			do {
+				Edge edge = edges[index];
+				edge.setDual(edges[index ^ 1]);
+				edge.setNextEdge(edges[mEdgeNext[index]]);
+				edge.setPrevEdge(edges[mEdgePrev[index]]);
+				degree++;
+				index = mEdgeNext[index];
+			} while (index != first);
+			vertices[i].setEdges(edges[first], degree);
+			liveEdges += degree;
+		}
+		mesh.edgesAdded(liveEdges / 2);
+		return mesh;
+	}
+
+	private int allocateEdgePair() {
+		int edge = mFreeEdge;
+		if (edge != NONE) {
+			mFreeEdge = mEdgeNext[edge];
+		} else {
+			if (mEdgeCount + 2 > mEdgeDest.length)
+				allocateEdges(Math.max(32, mEdgeDest.length * 2));
+			edge = mEdgeCount;
+			mEdgeCount += 2;
+		}
+		return edge;
+	}
+
+	private void addEdgeToVertex(int edge, int vertex) {
+		int first = mVertexEdges[vertex];
+		if (first == NONE) {
+			mVertexEdges[vertex] = edge;
+			mEdgeNext[edge] = edge;
+			mEdgePrev[edge] = edge;
+			return;
+		}
+
+		// Look for the existing edge that will immediately precede this one
+		float angle = mEdgeAngle[edge];
+		int existingEdge = first;
+		while (true) {
+			if (angle < mEdgeAngle[existingEdge]) {
+				existingEdge = mEdgePrev[existingEdge];
+				break;
+			}
+			int nextEdge = mEdgeNext[existingEdge];
+			if (nextEdge == first)
+				break;
+			existingEdge = nextEdge;
+		}
+
+		// Pseudo angles can't reliably order edges with almost the same
+		// direction, so if the edge is close to either neighbor, find its
+		// position exactly; there may be several such edges (see
+		// Mesh.addEdgeToVertex())
+		boolean backwards = edgesMisordered(existingEdge, edge);
+		if (backwards || edgesMisordered(edge, mEdgeNext[existingEdge])) {
+			int firstEdge = existingEdge;
+			while (!edgeWithinSector(existingEdge, edge)) {
+				existingEdge = backwards ? mEdgePrev[existingEdge]
+						: mEdgeNext[existingEdge];
+				if (existingEdge == firstEdge)
+					break;
+			}
+		}
+
+		// It's a degeneracy if the angle between the new edge and either of
+		// its neighbors is zero
+		int degenerateEdge = NONE;
+		if (edgesAreDegenerate(existingEdge, edge))
+			degenerateEdge = existingEdge;
+		int followingEdge = mEdgeNext[existingEdge];
+		if (followingEdge != existingEdge
+				&& edgesAreDegenerate(edge, followingEdge))
+			degenerateEdge = followingEdge;
+
+		if (degenerateEdge != NONE) {
+			if (mEdgeDest[degenerateEdge] == mEdgeDest[edge]) {
+				GeometryException.raise("edge already exists: "
+						+ dumpEdge(degenerateEdge));
+			} else {
+				GeometryException.raise("edges collinear: " + dumpEdge(edge)
+						+ " " + dumpEdge(degenerateEdge));
+			}
+		}
+
+		mEdgeNext[edge] = followingEdge;
+		mEdgePrev[edge] = existingEdge;
+		mEdgeNext[existingEdge] = edge;
+		mEdgePrev[followingEdge] = edge;
+		// The first edge has the smallest angle; if the new edge was inserted
+		// just before it, it's either the new first edge or the new last one
+		if (followingEdge == first && edgePrecedes(edge, first))
+			mVertexEdges[vertex] = edge;
+	}
+
+	/**
+	 * Remove a half edge leaving a vertex; ignores its dual
+	 */
+	private void removeEdgeFromVertex(int edge, int vertex) {
+		int nextEdge = mEdgeNext[edge];
+		int prevEdge = mEdgePrev[edge];
+		if (mVertexEdges[vertex] == edge) {
+			if (nextEdge == edge) {
+				// This is the only edge leaving the vertex
+				mVertexEdges[vertex] = NONE;
+				return;
+			}
+			mVertexEdges[vertex] = nextEdge;
+		}
+		mEdgePrev[nextEdge] = prevEdge;
+		mEdgeNext[prevEdge] = nextEdge;
+	}
+
+	/**
+	 * Determine the orientation of the destination vertices of two edges
+	 * leaving the same vertex, if their pseudo angles are too close to compare
+	 * reliably; see Mesh.edgesAreDegenerate()
+	 * 
+	 * @return the orientation of (source, dest(a), dest(b)), or NaN if the
+	 *         pseudo angles are far enough apart
+	 */
+	private double closeEdgesOrientation(int a, int b) {
+		float angleDiff = Math.abs(normalizePseudoAngle(mEdgeAngle[b]
+				- mEdgeAngle[a]));
+		if (angleDiff > PSEUDO_ANGLE_FILTER)
+			return Double.NaN;
+		return orientation(sourceVertex(a), mEdgeDest[a], mEdgeDest[b]);
+	}
+
+	private double orientation(int v0, int v1, int v2) {
+		return Predicates.orient2d(mVertexX[v0], mVertexY[v0], mVertexX[v1],
+				mVertexY[v1], mVertexX[v2], mVertexY[v2]);
+	}
+
+	private boolean edgesAreDegenerate(int a, int b) {
+		return closeEdgesOrientation(a, b) == 0;
+	}
+
+	private boolean edgesMisordered(int a, int b) {
+		return closeEdgesOrientation(a, b) < 0;
+	}
+
+	/**
+	 * Determine if edge a has a smaller angle than edge b, both leaving the
+	 * same vertex; pseudo angles that are almost equal are compared exactly
+	 */
+	private boolean edgePrecedes(int a, int b) {
+		float angleDiff = mEdgeAngle[b] - mEdgeAngle[a];
+		if (Math.abs(angleDiff) > PSEUDO_ANGLE_FILTER)
+			return angleDiff > 0;
+		return orientation(sourceVertex(a), mEdgeDest[a], mEdgeDest[b]) > 0;
+	}
+
+	/**
+	 * Determine if an edge lies strictly within the CCW sector from one edge
+	 * to the next, all leaving the same vertex (using exact arithmetic)
+	 */
+	private boolean edgeWithinSector(int sectorStart, int edge) {
+		int sectorEnd = mEdgeNext[sectorStart];
+		if (sectorEnd == sectorStart)
+			return true;
+		int origin = sourceVertex(edge);
+		int startDest = mEdgeDest[sectorStart];
+		int endDest = mEdgeDest[sectorEnd];
+		int dest = mEdgeDest[edge];
+		boolean leftOfStart = orientation(origin, startDest, dest) > 0;
+		boolean rightOfEnd = orientation(origin, dest, endDest) > 0;
+		if (orientation(origin, startDest, endDest) > 0)
+			return leftOfStart && rightOfEnd;
+		return leftOfStart || rightOfEnd;
+	}
+
+	private String dumpEdge(int edge) {
+		int source = sourceVertex(edge);
+		int dest = mEdgeDest[edge];
+		return vertexLocation(source).dumpUnlabelled() + " "
+				+ vertexLocation(dest).dumpUnlabelled() + " " + source
+				+ " --> " + dest;
+	}
+
+	/**
+	 * Replace this mesh's contents with a set of arrays, which this mesh takes
+	 * ownership of; the edge slots must be in pairs, with no deleted edges
+	 */
+	void setContents(int vertexCount, float[] vertexX, float[] vertexY,
+			int[] vertexEdges, int[] vertexFlags, int edgeCount,
+			float[] edgeAngle, int[] edgeNext, int[] edgePrev, int[] edgeDest,
+			int[] edgeFlags) {
+		mVertexCount = vertexCount;
+		mVertexX = vertexX;
+		mVertexY = vertexY;
+		mVertexEdges = vertexEdges;
+		mVertexFlags = vertexFlags;
+		mEdgeCount = edgeCount;
+		mEdgeAngle = edgeAngle;
+		mEdgeNext = edgeNext;
+		mEdgePrev = edgePrev;
+		mEdgeDest = edgeDest;
+		mEdgeFlags = edgeFlags;
+		mFreeEdge = NONE;
+	}
+
+	private void allocateVertices(int capacity) {
+		mVertexX = Arrays.copyOf(mVertexX, capacity);
+		mVertexY = Arrays.copyOf(mVertexY, capacity);
+		mVertexEdges = Arrays.copyOf(mVertexEdges, capacity);
+		mVertexFlags = Arrays.copyOf(mVertexFlags, capacity);
+	}
+
+	private void allocateEdges(int capacity) {
+		mEdgeAngle = Arrays.copyOf(mEdgeAngle, capacity);
+		mEdgeNext = Arrays.copyOf(mEdgeNext, capacity);
+		mEdgePrev = Arrays.copyOf(mEdgePrev, capacity);
+		mEdgeDest = Arrays.copyOf(mEdgeDest, capacity);
+		mEdgeFlags = Arrays.copyOf(mEdgeFlags, capacity);
+	}
+
+	private static final float PSEUDO_ANGLE_FILTER = 1e-5f;
+
+	private int mVertexCount;
+	private float[] mVertexX = new float[0];
+	private float[] mVertexY = new float[0];
+	// First edge leaving each vertex, or NONE
+	private int[] mVertexEdges = new int[0];
+	private int[] mVertexFlags = new int[0];
+
+	// Number of edge slots in use (including deleted ones)
+	private int mEdgeCount;
+	private float[] mEdgeAngle = new float[0];
+	private int[] mEdgeNext = new int[0];
+	private int[] mEdgePrev = new int[0];
+	private int[] mEdgeDest = new int[0];
+	private int[] mEdgeFlags = new int[0];
+	// Head of list of deleted edge pairs available for reuse, or NONE
+	private int mFreeEdge = NONE;
+}
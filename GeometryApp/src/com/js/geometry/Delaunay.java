@@ -0,0 +1,1305 @@
+package com.js.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import android.graphics.Color;
+
+import com.js.basic.GeometryException;
+import com.js.basic.Point;
+import com.js.basic.Predicates;
+import com.js.basic.Rect;
+import com.js.geometryapp.RenderTools;
+
+import static com.js.basic.MyMath.*;
+import static com.js.basic.Tools.*;
+
+/**
+ * Constructs and maintains the Delaunay triangulation of a set of sites
+ * within a Mesh. Sites can be added and removed one at a time; or a set of
+ * sites can be added at once (see add(List)), which is much faster for large
+ * sets; or, if there are no sites yet, using multiple threads (see
+ * addInParallel()).
+ * 
+ * The triangulation is bounded by four 'horizon' vertices, which form a
+ * quadrilateral containing all the sites.
+ * 
+ * Edges between sites can be constrained (see addConstraint()), so they
+ * survive any subsequent changes; the result is then the constrained Delaunay
+ * triangulation
+ */
+public class Delaunay {
+
+  public static final String DETAIL_SWAPS = "Swaps";
+  public static final String DETAIL_TRIANGULATE_HOLE = "Triangulate hole";
+  public static final String DETAIL_FIND_TRIANGLE = "Find triangle";
+
+  private static final float HORIZON = 1e7f;
+  private static final String BGND_ELEMENT_QUERY_POINT = "20";
+  private static final String BGND_ELEMENT_SEARCH_HISTORY = "12";
+  private static final String BGND_ELEMENT_BEARING_LINE = "10";
+  private static final String BGND_ELEMENT_HOLE_BOUNDARY = "15";
+
+  private static final int EDGEFLAG_HORIZON = (1 << 1);
+  // Set on both halves of a constrained edge
+  private static final int EDGEFLAG_CONSTRAINED = (1 << 2);
+
+  private static final int INITIAL_MESH_VERTICES = 4;
+
+  // Points added in bulk are sorted along a Hilbert curve on a grid with this
+  // many cells per side
+  private static final int HILBERT_ORDER = 15;
+  // Rounds of a bulk insertion smaller than this are combined with the
+  // previous round
+  private static final int MIN_BULK_ROUND = 64;
+  // Each slab of a parallel construction contains at least this many sites
+  private static final int MIN_SLAB_SIZE = 1024;
+
+  private static ExecutorService sBuildExecutor;
+
+  /**
+   * Constructor
+   * 
+   * @param context
+   *          context to use; its mesh will be cleared
+   * @param boundingRect
+   *          bounding rect, or null to use (large) default
+   */
+  public Delaunay(Mesh context, Rect boundingRect, AlgorithmStepper stepper) {
+    s = stepper;
+    constructMesh(context, boundingRect);
+    mRandom = new Random(1);
+  }
+
+  /**
+   * Add a site, triangulating as required. Adds a new vertex to the mesh
+   * 
+   * @param point
+   *          location of site
+   * 
+   * @return the new Vertex
+   */
+  public Vertex add(Point point) {
+    s.addLayer(BGND_ELEMENT_QUERY_POINT, s.highlighted(point));
+
+    if (s.bigStep())
+      s.show("Add point");
+
+    Edge edge = findTriangleContainingPoint(point);
+
+    Vertex newVertex = insertPointIntoTriangle(point, edge);
+    addToGrid(newVertex);
+
+    s.removeLayer(BGND_ELEMENT_QUERY_POINT);
+    mMesh.recycle();
+    return newVertex;
+  }
+
+  /**
+   * Add a number of sites. This is equivalent to adding each point in turn,
+   * but much faster for large numbers of points: they're inserted in a biased
+   * randomized insertion order (BRIO), i.e., in rounds of doubling size, each
+   * a random sample of the points, with each round sorted along a Hilbert
+   * curve. Successive points are then close together, so each point's
+   * triangle is located by walking from the previously inserted vertex,
+   * rather than from a random sample of the vertices; this takes nearly
+   * constant time per point, while the randomization keeps the expected
+   * number of edge flips low.
+   * 
+   * @param points
+   *          locations of sites
+   * @return the new Vertices, in the same order as the points
+   */
+  public List<Vertex> add(List<Point> points) {
+    int[] order = bulkInsertionOrder(points);
+    Vertex[] vertices = new Vertex[points.size()];
+    try {
+      for (int index : order) {
+        Vertex vertex = add(points.get(index));
+        vertices[index] = vertex;
+        mSearchStartVertex = vertex;
+      }
+    } finally {
+      mSearchStartVertex = null;
+    }
+    return Arrays.asList(vertices);
+  }
+
+  /**
+   * Add a number of sites to a triangulation that has none, using multiple
+   * threads. The sites (together with the horizon vertices) are sorted by x,
+   * and split into vertical slabs, one per processor. Each slab is
+   * triangulated concurrently, in its own Mesh, using the divide and conquer
+   * algorithm; the slabs' meshes are then combined, and the seams between
+   * adjacent slabs are stitched together with the same algorithm's merge
+   * step.
+   * 
+   * The result is the same as that of add(List), provided no four sites are
+   * cocircular. If there are already sites, or the stepper is active, this
+   * is equivalent to add(List)
+   * 
+   * @param points
+   *          locations of sites
+   * @return the new Vertices, in the same order as the points
+   */
+  public List<Vertex> addInParallel(List<Point> points) {
+    if (nSites() != 0 || s.isActive() || points.isEmpty())
+      return add(points);
+
+    // Build a list of the horizon vertices followed by the sites
+    final List<Point> locations = new ArrayList(INITIAL_MESH_VERTICES
+        + points.size());
+    for (int i = 0; i < INITIAL_MESH_VERTICES; i++)
+      locations.add(new Point(mMesh.vertex(i)));
+    Rect siteBounds = null;
+    for (Point point : points) {
+      for (int i = 0; i < INITIAL_MESH_VERTICES; i++) {
+        if (Predicates.orient2d(locations.get(i),
+            locations.get((i + 1) % INITIAL_MESH_VERTICES), point) <= 0)
+          GeometryException.raise("point not within horizon: " + point);
+      }
+      locations.add(point);
+      if (siteBounds == null)
+        siteBounds = new Rect(point, point);
+      else
+        siteBounds.include(point);
+    }
+    final int[] order = sortedOrder(locations);
+    // The vertex constructed for each location
+    final Vertex[] vertices = new Vertex[locations.size()];
+
+    int slabCount = Math.max(1,
+        Math.min(buildThreadCount(), points.size() / MIN_SLAB_SIZE));
+    Slab[] slabs = new Slab[slabCount];
+    List<Future<Slab>> helpers = new ArrayList();
+    for (int i = 1; i < slabCount; i++) {
+      final int start = slabStart(order.length, slabCount, i);
+      final int end = slabStart(order.length, slabCount, i + 1);
+      helpers.add(buildExecutor().submit(new Callable<Slab>() {
+        @Override
+        public Slab call() {
+          return new Slab(locations, order, start, end, vertices);
+        }
+      }));
+    }
+    slabs[0] = new Slab(locations, order, 0, slabStart(order.length,
+        slabCount, 1), vertices);
+    for (int i = 1; i < slabCount; i++) {
+      try {
+        slabs[i] = helpers.get(i - 1).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException)
+          throw (RuntimeException) e.getCause();
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    // Combine the slabs, and stitch them together from left to right
+    mMesh.clear();
+    for (Slab slab : slabs)
+      mMesh.absorb(slab.mesh);
+    Edge[] hull = slabs[0].hull;
+    for (int i = 1; i < slabCount; i++)
+      hull = DivideAndConquerDelaunay.merge(mMesh, hull[0], hull[1],
+          slabs[i].hull[0], slabs[i].hull[1]);
+
+    // Restore the horizon vertices to the start of the mesh
+    for (int i = 0; i < INITIAL_MESH_VERTICES; i++)
+      mMesh.moveVertex(vertices[i], i);
+    for (int i = 0; i < INITIAL_MESH_VERTICES; i++) {
+      Edge edge = mMesh.edgeExistsBetween(vertices[i],
+          vertices[(i + 1) % INITIAL_MESH_VERTICES]);
+      if (edge == null)
+        GeometryException.raise("missing horizon edge");
+      edge.addFlags(EDGEFLAG_HORIZON);
+    }
+    mMesh.recycle();
+
+    mSiteBounds = siteBounds;
+    mGrid.rebuild(mSiteBounds, mMesh, INITIAL_MESH_VERTICES);
+    return Arrays.asList(vertices).subList(INITIAL_MESH_VERTICES,
+        vertices.length);
+  }
+
+  private static int slabStart(int count, int slabCount, int slab) {
+    return (int) ((long) count * slab / slabCount);
+  }
+
+  /**
+   * Sort points by x, then y
+   * 
+   * @return indices of the points, in sorted order
+   */
+  private static int[] sortedOrder(List<Point> points) {
+    int count = points.size();
+    // The key for each point holds a coordinate in the high bits, and its
+    // index in the low bits; sort by x, then sort each run of points with
+    // equal x by y
+    long[] keys = new long[count];
+    for (int i = 0; i < count; i++)
+      keys[i] = (((long) sortKey(points.get(i).x)) << 32) | i;
+    Arrays.sort(keys);
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++)
+      order[i] = (int) keys[i];
+
+    int runStart = 0;
+    for (int i = 1; i <= count; i++) {
+      if (i < count && (keys[i] >> 32) == (keys[runStart] >> 32))
+        continue;
+      if (i - runStart > 1) {
+        for (int j = runStart; j < i; j++)
+          keys[j] = (((long) sortKey(points.get(order[j]).y)) << 32)
+              | order[j];
+        Arrays.sort(keys, runStart, i);
+        for (int j = runStart; j < i; j++) {
+          order[j] = (int) keys[j];
+          if (j > runStart && (keys[j] >> 32) == (keys[j - 1] >> 32))
+            GeometryException.raise("point already exists: "
+                + points.get(order[j]));
+        }
+      }
+      runStart = i;
+    }
+    return order;
+  }
+
+  /**
+   * Map a float to an int, preserving the order of their values
+   */
+  private static int sortKey(float value) {
+    // Treat -0 the same as 0
+    int bits = Float.floatToIntBits(value + 0.0f);
+    return bits ^ ((bits >> 31) & 0x7fffffff);
+  }
+
+  private static int buildThreadCount() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  private static synchronized ExecutorService buildExecutor() {
+    if (sBuildExecutor == null) {
+      sBuildExecutor = Executors.newFixedThreadPool(
+          Math.max(1, buildThreadCount() - 1), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "Delaunay builder");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return sBuildExecutor;
+  }
+
+  /**
+   * The triangulation of one slab of a parallel construction
+   */
+  private static class Slab {
+
+    /**
+     * Triangulate a range of points
+     * 
+     * @param locations
+     *          all of the points
+     * @param order
+     *          indices of the points, sorted by x then y
+     * @param start
+     *          start of range within order
+     * @param end
+     *          end of range within order
+     * @param vertices
+     *          where to store the vertex constructed for each point
+     */
+    public Slab(List<Point> locations, int[] order, int start, int end,
+        Vertex[] vertices) {
+      for (int i = start; i < end; i++)
+        vertices[order[i]] = mesh.addVertex(locations.get(order[i]));
+      hull = DivideAndConquerDelaunay.triangulate(mesh, 0, end - start);
+    }
+
+    public final Mesh mesh = new Mesh();
+    // Hull edges leaving the leftmost and rightmost vertices
+    public final Edge[] hull;
+  }
+
+  /**
+   * Add a new site to the point location grid, rebuilding the grid if it's
+   * become too coarse
+   */
+  private void addToGrid(Vertex vertex) {
+    if (mSiteBounds == null)
+      mSiteBounds = new Rect(vertex, vertex);
+    else
+      mSiteBounds.include(vertex);
+    if (mGrid.needsRebuild(nSites()))
+      mGrid.rebuild(mSiteBounds, mMesh, INITIAL_MESH_VERTICES);
+    else
+      mGrid.add(vertex);
+  }
+
+  /**
+   * Determine the order in which to insert points in bulk
+   * 
+   * @return indices of the points, in insertion order
+   */
+  private int[] bulkInsertionOrder(List<Point> points) {
+    int count = points.size();
+    int[] order = new int[count];
+    if (count == 0)
+      return order;
+
+    Rect bounds = null;
+    for (Point point : points) {
+      if (bounds == null)
+        bounds = new Rect(point, point);
+      else
+        bounds.include(point);
+    }
+    float size = Math.max(bounds.width, bounds.height);
+    float scale = (size == 0) ? 0 : ((1 << HILBERT_ORDER) - 1) / size;
+
+    // Shuffle the points, then sort each round by Hilbert index. The key for
+    // each point holds its Hilbert index in the high bits, and its index in
+    // the low bits, so sorting the keys sorts the points
+    for (int i = 0; i < count; i++)
+      order[i] = i;
+    for (int i = count - 1; i > 0; i--) {
+      int j = mRandom.nextInt(i + 1);
+      int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+    }
+    long[] keys = new long[count];
+    for (int i = 0; i < count; i++) {
+      Point point = points.get(order[i]);
+      int x = (int) ((point.x - bounds.x) * scale);
+      int y = (int) ((point.y - bounds.y) * scale);
+      keys[i] = (hilbertIndex(x, y) << 32) | order[i];
+    }
+
+    // The last round contains half the points, the previous round a quarter,
+    // and so on
+    int roundEnd = count;
+    while (roundEnd > 0) {
+      int roundStart = roundEnd / 2;
+      if (roundStart < MIN_BULK_ROUND)
+        roundStart = 0;
+      Arrays.sort(keys, roundStart, roundEnd);
+      roundEnd = roundStart;
+    }
+    for (int i = 0; i < count; i++)
+      order[i] = (int) keys[i];
+    return order;
+  }
+
+  /**
+   * Calculate the distance along a Hilbert curve of a cell within a grid of
+   * 2^HILBERT_ORDER x 2^HILBERT_ORDER cells
+   */
+  private static long hilbertIndex(int x, int y) {
+    int n = 1 << HILBERT_ORDER;
+    long d = 0;
+    for (int cellSize = n / 2; cellSize > 0; cellSize /= 2) {
+      int rx = (x & cellSize) != 0 ? 1 : 0;
+      int ry = (y & cellSize) != 0 ? 1 : 0;
+      d += (long) cellSize * cellSize * ((3 * rx) ^ ry);
+      // Rotate the quadrant, so the curve within it has the standard
+      // orientation
+      if (ry == 0) {
+        if (rx == 1) {
+          x = n - 1 - x;
+          y = n - 1 - y;
+        }
+        int tmp = x;
+        x = y;
+        y = tmp;
+      }
+    }
+    return d;
+  }
+
+  /**
+   * Remove a vertex. The vertex is no longer part of the mesh, but it isn't
+   * reused for subsequently added sites
+   * 
+   * @param vertex
+   *          vertex previously returned by add()
+   */
+  public void remove(Vertex vertex) {
+    s.addLayer(BGND_ELEMENT_QUERY_POINT, s.highlighted(vertex));
+
+    if (s.bigStep())
+      s.show("Remove vertex");
+
+    // Find arbitrary edge leaving vertex, and use it to find an arbitrary
+    // edge bounding the polygonal hole that will result from deleting this
+    // vertex
+    Edge edge = vertex.edges();
+    Edge holeEdge = edge.nextFaceEdge();
+    if (s.step())
+      s.show("Edge of resulting hole", s.highlighted(holeEdge));
+
+    // Constrained edges leaving the vertex are removed with it; but if it
+    // splits exactly one constrained segment in two (i.e., exactly one pair
+    // of its constrained edges is collinear), the segment is restored
+    int constraintCount = 0;
+    int segmentCount = 0;
+    Vertex segmentStart = null;
+    Vertex segmentEnd = null;
+    do {
+      if (isConstrained(edge)) {
+        constraintCount++;
+        Vertex a = edge.destVertex();
+        // Look for a constrained edge in the opposite direction, only
+        // examining each pair once
+        Edge edge2 = edge.nextEdge();
+        while (edge2 != vertex.edges()) {
+          Vertex b = edge2.destVertex();
+          if (isConstrained(edge2) && Predicates.orient2d(a, vertex, b) == 0) {
+            segmentCount++;
+            segmentStart = a;
+            segmentEnd = b;
+          }
+          edge2 = edge2.nextEdge();
+        }
+      }
+      edge = edge.nextEdge();
+    } while (edge != vertex.edges());
+    if (segmentCount != 1)
+      segmentStart = null;
+
+    mGrid.remove(vertex, edge.destVertex());
+    mMesh.deleteVertex(vertex);
+
+    markHoleBoundary(holeEdge);
+
+    triangulateHole(vertex);
+    if (s.bigStep())
+      s.show("Filled hole");
+
+    // Sites that were hidden by the removed constraints may now lie within
+    // the circumcircles of triangles outside the hole, so test the hole's
+    // boundary edges as well
+    if (constraintCount != 0) {
+      ArrayList<Edge> boundaryEdges = new ArrayList<Edge>(mHoleEdges);
+      mMesh.clearMarks();
+      s.pushActive(DETAIL_SWAPS);
+      for (Edge abEdge : boundaryEdges)
+        swapTestQuad(abEdge);
+      s.popActive();
+    }
+
+    s.removeLayer(BGND_ELEMENT_HOLE_BOUNDARY);
+    s.removeLayer(BGND_ELEMENT_QUERY_POINT);
+
+    removeHoleBoundary();
+    if (segmentStart != null)
+      insertConstraint(segmentStart, segmentEnd);
+    mMesh.recycle();
+  }
+
+  /**
+   * Add a constrained edge between two sites. Edges crossing the segment
+   * between the sites are removed, and the triangles on each side of the
+   * segment are rebuilt. The constrained edge is never flipped, and sites
+   * added later won't be connected to sites on its far side; if a site is
+   * later added on the edge, the edge is split into two constrained edges.
+   * If the segment passes through other sites, it is similarly split.
+   * 
+   * @throws GeometryException
+   *           if the segment crosses an existing constrained edge; any
+   *           pieces of the segment between sites preceding the crossing
+   *           will have been added
+   */
+  public void addConstraint(Vertex a, Vertex b) {
+    if (a == b || isHorizonVertex(a) || isHorizonVertex(b))
+      GeometryException.raise("constraint endpoints must be distinct sites");
+    if (s.bigStep())
+      s.show("Add constraint", s.highlightedLine(a, b));
+
+    insertConstraint(a, b);
+
+    if (s.bigStep())
+      s.show("Added constraint");
+    mMesh.recycle();
+  }
+
+  /**
+   * Determine if an edge is constrained (see addConstraint())
+   */
+  public boolean isConstrained(Edge edge) {
+    return edge.hasFlags(EDGEFLAG_CONSTRAINED);
+  }
+
+  private boolean isHorizonVertex(Vertex vertex) {
+    for (int i = 0; i < INITIAL_MESH_VERTICES; i++)
+      if (mMesh.vertex(i) == vertex)
+        return true;
+    return false;
+  }
+
+  private static void constrain(Edge edge) {
+    edge.addFlags(EDGEFLAG_CONSTRAINED);
+    edge.dual().addFlags(EDGEFLAG_CONSTRAINED);
+  }
+
+  private void insertConstraint(Vertex a, Vertex b) {
+    while (a != b)
+      a = insertConstrainedEdge(a, b);
+  }
+
+  /**
+   * Insert a constrained edge from one site towards another, ending at the
+   * first site that lies on the segment between them
+   * 
+   * @return the site at which the edge ends
+   */
+  private Vertex insertConstrainedEdge(Vertex a, Vertex b) {
+    // Find the edge leaving a that lies on the segment, or the triangle
+    // incident with a that the segment enters
+    Edge edge = a.edges();
+    Edge crossedEdge;
+    while (true) {
+      Vertex v = edge.destVertex();
+      double orientation = Predicates.orient2d(a, b, v);
+      if (v == b || (orientation == 0 && pointsAhead(a, b, v))) {
+        constrain(edge);
+        return v;
+      }
+      if (orientation < 0
+          && Predicates.orient2d(a, b, edge.nextEdge().destVertex()) > 0) {
+        crossedEdge = edge.nextFaceEdge();
+        break;
+      }
+      edge = edge.nextEdge();
+      if (edge == a.edges())
+        GeometryException.raise("can't find triangle containing constraint");
+    }
+
+    // Walk through the triangles crossed by the segment, until reaching a
+    // site that lies on it, gathering the crossed edges and the sites to
+    // the left and right of the segment. Each crossed edge is directed from
+    // right to left
+    mConstraintCrossings.clear();
+    mLeftChain.clear();
+    mRightChain.clear();
+    mLeftChain.add(a);
+    mRightChain.add(a);
+    mLeftChain.add(crossedEdge.destVertex());
+    mRightChain.add(crossedEdge.sourceVertex());
+    Vertex c;
+    while (true) {
+      if (isConstrained(crossedEdge))
+        GeometryException.raise("constraint crosses existing constraint: "
+            + crossedEdge);
+      mConstraintCrossings.add(crossedEdge);
+      Edge nextEdge = crossedEdge.dual().nextFaceEdge();
+      Vertex x = nextEdge.destVertex();
+      double orientation = Predicates.orient2d(a, b, x);
+      if (orientation == 0) {
+        c = x;
+        break;
+      }
+      if (orientation > 0) {
+        mLeftChain.add(x);
+        crossedEdge = nextEdge;
+      } else {
+        mRightChain.add(x);
+        crossedEdge = nextEdge.nextFaceEdge();
+      }
+    }
+    mLeftChain.add(c);
+    mRightChain.add(c);
+    if (s.step())
+      s.show("Cavity of constraint", s.highlightedLine(a, c));
+
+    for (Edge crossing : mConstraintCrossings)
+      mMesh.deleteEdge(crossing);
+    constrain(mMesh.addEdge(a, c));
+
+    // Triangulate the pseudo-polygons on each side of the new edge
+    triangulatePseudoPolygon(mLeftChain);
+    Collections.reverse(mRightChain);
+    triangulatePseudoPolygon(mRightChain);
+    if (s.step())
+      s.show("Retriangulated constraint cavity", s.highlightedLine(a, c));
+    return c;
+  }
+
+  /**
+   * Determine if a point collinear with a segment ab lies beyond a (in the
+   * direction of b)
+   */
+  private static boolean pointsAhead(Point a, Point b, Point point) {
+    return (point.x - a.x) * (double) (b.x - a.x) + (point.y - a.y)
+        * (double) (b.y - a.y) > 0;
+  }
+
+  /**
+   * Triangulate a polygon formed by an edge pq and a chain of sites lying to
+   * its left, by the constrained Delaunay triangulation. Uses the algorithm
+   * of Anglada: the site c whose circumcircle pqc contains no other site of
+   * the chain forms a triangle with pq, and the polygons on either side of
+   * this triangle are triangulated in turn
+   * 
+   * @param chain
+   *          the sites p, ..., q; the chain's consecutive sites must already
+   *          be joined by edges, as must p and q
+   */
+  private void triangulatePseudoPolygon(List<Vertex> chain) {
+    mChainRanges.clear();
+    mChainRanges.add(0);
+    mChainRanges.add(chain.size() - 1);
+    while (!mChainRanges.isEmpty()) {
+      int j = mChainRanges.pop();
+      int i = mChainRanges.pop();
+      if (j - i < 2)
+        continue;
+      Vertex p = chain.get(i);
+      Vertex q = chain.get(j);
+      int m = i + 1;
+      for (int k = i + 2; k < j; k++) {
+        if (Predicates.incircle(p, q, chain.get(m), chain.get(k)) > 0)
+          m = k;
+      }
+      Vertex c = chain.get(m);
+      if (m - i > 1)
+        mMesh.addEdge(p, c);
+      if (j - m > 1)
+        mMesh.addEdge(c, q);
+      mChainRanges.add(i);
+      mChainRanges.add(m);
+      mChainRanges.add(m);
+      mChainRanges.add(j);
+    }
+  }
+
+  public int nSites() {
+    return mMesh.numVertices() - INITIAL_MESH_VERTICES;
+  }
+
+  public Vertex site(int index) {
+    if (index < 0)
+      throw new IllegalArgumentException();
+    int i = index + INITIAL_MESH_VERTICES;
+    return mMesh.vertex(i);
+  }
+
+  /**
+   * Construct the Voronoi polygon for one of the sites
+   */
+  public Polygon constructVoronoiPolygon(int siteIndex) {
+    Polygon p = new Polygon();
+    Vertex site = site(siteIndex);
+    Edge startEdge = site.edges();
+
+    Point prevSeg1 = new Point();
+    Point prevSeg2 = new Point();
+
+    // Calculate last bisector
+    {
+      Edge lastEdge = startEdge.prevEdge();
+      calculateBisector(site, lastEdge.destVertex(), prevSeg1, prevSeg2);
+    }
+    Point currSeg1 = new Point();
+    Point currSeg2 = new Point();
+
+    Edge edge = startEdge;
+    while (true) {
+      calculateBisector(site, edge.destVertex(), currSeg1, currSeg2);
+      Point polyVertex = lineLineIntersection(prevSeg1, prevSeg2, currSeg1,
+          currSeg2, null);
+      p.add(polyVertex);
+
+      edge = edge.nextEdge();
+      if (edge == startEdge)
+        break;
+
+      prevSeg1.setTo(currSeg1);
+      prevSeg2.setTo(currSeg2);
+    }
+    return p;
+  }
+
+  /**
+   * Construct the Voronoi diagram of all the sites; much faster than calling
+   * constructVoronoiPolygon() for each site. Builds the mesh's face table
+   * (see Mesh.faceOf()), which is then maintained as sites are added and
+   * removed
+   *
+   * @param inParallel
+   *          if true, and there are many sites, divides the work between
+   *          multiple threads
+   * @return the diagram, whose cell i belongs to site(i)
+   */
+  public VoronoiDiagram constructVoronoiDiagram(boolean inParallel) {
+    if (inParallel && buildThreadCount() > 1)
+      return VoronoiDiagram.construct(mMesh, INITIAL_MESH_VERTICES,
+          buildExecutor(), buildThreadCount());
+    return VoronoiDiagram.construct(mMesh, INITIAL_MESH_VERTICES, null, 1);
+  }
+
+  /**
+   * Calculate the bisector between two Voronoi sites
+   * 
+   * @param aSite
+   *          first site
+   * @param bSite
+   *          second site
+   * @param pt1
+   *          where to store one point on bisector
+   * @param pt2
+   *          where to store second point on bisector
+   */
+  private void calculateBisector(Point aSite, Point bSite, Point pt1, Point pt2) {
+    pt1.setTo((aSite.x + bSite.x) / 2, (aSite.y + bSite.y) / 2);
+    pt2.setTo(pt1.x - (bSite.y - aSite.y), pt1.y + (bSite.x - aSite.x));
+  }
+
+  /**
+   * Gather edges of hole into array, and mark them as such. Marks from any
+   * previous hole are discarded in constant time, so no pass is required to
+   * clear them
+   * 
+   * @param holeEdge
+   *          arbitrary edge on hole boundary
+   */
+  private void markHoleBoundary(Edge holeEdge) {
+    // Throw out any previous hole, in case there was some sort of error
+    // previously
+    removeHoleBoundary();
+    mMesh.clearMarks();
+    Edge edge = holeEdge;
+    while (true) {
+      mMesh.mark(edge);
+      mHoleEdges.add(edge);
+      edge = edge.nextFaceEdge();
+      if (edge == holeEdge)
+        break;
+    }
+    s.addLayer(BGND_ELEMENT_HOLE_BOUNDARY, new Renderable() {
+      public void render(AlgorithmStepper stepper) {
+        s.setLineWidth(1);
+        s.setColor(RenderTools.COLOR_DARKGREEN);
+        for (Edge edge : mHoleEdges) {
+          s.renderLine(edge.sourceVertex(), edge.destVertex());
+        }
+      }
+    });
+  }
+
+  private void triangulateHole(Point kernelPoint) {
+    if (s.step())
+      s.show("Triangulating hole");
+    StarshapedHoleTriangulator triangulator = new StarshapedHoleTriangulator(s,
+        mMesh, kernelPoint, mHoleEdges.get(0));
+    s.pushActive(DETAIL_TRIANGULATE_HOLE);
+    triangulator.run();
+    s.popActive();
+
+    s.pushActive(DETAIL_SWAPS);
+    for (Edge abEdge : triangulator.getNewEdges()) {
+      if (s.step())
+        s.show("Process next hole edge", s.highlighted(abEdge));
+      swapTestQuad(abEdge);
+    }
+    s.popActive();
+  }
+
+  /**
+   * Throw away the hole boundary edges. Their marks will be discarded by the
+   * next call to markHoleBoundary()
+   */
+  private void removeHoleBoundary() {
+    mHoleEdges.clear();
+  }
+
+  private Vertex insertPointIntoTriangle(Point point, Edge abEdge) {
+    // If the point lies on one of the triangle's edges, split that edge
+    // instead, since the partitioning edges would otherwise be collinear
+    // with it
+    Edge edge = abEdge;
+    for (int i = 0; i < 3; i++) {
+      if (Predicates
+          .orient2d(edge.sourceVertex(), edge.destVertex(), point) == 0)
+        return insertPointIntoEdge(point, edge);
+      edge = edge.nextFaceEdge();
+    }
+
+    Vertex v = mMesh.addVertex(point);
+    Vertex va = abEdge.sourceVertex();
+    Vertex vb = abEdge.destVertex();
+    Edge bcEdge = abEdge.nextFaceEdge();
+    Edge caEdge = bcEdge.nextFaceEdge();
+
+    Vertex vc = bcEdge.destVertex();
+
+    mMesh.addEdge(va, v);
+    mMesh.addEdge(vb, v);
+    mMesh.addEdge(vc, v);
+    if (s.step())
+      s.show("Partitioned triangle",
+          s.highlighted(Polyline.closedPolyline(va, vb, vc)), s.line(va, v),
+          s.line(vb, v), s.line(vc, v));
+
+    // Note (see issue #53): the sequence of edges examined in each of the
+    // three swapTest calls are disjoint, so no special bookkeeping is
+    // required.
+
+    s.pushActive(DETAIL_SWAPS);
+    swapTest(abEdge, v);
+    swapTest(bcEdge, v);
+    swapTest(caEdge, v);
+    s.popActive();
+
+    if (s.step())
+      s.show("Done insertion");
+
+    return v;
+  }
+
+  /**
+   * Insert a point that lies on the interior of an edge ab, which has faces abc
+   * to its left and bad to its right; replaces the edge with four edges from
+   * the new vertex to a, b, c, and d
+   */
+  private Vertex insertPointIntoEdge(Point point, Edge abEdge) {
+    if (abEdge.hasFlags(EDGEFLAG_HORIZON)
+        || abEdge.dual().hasFlags(EDGEFLAG_HORIZON))
+      GeometryException.raise("point lies on horizon: " + point);
+    Vertex va = abEdge.sourceVertex();
+    Vertex vb = abEdge.destVertex();
+    Edge bcEdge = abEdge.nextFaceEdge();
+    Edge caEdge = bcEdge.nextFaceEdge();
+    Edge adEdge = abEdge.dual().nextFaceEdge();
+    Edge dbEdge = adEdge.nextFaceEdge();
+    Vertex vc = bcEdge.destVertex();
+    Vertex vd = adEdge.destVertex();
+
+    boolean constrained = isConstrained(abEdge);
+    mMesh.deleteEdge(abEdge);
+    Vertex v = mMesh.addVertex(point);
+    Edge avEdge = mMesh.addEdge(va, v);
+    Edge bvEdge = mMesh.addEdge(vb, v);
+    if (constrained) {
+      constrain(avEdge);
+      constrain(bvEdge);
+    }
+    mMesh.addEdge(vc, v);
+    mMesh.addEdge(vd, v);
+    if (s.step())
+      s.show("Split edge", s.highlightedLine(va, vb), s.line(vc, v),
+          s.line(vd, v));
+
+    s.pushActive(DETAIL_SWAPS);
+    swapTest(bcEdge, v);
+    swapTest(caEdge, v);
+    swapTest(adEdge, v);
+    swapTest(dbEdge, v);
+    s.popActive();
+
+    if (s.step())
+      s.show("Done insertion");
+
+    return v;
+  }
+
+  /**
+   * Given edge ab and a vertex p, determines if a face baw to the right of ab
+   * exists, and if so, whether its third vertex w intersects the circumcircle
+   * of abp. If so, flips ab with wp, and recursively tests aw and wb against
+   * vertex p.
+   * 
+   * @param abEdge
+   * @param p
+   */
+  private void swapTest(Edge abEdge, Vertex p) {
+    ASSERT(!abEdge.deleted());
+
+    // This is perhaps not necessary, since if no opposite face exists,
+    // it would choose the next horizon vertex which should always
+    // fail the incircle test;
+    // but that is a subtle point so we'll be explicit
+    if (abEdge.hasFlags(EDGEFLAG_HORIZON))
+      return;
+    if (isConstrained(abEdge))
+      return;
+
+    Edge baEdge = abEdge.dual();
+    Edge awEdge = baEdge.nextFaceEdge();
+    Vertex w = awEdge.destVertex();
+    if (s.step())
+      s.show("SwapTest", s.highlighted(abEdge), s.highlighted(p),
+          s.highlighted(w));
+
+    Point a = abEdge.sourceVertex();
+    Point b = abEdge.destVertex();
+
+    double determinant = Predicates.incircle(a, w, b, p);
+    if (s.step())
+      s.show("Sign of determinant: " + Math.signum(determinant));
+    if (determinant > 0) {
+
+      if (s.step())
+        s.show("Flipping edge", s.highlighted(abEdge), s.highlightedLine(p, w));
+
+      mMesh.deleteEdge(abEdge);
+      Edge pw = mMesh.addEdge(p, w);
+      Edge wbEdge = pw.nextFaceEdge();
+      swapTest(awEdge, p);
+      swapTest(wbEdge, p);
+    }
+  }
+
+  /**
+   * Given edge ab, of face abc, determines if a face baw to the right of ab
+   * exists, and if so, whether its third vertex w intersects the circumcircle
+   * of abc. If so, flips ab with wc, and recursively tests the four edges aw,
+   * wb, bc, and ca.
+   * 
+   * @param abEdge
+   */
+  private void swapTestQuad(Edge abEdge) {
+
+    // If this edge has been deleted, do nothing
+    if (abEdge.deleted()) {
+      if (s.step())
+        s.show("SwapTestQuad, edge has been deleted", s.highlighted(abEdge));
+      return;
+    }
+    if (mMesh.isMarked(abEdge)) {
+      if (s.step())
+        s.show("SwapTestQuad, hole boundary", s.highlighted(abEdge));
+      return;
+    }
+    if (isConstrained(abEdge)) {
+      if (s.step())
+        s.show("SwapTestQuad, constrained", s.highlighted(abEdge));
+      return;
+    }
+
+    Edge baEdge = abEdge.dual();
+    Edge awEdge = baEdge.nextFaceEdge();
+
+    Vertex w = awEdge.destVertex();
+    if (s.step())
+      s.show("SwapTestQuad", s.highlighted(abEdge),
+          s.highlighted(baEdge.nextFaceEdge()),
+          s.highlighted(baEdge.prevFaceEdge()),
+          s.highlighted(abEdge.nextFaceEdge()),
+          s.highlighted(abEdge.prevFaceEdge()), s.highlighted(w));
+
+    Point a = abEdge.sourceVertex();
+    Point b = abEdge.destVertex();
+    Vertex c = abEdge.nextFaceEdge().destVertex();
+
+    double determinant = Predicates.incircle(a, w, b, c);
+    if (s.step())
+      s.show("Sign of determinant: " + Math.signum(determinant));
+    if (determinant > 0) {
+      if (s.step())
+        s.show("Flipping edge", s.highlighted(abEdge), s.highlightedLine(c, w));
+
+      mMesh.deleteEdge(abEdge);
+
+      Edge cwEdge = mMesh.addEdge(c, w);
+      Edge wbEdge = cwEdge.nextFaceEdge();
+      Edge bcEdge = cwEdge.prevFaceEdge();
+      Edge caEdge = cwEdge.prevEdge();
+
+      swapTestQuad(awEdge);
+      swapTestQuad(wbEdge);
+      swapTestQuad(bcEdge);
+      swapTestQuad(caEdge);
+    }
+  }
+
+  private void chooseSampleVertices() {
+    int nSamples = determineOptimalSampleSize();
+    int numVertices = mMesh.numVertices();
+    mSamples.clear();
+    for (int i = 0; i < nSamples; i++) {
+      int k = mRandom.nextInt(numVertices);
+      Vertex sample = mMesh.vertex(k);
+      mSamples.add(sample);
+    }
+  }
+
+  private Vertex findClosestSampleVertex(Point point) {
+    Vertex closestSample = null;
+    float closestSquaredDistance = 0;
+    for (Vertex sample : mSamples) {
+      float dist = squaredDistanceBetween(point, sample);
+      if (closestSample == null || dist < closestSquaredDistance) {
+        closestSample = sample;
+        closestSquaredDistance = dist;
+      }
+    }
+    return closestSample;
+  }
+
+  private Edge findInitialSearchEdgeForPoint(Point point) {
+    s.pushActive(DETAIL_FIND_TRIANGLE);
+
+    // Start from a nearby vertex found in the grid, unless we're inserting
+    // points in bulk; fall back to a random sample of the vertices if the
+    // grid has none near the point
+    mSamples.clear();
+    Vertex closestSample = mSearchStartVertex;
+    if (closestSample == null)
+      closestSample = mGrid.find(point);
+    if (closestSample == null) {
+      chooseSampleVertices();
+      closestSample = findClosestSampleVertex(point);
+    }
+
+    // Choose an arbitrary edge from this vertex, one that the point isn't
+    // collinear with
+    Edge edge = closestSample.edges();
+    if (edge == null)
+      GeometryException.raise("vertex has no edges: " + closestSample);
+    double orientation;
+    Edge firstEdge = edge;
+    while (true) {
+      orientation = Predicates.orient2d(edge.sourceVertex(),
+          edge.destVertex(), point);
+      if (orientation != 0)
+        break;
+      edge = edge.nextEdge();
+      if (edge == firstEdge)
+        GeometryException.raise("point already exists: " + point);
+    }
+    if (orientation < 0)
+      edge = edge.dual();
+    Edge initialEdge = edge;
+    if (s.step())
+      s.show("Closest sample and initial edge", s.highlighted(initialEdge),
+          s.highlighted(closestSample), new Renderable() {
+            @Override
+            public void render(AlgorithmStepper s) {
+              s.setColor(RenderTools.COLOR_DARKGREEN);
+              for (Vertex v : mSamples) {
+                s.render(v);
+              }
+            }
+          });
+    s.popActive();
+    return initialEdge;
+  }
+
+  private Vertex oppositeVertex(Edge triangleEdge) {
+    return triangleEdge.nextFaceEdge().destVertex();
+  }
+
+  private Edge findTriangleContainingPoint(final Point queryPoint) {
+    s.pushActive(DETAIL_FIND_TRIANGLE);
+
+    mSearchHistory.clear();
+    s.addLayer(BGND_ELEMENT_SEARCH_HISTORY, new Renderable() {
+      @Override
+      public void render(AlgorithmStepper s) {
+        s.setColor(RenderTools.COLOR_DARKGREEN);
+        s.setLineWidth(2);
+        Edge prevEdge = null;
+        Point prevCentroid = null;
+        for (Edge edge : mSearchHistory) {
+          s.setLineWidth(1);
+          Point p1 = edge.sourceVertex();
+          Point p2 = edge.destVertex();
+          Point centroid = faceCentroid(edge);
+
+          if (prevEdge != null) {
+            // If segment connecting centroids intersects edge,
+            // just draw straight line
+            if (segSegIntersection(prevCentroid, centroid, p1, p2, null) != null) {
+              s.renderLine(prevCentroid, centroid);
+            } else {
+              Point midPoint = interpolateBetween(p1, p2, .5f);
+              s.renderLine(midPoint, centroid);
+              s.renderLine(prevCentroid, midPoint);
+            }
+          }
+          s.render(centroid);
+          prevEdge = edge;
+          prevCentroid = centroid;
+        }
+      }
+    });
+
+    if (s.step())
+      s.show("Finding triangle containing point");
+
+    Edge aEdge = findInitialSearchEdgeForPoint(queryPoint);
+    Edge bEdge = null;
+    Edge cEdge = null;
+
+    if (!pointLeftOfEdge(queryPoint, aEdge)) {
+      GeometryException.raise("query point " + queryPoint
+          + " not to left of search edge " + aEdge);
+    }
+
+    // Construct segment from midpoint of the initial edge and the query
+    // point; we'll try to follow this line
+    final Point bearingStartPoint = interpolateBetween(aEdge.sourceVertex(),
+        aEdge.destVertex(), .5f);
+    s.addLayer(BGND_ELEMENT_BEARING_LINE, new Renderable() {
+      public void render(AlgorithmStepper stepper) {
+        s.setLineWidth(2);
+        s.setColor(Color.LTGRAY);
+        Segment.directed(bearingStartPoint, queryPoint).render(s);
+      }
+    });
+
+    int maxIterations = mMesh.numVertices();
+    while (true) {
+      if (maxIterations-- == 0)
+        GeometryException.raise("too many iterations");
+
+      mSearchHistory.add(aEdge);
+
+      bEdge = aEdge.nextFaceEdge();
+      cEdge = bEdge.nextFaceEdge();
+      if (oppositeVertex(bEdge) != aEdge.sourceVertex())
+        GeometryException
+            .raise("search edge not adjacent to triangle " + aEdge);
+      // A point coinciding with a vertex can't be inserted (and the search
+      // might otherwise circle the vertex)
+      for (Edge edge = aEdge; true; edge = edge.nextFaceEdge()) {
+        Point vertex = edge.sourceVertex();
+        if (vertex.x == queryPoint.x && vertex.y == queryPoint.y)
+          GeometryException.raise("point already exists: " + queryPoint);
+        if (edge == cEdge)
+          break;
+      }
+      if (s.step())
+        s.show("Current search triangle", s.highlighted(aEdge),
+            s.highlighted(oppositeVertex(aEdge)));
+
+      boolean bLeftFlag = pointLeftOfEdge(queryPoint, bEdge);
+      boolean cLeftFlag = pointLeftOfEdge(queryPoint, cEdge);
+      if (bLeftFlag && cLeftFlag) {
+        break;
+      }
+
+      if (bLeftFlag) {
+        aEdge = cEdge.dual();
+      } else if (cLeftFlag) {
+        aEdge = bEdge.dual();
+      } else {
+        Vertex farPoint = bEdge.destVertex();
+        if (Predicates.orient2d(bearingStartPoint, queryPoint, farPoint) > 0) {
+          aEdge = bEdge.dual();
+        } else {
+          aEdge = cEdge.dual();
+        }
+      }
+    }
+    if (s.bigStep())
+      s.show(
+          "Triangle containing query point",
+          s.highlighted(Polyline.closedPolyline(aEdge.sourceVertex(),
+              bEdge.sourceVertex(), cEdge.sourceVertex())));
+    if (s.isActive()) {
+      s.removeLayer(BGND_ELEMENT_SEARCH_HISTORY);
+      s.removeLayer(BGND_ELEMENT_BEARING_LINE);
+    }
+    s.popActive();
+
+    return aEdge;
+  }
+
+  private int determineOptimalSampleSize() {
+    int populationSize = mMesh.numVertices();
+    // Calculate log_2 (population)
+    int optimalSize = (int) (Math.log(populationSize) / .693f);
+    if (s.step())
+      s.show("Population:" + populationSize + " Optimal:" + optimalSize);
+    return optimalSize;
+  }
+
+  private boolean pointLeftOfEdge(Point query, Edge edge) {
+    Point p1 = edge.sourceVertex();
+    Point p2 = edge.destVertex();
+    return Predicates.orient2d(p1, p2, query) > 0;
+  }
+
+  private void constructMesh(Mesh mesh, Rect boundingRect) {
+    mesh.clear();
+    // Reuse deleted edges; we call recycle() at the end of each operation,
+    // once we're no longer referring to them. Vertices aren't reused, since
+    // clients keep those returned by add() as handles to the sites
+    mesh.setPoolingEnabled(false, true);
+
+    if (boundingRect == null)
+      boundingRect = new Rect(-HORIZON, -HORIZON, HORIZON * 2, HORIZON * 2);
+
+    Vertex v0 = mesh.addVertex(boundingRect.bottomLeft());
+    Vertex v1 = mesh.addVertex(boundingRect.bottomRight());
+    Vertex v2 = mesh.addVertex(boundingRect.topRight());
+    Point p3 = boundingRect.topLeft();
+
+    // Perturb one point so the four points aren't collinear
+    if (true) {
+      float perturbAmount = boundingRect.maxDim() * .01f;
+      p3.x += perturbAmount;
+      p3.y += perturbAmount * .7f;
+    } else {
+      // Note with this old way the perturbed v3 is such that the
+      // diagonals are still perpendicular; also the perturbation is not a
+      // fraction of the mesh size, so this leads to robustness issues
+      // with the incircle test, and throws a GeometryException.
+      p3.x -= 1e-3f;
+      p3.y += 1e-3f;
+    }
+    Vertex v3 = mesh.addVertex(p3);
+
+    // Mark these four edges (not their duals) as horizon edges
+    mesh.addEdge(v0, v1).addFlags(EDGEFLAG_HORIZON);
+    mesh.addEdge(v1, v2).addFlags(EDGEFLAG_HORIZON);
+    mesh.addEdge(v2, v3).addFlags(EDGEFLAG_HORIZON);
+    mesh.addEdge(v3, v0).addFlags(EDGEFLAG_HORIZON);
+
+    mesh.addEdge(v0, v2);
+
+    mMesh = mesh;
+  }
+
+  private Point faceCentroid(Edge faceEdge) {
+    Point p = new Point(faceEdge.sourceVertex());
+    p.add(faceEdge.destVertex());
+    p.add(oppositeVertex(faceEdge));
+    p.setTo(p.x / 3, p.y / 3);
+    return p;
+  }
+
+  private AlgorithmStepper s;
+  private Random mRandom;
+  private Mesh mMesh;
+  private ArrayList<Edge> mHoleEdges = new ArrayList();
+  private ArrayList<Edge> mConstraintCrossings = new ArrayList();
+  private ArrayList<Vertex> mLeftChain = new ArrayList();
+  private ArrayList<Vertex> mRightChain = new ArrayList();
+  private IntArray mChainRanges = new IntArray();
+  private ArrayList<Vertex> mSamples = new ArrayList();
+  // If not null, the vertex to start the search for a point's triangle from
+  private Vertex mSearchStartVertex;
+  // For finding a vertex near a point, to start the search from
+  private VertexGrid mGrid = new VertexGrid();
+  // Bounds of the sites added so far
+  private Rect mSiteBounds;
+  // For display purposes only
+  private ArrayList<Edge> mSearchHistory = new ArrayList();
+}
@@ -0,0 +1,160 @@
+package com.js.geometry;
+
+import com.js.basic.Point;
+import com.js.basic.Predicates;
+
+/**
+ * Constructs Delaunay triangulations using the divide and conquer algorithm
+ * of Guibas and Stolfi: the vertices, sorted by x (then y), are split into
+ * left and right halves, each is triangulated recursively, and the two
+ * triangulations are merged by zipping them together from their lower common
+ * tangent upwards.
+ *
+ * A triangulation is represented by two edges on its convex hull: the CCW
+ * hull edge leaving its leftmost vertex, and the CW hull edge leaving its
+ * rightmost vertex
+ */
+final class DivideAndConquerDelaunay {
+
+	private DivideAndConquerDelaunay() {
+	}
+
+	/**
+	 * Triangulate a range of a mesh's vertices, which must be sorted by x
+	 * (then y), and have no edges
+	 *
+	 * @param start
+	 *            index of first vertex
+	 * @param end
+	 *            one plus index of last vertex; there must be at least two
+	 *            vertices
+	 * @return the hull edges leaving the leftmost and rightmost vertices
+	 */
+	public static Edge[] triangulate(Mesh mesh, int start, int end) {
+		int count = end - start;
+		if (count == 2) {
+			Edge a = mesh.addEdge(mesh.vertex(start), mesh.vertex(start + 1));
+			return new Edge[] { a, a.dual() };
+		}
+		if (count == 3) {
+			Vertex s1 = mesh.vertex(start);
+			Vertex s2 = mesh.vertex(start + 1);
+			Vertex s3 = mesh.vertex(start + 2);
+			Edge a = mesh.addEdge(s1, s2);
+			Edge b = mesh.addEdge(s2, s3);
+			double orientation = Predicates.orient2d(s1, s2, s3);
+			if (orientation > 0) {
+				mesh.addEdge(s3, s1);
+			} else if (orientation < 0) {
+				Edge c = mesh.addEdge(s3, s1);
+				return new Edge[] { c.dual(), c };
+			}
+			return new Edge[] { a, b.dual() };
+		}
+		int mid = start + count / 2;
+		Edge[] left = triangulate(mesh, start, mid);
+		Edge[] right = triangulate(mesh, mid, end);
+		return merge(mesh, left[0], left[1], right[0], right[1]);
+	}
+
+	/**
+	 * Merge two adjacent triangulations, all of whose vertices in the left
+	 * precede (in x, then y order) all of those in the right
+	 *
+	 * @param ldo
+	 *            CCW hull edge leaving leftmost vertex of left triangulation
+	 * @param ldi
+	 *            CW hull edge leaving rightmost vertex of left triangulation
+	 * @param rdi
+	 *            CCW hull edge leaving leftmost vertex of right triangulation
+	 * @param rdo
+	 *            CW hull edge leaving rightmost vertex of right triangulation
+	 * @return the hull edges leaving the leftmost and rightmost vertices of
+	 *         the merged triangulation
+	 */
+	public static Edge[] merge(Mesh mesh, Edge ldo, Edge ldi, Edge rdi,
+			Edge rdo) {
+		// Find the lower common tangent of the two hulls
+		while (true) {
+			if (leftOf(rdi.sourceVertex(), ldi))
+				ldi = ldi.nextFaceEdge();
+			else if (rightOf(ldi.sourceVertex(), rdi))
+				rdi = rdi.dual().nextEdge();
+			else
+				break;
+		}
+
+		// Add the tangent as the first cross edge, from right to left
+		Edge base = mesh.addEdge(rdi.sourceVertex(), ldi.sourceVertex());
+		if (ldi.sourceVertex() == ldo.sourceVertex())
+			ldo = base.dual();
+		if (rdi.sourceVertex() == rdo.sourceVertex())
+			rdo = base;
+
+		while (true) {
+			Vertex baseLeft = base.destVertex();
+			Vertex baseRight = base.sourceVertex();
+
+			// Find the left candidate for the next cross edge, deleting any
+			// edges from the base's left endpoint that fail the circle test
+			// (which is degenerate once the next edge is the base itself)
+			Edge lcand = base.dual().nextEdge();
+			if (valid(lcand, base)) {
+				while (lcand.nextEdge() != base.dual()
+						&& Predicates.incircle(baseLeft, baseRight,
+								lcand.destVertex(), lcand.nextEdge()
+										.destVertex()) > 0) {
+					Edge next = lcand.nextEdge();
+					mesh.deleteEdge(lcand);
+					lcand = next;
+				}
+			}
+			// Symmetrically, for the right candidate
+			Edge rcand = base.prevEdge();
+			if (valid(rcand, base)) {
+				while (rcand.prevEdge() != base
+						&& Predicates.incircle(baseLeft, baseRight,
+								rcand.destVertex(), rcand.prevEdge()
+										.destVertex()) > 0) {
+					Edge prev = rcand.prevEdge();
+					mesh.deleteEdge(rcand);
+					rcand = prev;
+				}
+			}
+
+			boolean leftValid = valid(lcand, base);
+			boolean rightValid = valid(rcand, base);
+			// If neither is valid, the base is the upper common tangent
+			if (!leftValid && !rightValid)
+				break;
+
+			// Connect to whichever candidate's circumcircle doesn't contain
+			// the other
+			if (!leftValid
+					|| (rightValid && Predicates.incircle(lcand.destVertex(),
+							lcand.sourceVertex(), rcand.sourceVertex(),
+							rcand.destVertex()) > 0))
+				base = mesh.addEdge(rcand.destVertex(), baseLeft);
+			else
+				base = mesh.addEdge(baseRight, lcand.destVertex());
+		}
+		return new Edge[] { ldo, rdo };
+	}
+
+	/**
+	 * Determine if a candidate edge's destination lies above the base edge
+	 */
+	private static boolean valid(Edge candidate, Edge base) {
+		return rightOf(candidate.destVertex(), base);
+	}
+
+	private static boolean leftOf(Point point, Edge edge) {
+		return Predicates.orient2d(point, edge.sourceVertex(),
+				edge.destVertex()) > 0;
+	}
+
+	private static boolean rightOf(Point point, Edge edge) {
+		return Predicates.orient2d(point, edge.destVertex(),
+				edge.sourceVertex()) > 0;
+	}
+}
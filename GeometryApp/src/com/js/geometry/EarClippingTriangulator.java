@@ -0,0 +1,388 @@
+package com.js.geometry;
+
+import java.util.Arrays;
+
+import com.js.basic.Point;
+import com.js.basic.Predicates;
+
+/**
+ * Triangulates a CCW polygon by ear clipping. For polygons with few vertices
+ * this is faster than PolygonTriangulator's sweep, since it doesn't need to
+ * sort the vertices or construct a mesh.
+ *
+ * The vertices are kept in a doubly linked list, stored in arrays. For larger
+ * polygons, the vertices are also linked in z-order (i.e., sorted along a
+ * Morton curve), so the test for vertices within a candidate ear need only
+ * examine those whose z-order values lie within the ear's bounding box.
+ *
+ * Polygons whose edges cross are rejected, since clipping can still succeed
+ * for them, producing overlapping triangles. Triangulation fails for these
+ * (and may fail for other polygons that aren't simple); the caller should
+ * then fall back to PolygonTriangulator (which will report the problem)
+ */
+public final class EarClippingTriangulator {
+
+	/**
+	 * Polygons with at least this many vertices use the z-order index
+	 */
+	private static final int HASH_MIN_VERTICES = 128;
+
+	private static final int NONE = -1;
+
+	/**
+	 * Triangulate a polygon
+	 *
+	 * @param polygon
+	 *            CCW polygon
+	 * @param triangles
+	 *            the triangles are appended to this array, as triples of
+	 *            vertex indices in CCW order
+	 * @return true if successful; if false, the contents of triangles are
+	 *         undefined
+	 */
+	public boolean triangulate(Polygon polygon, IntArray triangles) {
+		int count = polygon.numVertices();
+		if (count < 3)
+			return false;
+		prepare(polygon);
+		if (edgesCross())
+			return false;
+		if (count >= HASH_MIN_VERTICES)
+			buildZOrderIndex();
+
+		int ear = 0;
+		int stop = ear;
+		int pass = 0;
+		while (mPrev[ear] != mNext[ear]) {
+			int prev = mPrev[ear];
+			int next = mNext[ear];
+			if (mHashed ? isEarHashed(ear) : isEar(ear)) {
+				triangles.add(prev);
+				triangles.add(ear);
+				triangles.add(next);
+				remove(ear);
+				// Skipping the next vertex leads to fewer sliver triangles
+				ear = mNext[next];
+				stop = ear;
+				pass = 0;
+				continue;
+			}
+			ear = next;
+			if (ear == stop) {
+				// We've gone all the way around without finding an ear; try
+				// again after removing any degenerate vertices
+				if (pass != 0)
+					return false;
+				pass++;
+				ear = removeDegenerateVertices(ear);
+				stop = ear;
+			}
+		}
+		return true;
+	}
+
+	private void prepare(Polygon polygon) {
+		int count = polygon.numVertices();
+		if (mX == null || mX.length < count) {
+			int capacity = Math.max(16, count);
+			mX = new float[capacity];
+			mY = new float[capacity];
+			mPrev = new int[capacity];
+			mNext = new int[capacity];
+			mZ = new int[capacity];
+			mPrevZ = new int[capacity];
+			mNextZ = new int[capacity];
+			mEdgeOrder = new long[capacity];
+		}
+		for (int i = 0; i < count; i++) {
+			Point point = polygon.vertex(i);
+			mX[i] = point.x;
+			mY[i] = point.y;
+			mPrev[i] = (i == 0) ? count - 1 : i - 1;
+			mNext[i] = (i == count - 1) ? 0 : i + 1;
+		}
+		mCount = count;
+		mHashed = false;
+	}
+
+	/**
+	 * Determine if any two edges of the polygon cross. The edges are sorted by
+	 * their leftmost x coordinates, so each need only be tested against those
+	 * that follow it until one starts to the right of it
+	 */
+	private boolean edgesCross() {
+		for (int i = 0; i < mCount; i++) {
+			float minX = Math.min(mX[i], mX[mNext[i]]);
+			mEdgeOrder[i] = ((long) sortableBits(minX) << 32) | i;
+		}
+		Arrays.sort(mEdgeOrder, 0, mCount);
+
+		for (int i = 0; i < mCount; i++) {
+			int a = (int) mEdgeOrder[i];
+			int b = mNext[a];
+			float maxX = Math.max(mX[a], mX[b]);
+			for (int j = i + 1; j < mCount; j++) {
+				int c = (int) mEdgeOrder[j];
+				int d = mNext[c];
+				if (Math.min(mX[c], mX[d]) > maxX)
+					break;
+				if (segmentsCross(a, b, c, d))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Map a float to an int with the same ordering
+	 */
+	private static int sortableBits(float value) {
+		int bits = Float.floatToIntBits(value);
+		return (bits < 0) ? bits ^ Integer.MAX_VALUE : bits;
+	}
+
+	/**
+	 * Determine if two segments cross at a point interior to both (using exact
+	 * arithmetic); segments that share an endpoint never do
+	 */
+	private boolean segmentsCross(int a, int b, int c, int d) {
+		return straddles(a, b, c, d) && straddles(c, d, a, b);
+	}
+
+	/**
+	 * Determine if points c and d lie strictly on opposite sides of the line
+	 * through a and b
+	 */
+	private boolean straddles(int a, int b, int c, int d) {
+		double sideC = Predicates.orient2d(mX[a], mY[a], mX[b], mY[b], mX[c],
+				mY[c]);
+		double sideD = Predicates.orient2d(mX[a], mY[a], mX[b], mY[b], mX[d],
+				mY[d]);
+		return (sideC < 0 && sideD > 0) || (sideC > 0 && sideD < 0);
+	}
+
+	/**
+	 * Calculate each vertex's z-order value, and link the vertices in that
+	 * order
+	 */
+	private void buildZOrderIndex() {
+		float minX = mX[0];
+		float minY = mY[0];
+		float maxX = minX;
+		float maxY = minY;
+		for (int i = 1; i < mCount; i++) {
+			minX = Math.min(minX, mX[i]);
+			minY = Math.min(minY, mY[i]);
+			maxX = Math.max(maxX, mX[i]);
+			maxY = Math.max(maxY, mY[i]);
+		}
+		float size = Math.max(maxX - minX, maxY - minY);
+		mMinX = minX;
+		mMinY = minY;
+		mScale = (size == 0) ? 0 : 32767 / size;
+
+		for (int i = 0; i < mCount; i++) {
+			mZ[i] = zOrder(mX[i], mY[i]);
+			mPrevZ[i] = i - 1;
+			mNextZ[i] = (i == mCount - 1) ? NONE : i + 1;
+		}
+		sortZOrderList(0);
+		mHashed = true;
+	}
+
+	/**
+	 * Calculate the z-order value of a point within the polygon's bounds, by
+	 * interleaving the bits of its (scaled) coordinates
+	 */
+	private int zOrder(float x, float y) {
+		int ix = (int) ((x - mMinX) * mScale);
+		int iy = (int) ((y - mMinY) * mScale);
+		return spreadBits(ix) | (spreadBits(iy) << 1);
+	}
+
+	private static int spreadBits(int value) {
+		value = (value | (value << 8)) & 0x00FF00FF;
+		value = (value | (value << 4)) & 0x0F0F0F0F;
+		value = (value | (value << 2)) & 0x33333333;
+		value = (value | (value << 1)) & 0x55555555;
+		return value;
+	}
+
+	/**
+	 * Sort the z-order linked list by z-order value, with a bottom-up merge
+	 * sort (which requires no additional storage)
+	 */
+	private void sortZOrderList(int list) {
+		int mergeSize = 1;
+		while (true) {
+			int p = list;
+			list = NONE;
+			int tail = NONE;
+			int merges = 0;
+
+			while (p != NONE) {
+				merges++;
+				int q = p;
+				int pSize = 0;
+				for (int i = 0; i < mergeSize && q != NONE; i++) {
+					pSize++;
+					q = mNextZ[q];
+				}
+				int qSize = mergeSize;
+
+				while (pSize > 0 || (qSize > 0 && q != NONE)) {
+					int e;
+					if (pSize != 0
+							&& (qSize == 0 || q == NONE || mZ[p] <= mZ[q])) {
+						e = p;
+						p = mNextZ[p];
+						pSize--;
+					} else {
+						e = q;
+						q = mNextZ[q];
+						qSize--;
+					}
+					if (tail != NONE)
+						mNextZ[tail] = e;
+					else
+						list = e;
+					mPrevZ[e] = tail;
+					tail = e;
+				}
+				p = q;
+			}
+			mNextZ[tail] = NONE;
+			if (merges <= 1)
+				return;
+			mergeSize *= 2;
+		}
+	}
+
+	/**
+	 * Determine if a vertex is the tip of an ear: it must be convex, and no
+	 * reflex vertex can lie within the triangle it forms with its neighbors
+	 */
+	private boolean isEar(int ear) {
+		int a = mPrev[ear];
+		int c = mNext[ear];
+		if (cross(a, ear, c) <= 0)
+			return false;
+		int p = mNext[c];
+		while (p != a) {
+			if (isReflexVertexInTriangle(p, a, ear, c))
+				return false;
+			p = mNext[p];
+		}
+		return true;
+	}
+
+	/**
+	 * A version of isEar() that only examines vertices whose z-order values lie
+	 * within the range of the ear's bounding box
+	 */
+	private boolean isEarHashed(int ear) {
+		int a = mPrev[ear];
+		int c = mNext[ear];
+		if (cross(a, ear, c) <= 0)
+			return false;
+
+		float minX = Math.min(mX[a], Math.min(mX[ear], mX[c]));
+		float minY = Math.min(mY[a], Math.min(mY[ear], mY[c]));
+		float maxX = Math.max(mX[a], Math.max(mX[ear], mX[c]));
+		float maxY = Math.max(mY[a], Math.max(mY[ear], mY[c]));
+		int minZ = zOrder(minX, minY);
+		int maxZ = zOrder(maxX, maxY);
+
+		int p = mNextZ[ear];
+		while (p != NONE && mZ[p] <= maxZ) {
+			if (p != a && p != c && isReflexVertexInTriangle(p, a, ear, c))
+				return false;
+			p = mNextZ[p];
+		}
+		p = mPrevZ[ear];
+		while (p != NONE && mZ[p] >= minZ) {
+			if (p != a && p != c && isReflexVertexInTriangle(p, a, ear, c))
+				return false;
+			p = mPrevZ[p];
+		}
+		return true;
+	}
+
+	private boolean isReflexVertexInTriangle(int p, int a, int b, int c) {
+		return pointInTriangle(p, a, b, c) && cross(mPrev[p], p, mNext[p]) <= 0;
+	}
+
+	/**
+	 * Determine if a point lies within (or on the boundary of) a CCW triangle
+	 */
+	private boolean pointInTriangle(int p, int a, int b, int c) {
+		float px = mX[p];
+		float py = mY[p];
+		return (mX[b] - mX[a]) * (py - mY[a]) - (mY[b] - mY[a]) * (px - mX[a]) >= 0
+				&& (mX[c] - mX[b]) * (py - mY[b]) - (mY[c] - mY[b])
+						* (px - mX[b]) >= 0
+				&& (mX[a] - mX[c]) * (py - mY[c]) - (mY[a] - mY[c])
+						* (px - mX[c]) >= 0;
+	}
+
+	/**
+	 * Calculate the cross product of (b - a) and (c - b); positive iff a, b, c
+	 * turn to the left
+	 */
+	private float cross(int a, int b, int c) {
+		return (mX[b] - mX[a]) * (mY[c] - mY[b]) - (mY[b] - mY[a])
+				* (mX[c] - mX[b]);
+	}
+
+	private void remove(int v) {
+		int prev = mPrev[v];
+		int next = mNext[v];
+		mNext[prev] = next;
+		mPrev[next] = prev;
+		if (mHashed) {
+			if (mPrevZ[v] != NONE)
+				mNextZ[mPrevZ[v]] = mNextZ[v];
+			if (mNextZ[v] != NONE)
+				mPrevZ[mNextZ[v]] = mPrevZ[v];
+		}
+	}
+
+	/**
+	 * Remove any vertices that coincide with their successors, or are
+	 * collinear with their neighbors
+	 *
+	 * @return a vertex that remains
+	 */
+	private int removeDegenerateVertices(int start) {
+		int v = start;
+		while (true) {
+			int next = mNext[v];
+			if (mPrev[v] == next)
+				return v;
+			boolean coincident = mX[v] == mX[next] && mY[v] == mY[next];
+			if (coincident || cross(mPrev[v], v, next) == 0) {
+				remove(v);
+				v = mPrev[v];
+				start = v;
+				continue;
+			}
+			v = next;
+			if (v == start)
+				return v;
+		}
+	}
+
+	private int mCount;
+	private float[] mX;
+	private float[] mY;
+	private int[] mPrev;
+	private int[] mNext;
+	private boolean mHashed;
+	private float mMinX;
+	private float mMinY;
+	private float mScale;
+	private int[] mZ;
+	private int[] mPrevZ;
+	private int[] mNextZ;
+	private long[] mEdgeOrder;
+}
@@ -138,6 +138,42 @@ public final class Edge implements Renderable {
 		mFlags |= f;
 	}
 
+	/**
+	 * Get the epoch in which this edge was last marked (see Mesh.mark())
+	 */
+	int markEpoch() {
+		return mMarkEpoch;
+	}
+
+	void setMarkEpoch(int epoch) {
+		mMarkEpoch = epoch;
+	}
+
+	/**
+	 * Restore this edge to its newly constructed state, so it can be reused;
+	 * its dual is not changed
+	 */
+	void reset() {
+		mFace = 0;
+		mDestVertex = null;
+		mNextEdge = null;
+		mPrevEdge = null;
+		mPseudoAngle = 0;
+		mFlags = 0;
+		mMarkEpoch = 0;
+	}
+
+	/**
+	 * Get the id of the face to the left of this edge (see Mesh.faceOf())
+	 */
+	int face() {
+		return mFace;
+	}
+
+	void setFace(int face) {
+		mFace = face;
+	}
+
 	@Override
 	public void render(AlgorithmStepper stepper) {
 		stepper.render(Segment.directed(sourceVertex(), destVertex()));
@@ -149,5 +185,7 @@ public final class Edge implements Renderable {
 	private Edge mPrevEdge;
 	private float mPseudoAngle;
 	private int mFlags;
+	private int mMarkEpoch;
+	private int mFace;
 
 }
@@ -0,0 +1,173 @@
+package com.js.geometry;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from (source vertex, destination vertex) pairs to edges, using
+ * open addressing with linear probing over primitive long keys.
+ *
+ * Each edge is stored once, under the key formed by its endpoints' ids in
+ * increasing order; lookups in the other direction return the stored edge's
+ * dual
+ */
+final class EdgeIndex {
+
+	// A key of zero would require both vertex ids to be zero, which can't
+	// occur for an edge
+	private static final long EMPTY = 0;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	public EdgeIndex() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	public void clear() {
+		Arrays.fill(mKeys, EMPTY);
+		Arrays.fill(mEdges, null);
+		mSize = 0;
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Add an edge to the index (unless one already exists between its
+	 * vertices)
+	 */
+	public void add(Edge edge) {
+		Vertex source = edge.sourceVertex();
+		Vertex dest = edge.destVertex();
+		if (source.id() > dest.id()) {
+			edge = edge.dual();
+			Vertex tmp = source;
+			source = dest;
+			dest = tmp;
+		}
+		if ((mSize + 1) * 4 > mKeys.length * 3)
+			allocate(mKeys.length * 2);
+		insert(key(source.id(), dest.id()), edge);
+	}
+
+	/**
+	 * Find the edge from one vertex to another, or null if no such edge exists
+	 */
+	public Edge find(Vertex source, Vertex dest) {
+		boolean reversed = source.id() > dest.id();
+		long key = reversed ? key(dest.id(), source.id()) : key(source.id(),
+				dest.id());
+		int mask = mKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = mKeys[slot];
+			if (k == EMPTY)
+				return null;
+			if (k == key) {
+				Edge edge = mEdges[slot];
+				return reversed ? edge.dual() : edge;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Remove the edge between an edge's vertices from the index, if one exists
+	 */
+	public void remove(Edge edge) {
+		long key = keyFor(edge);
+		int mask = mKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = mKeys[slot];
+			if (k == EMPTY)
+				return;
+			if (k == key)
+				break;
+			slot = (slot + 1) & mask;
+		}
+		mSize--;
+
+		// Shift any following entries of the probe sequence back into the
+		// vacated slot, so no tombstones are required
+		int hole = slot;
+		while (true) {
+			slot = (slot + 1) & mask;
+			long k = mKeys[slot];
+			if (k == EMPTY)
+				break;
+			int home = hash(k) & mask;
+			// Move this entry iff its home slot doesn't lie cyclically within
+			// (hole, slot]
+			boolean movable = (hole <= slot) ? (home <= hole || home > slot)
+					: (home <= hole && home > slot);
+			if (movable) {
+				mKeys[hole] = k;
+				mEdges[hole] = mEdges[slot];
+				hole = slot;
+			}
+		}
+		mKeys[hole] = EMPTY;
+		mEdges[hole] = null;
+	}
+
+	private static long keyFor(Edge edge) {
+		int sourceId = edge.sourceVertex().id();
+		int destId = edge.destVertex().id();
+		if (sourceId > destId)
+			return key(destId, sourceId);
+		return key(sourceId, destId);
+	}
+
+	private static long key(int lowId, int highId) {
+		return (((long) lowId) << 32) | (highId & 0xffffffffL);
+	}
+
+	private static int hash(long key) {
+		// Finalizer from MurmurHash3, to spread the bits of sequential ids
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private void insert(long key, Edge edge) {
+		int mask = mKeys.length - 1;
+		int slot = hash(key) & mask;
+		while (true) {
+			long k = mKeys[slot];
+			if (k == EMPTY)
+				break;
+			if (k == key)
+				return;
+			slot = (slot + 1) & mask;
+		}
+		mKeys[slot] = key;
+		mEdges[slot] = edge;
+		mSize++;
+	}
+
+	/**
+	 * Allocate new tables with a particular capacity (a power of two), and
+	 * rehash any existing entries into them
+	 */
+	private void allocate(int capacity) {
+		long[] oldKeys = mKeys;
+		Edge[] oldEdges = mEdges;
+		mKeys = new long[capacity];
+		mEdges = new Edge[capacity];
+		mSize = 0;
+		if (oldKeys == null)
+			return;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY)
+				insert(oldKeys[i], oldEdges[i]);
+		}
+	}
+
+	private long[] mKeys;
+	private Edge[] mEdges;
+	private int mSize;
+}
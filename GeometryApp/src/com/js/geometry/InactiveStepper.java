@@ -1,7 +1,9 @@
 package com.js.geometry;
 
 /**
- * An AlgorithmStepper implementation that is never active
+ * An AlgorithmStepper implementation that is never active. It has no mutable
+ * state, so a single instance (e.g. AlgorithmStepper.INACTIVE_STEPPER) can be
+ * shared by algorithms running on different threads
  */
 public class InactiveStepper extends AlgorithmStepper {
 
@@ -0,0 +1,111 @@
+package com.js.geometry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A dynamic array of ints
+ */
+public class IntArray {
+
+	/**
+	 * Clear the array
+	 */
+	public void clear() {
+		mSize = 0;
+	}
+
+	/**
+	 * Get the size of the array
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Determine if array is empty
+	 */
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Add a value
+	 */
+	public void add(int value) {
+		growTo(mSize + 1);
+		mArray[mSize] = value;
+		mSize += 1;
+	}
+
+	/**
+	 * Replace an existing value
+	 */
+	public void set(int index, int value) {
+		if (index >= mSize)
+			throw new IndexOutOfBoundsException();
+		mArray[index] = value;
+	}
+
+	/**
+	 * Get element
+	 *
+	 * @param index
+	 */
+	public int get(int index) {
+		if (index >= mSize)
+			throw new ArrayIndexOutOfBoundsException();
+		return mArray[index];
+	}
+
+	/**
+	 * Remove the last element, and return it
+	 */
+	public int pop() {
+		if (mSize == 0)
+			throw new IllegalStateException("pop of empty array");
+		mSize--;
+		return mArray[mSize];
+	}
+
+	/**
+	 * Get the array containing this IntArray's values
+	 *
+	 * @param trimToSize
+	 *            if false, the returned array may have extra padding; if true,
+	 *            it will not, but may be a copy of the original
+	 */
+	public int[] array(boolean trimToSize) {
+		if (!trimToSize || mArray.length == mSize)
+			return mArray;
+		return Arrays.copyOf(mArray, mSize);
+	}
+
+	/**
+	 * Get an IntBuffer containing this array's elements
+	 */
+	public IntBuffer asIntBuffer() {
+		IntBuffer buffer = ByteBuffer.allocateDirect(mSize * BYTES_PER_INT)
+				.order(ByteOrder.nativeOrder()).asIntBuffer();
+		buffer.put(mArray, 0, mSize);
+		return buffer;
+	}
+
+	private void growTo(int required) {
+		if (capacity() < required) {
+			required = Math.max(required, capacity() * 2);
+			mArray = Arrays.copyOf(mArray, required);
+		}
+	}
+
+	private int capacity() {
+		return mArray.length;
+	}
+
+	private static final int BYTES_PER_INT = Integer.SIZE / Byte.SIZE;
+
+	private int mSize;
+	private int[] mArray = new int[16];
+}
@@ -1,12 +1,17 @@
 package com.js.geometry;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import android.graphics.Color;
 
 import com.js.basic.GeometryException;
 import com.js.basic.Point;
+import com.js.basic.Predicates;
 import com.js.geometryapp.RenderTools;
 
 import static com.js.basic.Tools.*;
@@ -14,6 +19,132 @@ import static com.js.basic.MyMath.*;
 
 public final class Mesh implements Renderable {
 
+	/**
+	 * Interface for visiting each of a mesh's edges, without constructing a
+	 * list of them
+	 */
+	public interface EdgeVisitor {
+		void visit(Edge edge);
+	}
+
+	/**
+	 * Call a visitor for each of the edges
+	 * 
+	 * @param visitor
+	 * @param omitDuals
+	 *            if true, exactly one of an edge or its dual will be visited
+	 */
+	public void forEachEdge(EdgeVisitor visitor, boolean omitDuals) {
+		for (int i = 0; i < mVertexBuffer.size(); i++) {
+			Vertex vertex = mVertexBuffer.get(i);
+			Edge first = vertex.edges();
+			if (first == null)
+				continue;
+			Edge edge = first;
+			do {
+				if (!omitDuals || edge.angle() >= 0)
+					visitor.visit(edge);
+				edge = edge.nextEdge();
+			} while (edge != first);
+		}
+	}
+
+	/**
+	 * Construct an iterator over the edges. The iterator can be rewound via
+	 * reset(), so a single instance can be used for repeated traversals without
+	 * further allocation
+	 * 
+	 * @param omitDuals
+	 *            if true, exactly one of an edge or its dual will be returned
+	 */
+	public EdgeIterator edgeIterator(boolean omitDuals) {
+		EdgeIterator iter = new EdgeIterator(this);
+		iter.reset(omitDuals);
+		return iter;
+	}
+
+	/**
+	 * A reusable iterator over a mesh's edges. The mesh must not be modified
+	 * while an iteration is in progress (though the edges' flags can be)
+	 */
+	public static final class EdgeIterator implements Iterator<Edge> {
+
+		private EdgeIterator(Mesh mesh) {
+			mMesh = mesh;
+		}
+
+		/**
+		 * Rewind the iterator to the first edge
+		 */
+		public void reset() {
+			mVertexIndex = -1;
+			mFirstEdge = null;
+			mNextEdge = null;
+			advance();
+		}
+
+		/**
+		 * Rewind the iterator to the first edge, and change whether duals are
+		 * omitted
+		 */
+		public void reset(boolean omitDuals) {
+			mOmitDuals = omitDuals;
+			reset();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return mNextEdge != null;
+		}
+
+		@Override
+		public Edge next() {
+			Edge edge = mNextEdge;
+			if (edge == null)
+				throw new NoSuchElementException();
+			advance();
+			return edge;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Move mNextEdge to the next edge to be returned, or null if none remain
+		 */
+		private void advance() {
+			List<Vertex> vertices = mMesh.mVertexBuffer;
+			Edge edge = mNextEdge;
+			while (true) {
+				if (edge != null) {
+					edge = edge.nextEdge();
+					if (edge == mFirstEdge)
+						edge = null;
+				}
+				if (edge == null) {
+					mVertexIndex++;
+					if (mVertexIndex >= vertices.size())
+						break;
+					edge = vertices.get(mVertexIndex).edges();
+					mFirstEdge = edge;
+					if (edge == null)
+						continue;
+				}
+				if (!mOmitDuals || edge.angle() >= 0)
+					break;
+			}
+			mNextEdge = edge;
+		}
+
+		private Mesh mMesh;
+		private boolean mOmitDuals;
+		private int mVertexIndex;
+		private Edge mFirstEdge;
+		private Edge mNextEdge;
+	}
+
 	/**
 	 * Construct a list of all the edges
 	 * 
@@ -50,20 +181,394 @@ public final class Mesh implements Renderable {
 
 	public void clear() {
 		mVertexBuffer.clear();
+		mEdgeCount = 0;
+		if (mStats != null)
+			mStats.setLiveCounts(0, 0);
+		invalidateFaces();
+		if (mEdgeIndex != null)
+			mEdgeIndex.clear();
+		// Vertices and edges removed by clearing aren't pooled, since we
+		// don't know who may still be referring to them
+		mPendingVertices.clear();
+		mPendingEdges.clear();
+	}
+
+	/**
+	 * Enable or disable pooling of deleted vertices and edges. If enabled,
+	 * deleted elements are held until the next call to recycle(), after which
+	 * they may be reused by subsequent additions. This keeps a mesh that
+	 * undergoes many additions and deletions from allocating new objects
+	 * indefinitely
+	 */
+	public void setPoolingEnabled(boolean enabled) {
+		setPoolingEnabled(enabled, enabled);
+	}
+
+	/**
+	 * Enable or disable pooling of deleted vertices and edges separately;
+	 * e.g., vertices shouldn't be pooled if clients keep them as handles,
+	 * since a reused vertex would silently refer to a different location
+	 */
+	public void setPoolingEnabled(boolean vertices, boolean edges) {
+		mVertexPoolingEnabled = vertices;
+		mEdgePoolingEnabled = edges;
+		if (!vertices) {
+			mPendingVertices.clear();
+			mFreeVertices.clear();
+		}
+		if (!edges) {
+			mPendingEdges.clear();
+			mFreeEdges.clear();
+		}
+	}
+
+	/**
+	 * Make any vertices and edges deleted since the last call available for
+	 * reuse. Callers must ensure that nothing still refers to them; e.g.,
+	 * Edge.deleted() will return false for an edge once it has been reused
+	 */
+	public void recycle() {
+		mFreeVertices.addAll(mPendingVertices);
+		mPendingVertices.clear();
+		mFreeEdges.addAll(mPendingEdges);
+		mPendingEdges.clear();
+	}
+
+	/**
+	 * Discard any pooled vertices and edges, and release unused capacity;
+	 * resets the high water marks to the current sizes
+	 */
+	public void compact() {
+		mPendingVertices.clear();
+		mPendingEdges.clear();
+		mFreeVertices.clear();
+		mFreeEdges.clear();
+		mFreeVertices.trimToSize();
+		mFreeEdges.trimToSize();
+		mVertexBuffer.trimToSize();
+		mVertexHighWaterMark = mVertexBuffer.size();
+		mEdgeHighWaterMark = mEdgeCount;
+	}
+
+	/**
+	 * Get the number of edges in the mesh, not counting duals
+	 */
+	public int numEdges() {
+		return mEdgeCount;
+	}
+
+	/**
+	 * Get the greatest number of vertices the mesh has contained (since
+	 * construction or the last call to compact())
+	 */
+	public int vertexHighWaterMark() {
+		return mVertexHighWaterMark;
+	}
+
+	/**
+	 * Get the greatest number of edges, not counting duals, the mesh has
+	 * contained (since construction or the last call to compact())
+	 */
+	public int edgeHighWaterMark() {
+		return mEdgeHighWaterMark;
+	}
+
+	/**
+	 * Get the number of vertices that are available for reuse, or will be
+	 * following the next call to recycle()
+	 */
+	public int pooledVertexCount() {
+		return mFreeVertices.size() + mPendingVertices.size();
+	}
+
+	/**
+	 * Get the number of edges, not counting duals, that are available for
+	 * reuse, or will be following the next call to recycle()
+	 */
+	public int pooledEdgeCount() {
+		return mFreeEdges.size() + mPendingEdges.size();
+	}
+
+	/**
+	 * Attach a MeshStats object to record this mesh's size and the work done
+	 * on it, or detach it (if null). Its live vertex and edge counts are set
+	 * to the mesh's current contents
+	 */
+	public void setStats(MeshStats stats) {
+		mStats = stats;
+		if (stats != null)
+			stats.setLiveCounts(numVertices(), mEdgeCount);
+	}
+
+	public MeshStats stats() {
+		return mStats;
+	}
+
+	/**
+	 * Enable or disable a hashed index of the edges, keyed by their vertices.
+	 * When enabled, edgeExistsBetween() (and addEdge() with ifNoEdgeExists) run
+	 * in constant time, instead of time proportional to the degree of the
+	 * source vertex; this is worthwhile for meshes with high degree vertices,
+	 * at the cost of some memory and slightly slower edge additions and
+	 * deletions
+	 */
+	public void setEdgeIndexEnabled(boolean enabled) {
+		if (enabled == (mEdgeIndex != null))
+			return;
+		if (!enabled) {
+			mEdgeIndex = null;
+			return;
+		}
+		mEdgeIndex = new EdgeIndex();
+		for (int i = 0; i < mVertexBuffer.size(); i++) {
+			Edge first = mVertexBuffer.get(i).edges();
+			if (first == null)
+				continue;
+			Edge edge = first;
+			do {
+				if (edge.angle() >= 0)
+					mEdgeIndex.add(edge);
+				edge = edge.nextEdge();
+			} while (edge != first);
+		}
+	}
+
+	public boolean isEdgeIndexEnabled() {
+		return mEdgeIndex != null;
 	}
 
 	public void clearFlags(int vertexFlags, int edgeFlags) {
 		if (vertexFlags != 0) {
-			for (Vertex v : mVertexBuffer) {
-				v.clearFlags(vertexFlags);
+			for (int i = 0; i < mVertexBuffer.size(); i++) {
+				mVertexBuffer.get(i).clearFlags(vertexFlags);
 			}
 		}
 		if (edgeFlags != 0) {
-			for (Edge edge : constructListOfEdges(true)) {
-				edge.clearFlags(edgeFlags);
-				edge.dual().clearFlags(edgeFlags);
+			// Every half edge appears in exactly one vertex's ring
+			for (int i = 0; i < mVertexBuffer.size(); i++) {
+				Edge first = mVertexBuffer.get(i).edges();
+				if (first == null)
+					continue;
+				Edge edge = first;
+				do {
+					edge.clearFlags(edgeFlags);
+					edge = edge.nextEdge();
+				} while (edge != first);
+			}
+		}
+	}
+
+	/**
+	 * Unmark every vertex and edge, in constant time. Marks provide an
+	 * alternative to the FLAG_VISITED flags that doesn't require a pass over
+	 * the mesh before each traversal. Only one set of marks exists per mesh, so
+	 * an algorithm using them shouldn't call another that also does
+	 */
+	public void clearMarks() {
+		if (mMarkEpoch == Integer.MAX_VALUE) {
+			// The counter has wrapped around; do a (very rare) full pass
+			// to discard the old epoch values
+			for (int i = 0; i < mVertexBuffer.size(); i++) {
+				Vertex vertex = mVertexBuffer.get(i);
+				vertex.setMarkEpoch(0);
+				Edge first = vertex.edges();
+				if (first == null)
+					continue;
+				Edge edge = first;
+				do {
+					edge.setMarkEpoch(0);
+					edge = edge.nextEdge();
+				} while (edge != first);
 			}
+			mMarkEpoch = 0;
 		}
+		mMarkEpoch++;
+	}
+
+	public void mark(Vertex vertex) {
+		vertex.setMarkEpoch(mMarkEpoch);
+	}
+
+	public void mark(Edge edge) {
+		edge.setMarkEpoch(mMarkEpoch);
+	}
+
+	public void unmark(Vertex vertex) {
+		vertex.setMarkEpoch(0);
+	}
+
+	public void unmark(Edge edge) {
+		edge.setMarkEpoch(0);
+	}
+
+	/**
+	 * Determine if a vertex has been marked since the last call to
+	 * clearMarks()
+	 */
+	public boolean isMarked(Vertex vertex) {
+		return vertex.markEpoch() == mMarkEpoch;
+	}
+
+	/**
+	 * Determine if an edge has been marked since the last call to clearMarks()
+	 */
+	public boolean isMarked(Edge edge) {
+		return edge.markEpoch() == mMarkEpoch;
+	}
+
+	/**
+	 * Get the number of faces; i.e., the number of distinct cycles formed by
+	 * following nextFaceEdge() from each edge. This includes any unbounded
+	 * face. Builds the face table if necessary (see faceOf())
+	 */
+	public int numFaces() {
+		buildFaces();
+		return mFaceCount;
+	}
+
+	/**
+	 * Get the id of the face to the left of an edge. The first call builds a
+	 * table of faces, in time proportional to the size of the mesh; the table
+	 * is then updated as edges are added and deleted, so subsequent calls take
+	 * constant time. Face ids lie in the range [0, faceIdBound()), but aren't
+	 * necessarily contiguous, and may be reused after a face is destroyed
+	 */
+	public int faceOf(Edge edge) {
+		buildFaces();
+		return edge.face();
+	}
+
+	/**
+	 * Get an upper bound on the face ids currently in use
+	 */
+	public int faceIdBound() {
+		buildFaces();
+		return mFaceEdges.size();
+	}
+
+	/**
+	 * Get an edge bounding a face
+	 * 
+	 * @param face
+	 *            face id
+	 * @return edge that has the face to its left, or null if no face has this
+	 *         id
+	 */
+	public Edge faceEdge(int face) {
+		buildFaces();
+		return mFaceEdges.get(face);
+	}
+
+	/**
+	 * Call a visitor with one edge bounding each face, in order of increasing
+	 * face id
+	 */
+	public void forEachFace(EdgeVisitor visitor) {
+		buildFaces();
+		for (int i = 0; i < mFaceEdges.size(); i++) {
+			Edge edge = mFaceEdges.get(i);
+			if (edge != null)
+				visitor.visit(edge);
+		}
+	}
+
+	/**
+	 * Discard the face table, if one exists; it will be rebuilt when next
+	 * needed
+	 */
+	private void invalidateFaces() {
+		if (!mFacesValid)
+			return;
+		mFacesValid = false;
+		mFaceEdges.clear();
+		mFreeFaces.clear();
+		mFaceCount = 0;
+	}
+
+	/**
+	 * Build the face table, if it doesn't already exist. Faces are numbered in
+	 * the order their edges are first encountered by an edge iterator, and
+	 * each face's edge is the first such edge
+	 */
+	private void buildFaces() {
+		if (mFacesValid)
+			return;
+		for (int i = 0; i < mVertexBuffer.size(); i++) {
+			Edge first = mVertexBuffer.get(i).edges();
+			if (first == null)
+				continue;
+			Edge edge = first;
+			do {
+				edge.setFace(NO_FACE);
+				edge = edge.nextEdge();
+			} while (edge != first);
+		}
+		mFacesValid = true;
+		for (int i = 0; i < mVertexBuffer.size(); i++) {
+			Edge first = mVertexBuffer.get(i).edges();
+			if (first == null)
+				continue;
+			Edge edge = first;
+			do {
+				if (edge.face() == NO_FACE)
+					relabelFace(edge);
+				edge = edge.nextEdge();
+			} while (edge != first);
+		}
+	}
+
+	/**
+	 * Assign a new id to the face to the left of an edge, recording any
+	 * previous ids found within it as stale
+	 */
+	private void relabelFace(Edge faceEdge) {
+		int face;
+		if (!mFreeFaces.isEmpty()) {
+			face = mFreeFaces.pop();
+			mFaceEdges.set(face, faceEdge);
+		} else {
+			face = mFaceEdges.size();
+			mFaceEdges.add(faceEdge);
+		}
+		mFaceCount++;
+		Edge edge = faceEdge;
+		do {
+			int oldFace = edge.face();
+			if (oldFace != NO_FACE && oldFace != face)
+				addStaleFace(oldFace);
+			edge.setFace(face);
+			edge = edge.nextFaceEdge();
+		} while (edge != faceEdge);
+	}
+
+	private void relabelFaceIfStale(Edge seed, Edge deletedEdge) {
+		if (seed == deletedEdge || seed == deletedEdge.dual())
+			return;
+		int face = seed.face();
+		for (int i = 0; i < mStaleFaces.size(); i++) {
+			if (mStaleFaces.get(i) == face) {
+				relabelFace(seed);
+				return;
+			}
+		}
+	}
+
+	private void addStaleFace(int face) {
+		if (face == NO_FACE || mFaceEdges.get(face) == null)
+			return;
+		mFaceEdges.set(face, null);
+		mFaceCount--;
+		mStaleFaces.add(face);
+	}
+
+	/**
+	 * Make the ids of faces that no longer exist available for reuse. This is
+	 * deferred until the new faces have been labelled, so their ids are
+	 * distinct from the stale ones
+	 */
+	private void releaseStaleFaces() {
+		while (!mStaleFaces.isEmpty())
+			mFreeFaces.add(mStaleFaces.pop());
 	}
 
 	public Edge addEdge(Vertex v0, Vertex v1) {
@@ -76,32 +581,243 @@ public final class Mesh implements Renderable {
 			if (existing != null)
 				return existing;
 		}
-		Edge edge = new Edge();
-		Edge dual = new Edge();
-		edge.setDual(dual);
-		dual.setDual(edge);
-
-		Point delta = new Point(v1.x - v0.x, v1.y - v0.y);
-		float angle = pseudoPolarAngle(delta);
-
-		edge.setAngle(angle);
-		edge.setDestVertex(v1);
-
-		dual.setAngle(normalizePseudoAngle(angle + PSEUDO_ANGLE_RANGE_12));
-		dual.setDestVertex(v0);
+		Edge edge = constructEdge(v0, v1);
+		Edge dual = edge.dual();
 
 		addEdgeToVertex(edge, v0);
 		addEdgeToVertex(dual, v1);
+		edgesAdded(1);
+
+		if (mEdgeIndex != null)
+			mEdgeIndex.add(edge);
 
+		if (mFacesValid) {
+			// The new edge has either split a face in two, or joined two
+			// boundaries of a face (or two faces) into one
+			edge.setFace(NO_FACE);
+			dual.setFace(NO_FACE);
+			relabelFace(edge);
+			if (dual.face() == NO_FACE)
+				relabelFace(dual);
+			releaseStaleFaces();
+		}
 		return edge;
 	}
 
+	/**
+	 * Add a number of vertices, and edges between them, in a single
+	 * operation. This is considerably faster than adding them individually,
+	 * since each vertex's edges are sorted by angle all at once, instead of
+	 * being inserted one at a time. The result is the same as calling
+	 * addVertex() for each location, followed by addEdge() for each edge
+	 * 
+	 * @param locations
+	 *            locations of vertices to add
+	 * @param edgeVertices
+	 *            pairs of indices, relative to locations, of each edge's
+	 *            source and destination vertices
+	 * @param edgeFlags
+	 *            if not null, the flags to add to each edge (but not to its
+	 *            dual)
+	 * @return index of the first vertex added
+	 * @throws GeometryException
+	 *             if any edges are duplicated or collinear; in this case, the
+	 *             vertices will have been added, but none of the edges
+	 */
+	public int addVerticesAndEdges(List<Point> locations,
+			IntArray edgeVertices, IntArray edgeFlags) {
+		int baseVertex = numVertices();
+		int vertexCount = locations.size();
+		Vertex[] vertices = new Vertex[vertexCount];
+		for (int i = 0; i < vertexCount; i++)
+			vertices[i] = addVertex(locations.get(i));
+
+		// Construct the edges, and place each half edge into a bucket for its
+		// source vertex (a counting sort)
+		int edgeCount = edgeVertices.size() / 2;
+		int[] bucketStart = new int[vertexCount + 1];
+		for (int i = 0; i < edgeCount * 2; i++)
+			bucketStart[edgeVertices.get(i) + 1]++;
+		for (int i = 0; i < vertexCount; i++)
+			bucketStart[i + 1] += bucketStart[i];
+		int[] bucketCursor = Arrays.copyOf(bucketStart, vertexCount);
+		Edge[] halfEdges = new Edge[edgeCount * 2];
+		for (int i = 0; i < edgeCount; i++) {
+			int source = edgeVertices.get(i * 2);
+			int dest = edgeVertices.get(i * 2 + 1);
+			Edge edge = constructEdge(vertices[source], vertices[dest]);
+			if (edgeFlags != null)
+				edge.addFlags(edgeFlags.get(i));
+			halfEdges[bucketCursor[source]++] = edge;
+			halfEdges[bucketCursor[dest]++] = edge.dual();
+		}
+
+		// Sort each vertex's edges by angle, and check each adjacent pair for
+		// degeneracies before modifying any of the vertices' rings
+		for (int i = 0; i < vertexCount; i++) {
+			int start = bucketStart[i];
+			int end = bucketStart[i + 1];
+			if (end - start < 2)
+				continue;
+			sortEdgesByAngle(halfEdges, start, end);
+			for (int j = start + 1; j < end; j++) {
+				for (int k = j; k > start
+						&& edgesMisordered(halfEdges[k - 1], halfEdges[k]);
+						k--) {
+					Edge edge = halfEdges[k];
+					halfEdges[k] = halfEdges[k - 1];
+					halfEdges[k - 1] = edge;
+				}
+			}
+			Edge prevEdge = halfEdges[end - 1];
+			for (int j = start; j < end; j++) {
+				Edge edge = halfEdges[j];
+				if (edgesAreDegenerate(prevEdge, edge)) {
+					if (mStats != null)
+						mStats.degeneracyRejected();
+					if (edge.destVertex() == prevEdge.destVertex()) {
+						GeometryException.raise("edge already exists: "
+								+ prevEdge);
+					} else {
+						GeometryException.raise("edges collinear: " + edge
+								+ " " + prevEdge + " " + edge.angle() + " "
+								+ prevEdge.angle());
+					}
+				}
+				prevEdge = edge;
+			}
+		}
+
+		// Link each vertex's edges into a ring
+		for (int i = 0; i < vertexCount; i++) {
+			int start = bucketStart[i];
+			int end = bucketStart[i + 1];
+			if (start == end)
+				continue;
+			Edge prevEdge = halfEdges[end - 1];
+			for (int j = start; j < end; j++) {
+				Edge edge = halfEdges[j];
+				edge.setPrevEdge(prevEdge);
+				prevEdge.setNextEdge(edge);
+				prevEdge = edge;
+			}
+			vertices[i].setEdges(halfEdges[start], end - start);
+		}
+		edgesAdded(edgeCount);
+		invalidateFaces();
+
+		if (mEdgeIndex != null) {
+			for (Edge edge : halfEdges) {
+				if (edge.angle() >= 0)
+					mEdgeIndex.add(edge);
+			}
+		}
+		return baseVertex;
+	}
+
+	/**
+	 * Move all of another mesh's vertices and edges to this one, leaving the
+	 * other mesh empty. This is much faster than adding copies of them, since
+	 * the edges move along with their vertices, and needn't be sorted again;
+	 * e.g., several meshes can be constructed concurrently, then combined. Any
+	 * marks (see clearMarks()) are discarded
+	 * 
+	 * @return index of the first vertex moved
+	 */
+	public int absorb(Mesh other) {
+		int baseVertex = numVertices();
+		mVertexBuffer.ensureCapacity(baseVertex + other.numVertices());
+		for (Vertex vertex : other.mVertexBuffer) {
+			vertex.setIndex(mVertexBuffer.size());
+			vertex.setId(mNextVertexId++);
+			mVertexBuffer.add(vertex);
+			if (mStats != null)
+				mStats.vertexAdded(false);
+		}
+		// The index is keyed by both vertices' ids, so every moved vertex
+		// must have its new id before any edges are indexed
+		if (mEdgeIndex != null) {
+			for (int i = baseVertex; i < mVertexBuffer.size(); i++) {
+				Edge first = mVertexBuffer.get(i).edges();
+				if (first == null)
+					continue;
+				Edge edge = first;
+				do {
+					if (edge.angle() >= 0)
+						mEdgeIndex.add(edge);
+					edge = edge.nextEdge();
+				} while (edge != first);
+			}
+		}
+		// Discard the marks of both meshes, by starting an epoch later than
+		// any of their elements'
+		mMarkEpoch = Math.max(mMarkEpoch, other.mMarkEpoch);
+		clearMarks();
+		mVertexHighWaterMark = Math.max(mVertexHighWaterMark,
+				mVertexBuffer.size());
+		edgesAdded(other.numEdges());
+		invalidateFaces();
+
+		// The other mesh no longer owns these vertices and edges
+		other.clear();
+		return baseVertex;
+	}
+
+	/**
+	 * Move a vertex to a particular position within the vertex buffer (i.e.,
+	 * so vertex(index) returns it); the vertex at that position takes the
+	 * vertex's former position. The vertices' edges are unaffected
+	 */
+	public void moveVertex(Vertex vertex, int index) {
+		int oldIndex = vertex.index();
+		Vertex displaced = mVertexBuffer.get(index);
+		mVertexBuffer.set(index, vertex);
+		vertex.setIndex(index);
+		mVertexBuffer.set(oldIndex, displaced);
+		displaced.setIndex(oldIndex);
+	}
+
+	/**
+	 * Sort a range of edges by angle. Most vertices have low degree, so use an
+	 * insertion sort unless the range is large
+	 */
+	private static void sortEdgesByAngle(Edge[] edges, int start, int end) {
+		if (end - start > 16) {
+			Arrays.sort(edges, start, end, sEdgeAngleComparator);
+			return;
+		}
+		for (int i = start + 1; i < end; i++) {
+			Edge edge = edges[i];
+			float angle = edge.angle();
+			int j = i;
+			while (j > start && edges[j - 1].angle() > angle) {
+				edges[j] = edges[j - 1];
+				j--;
+			}
+			edges[j] = edge;
+		}
+	}
+
+	private static final Comparator<Edge> sEdgeAngleComparator = new Comparator<Edge>() {
+		@Override
+		public int compare(Edge e1, Edge e2) {
+			return Float.compare(e1.angle(), e2.angle());
+		}
+	};
+
 	public Edge edgeExistsBetween(Vertex sourceVert, Vertex destVert) {
+		if (mEdgeIndex != null) {
+			if (mStats != null)
+				mStats.edgeQueried(1);
+			return mEdgeIndex.find(sourceVert, destVert);
+		}
 		Edge foundEdge = null;
 		Edge edge = sourceVert.edges();
+		int probes = 0;
 		if (edge != null) {
 
 			while (true) {
+				probes++;
 				if (edge.destVertex() == destVert) {
 					foundEdge = edge;
 					break;
@@ -111,6 +827,8 @@ public final class Mesh implements Renderable {
 					break;
 			}
 		}
+		if (mStats != null)
+			mStats.edgeQueried(probes);
 		return foundEdge;
 	}
 
@@ -168,8 +886,20 @@ public final class Mesh implements Renderable {
 	public Vertex addVertex(Point location) {
 		testForOverflow(location.x);
 		testForOverflow(location.y);
-		Vertex v = new Vertex(mVertexBuffer.size(), location);
+		Vertex v;
+		boolean allocated = mFreeVertices.isEmpty();
+		if (!allocated) {
+			v = pop(mFreeVertices);
+			v.reset(mVertexBuffer.size(), location);
+		} else {
+			v = new Vertex(mVertexBuffer.size(), location);
+		}
+		if (mStats != null)
+			mStats.vertexAdded(allocated);
+		v.setId(mNextVertexId++);
 		mVertexBuffer.add(v);
+		mVertexHighWaterMark = Math.max(mVertexHighWaterMark,
+				mVertexBuffer.size());
 		return v;
 	}
 
@@ -201,17 +931,49 @@ public final class Mesh implements Renderable {
 			lastVertex.setIndex(vertexIndex);
 		}
 		mVertexBuffer.remove(lastIndex);
+		if (mStats != null)
+			mStats.vertexDeleted();
+		if (mVertexPoolingEnabled)
+			mPendingVertices.add(vertex);
 	}
 
 	public void deleteEdge(Edge edge) {
 		Vertex sourceVertex = edge.sourceVertex();
 		Vertex destVertex = edge.destVertex();
+		Edge dual = edge.dual();
+
+		// Every face resulting from the deletion includes at least one of the
+		// edges adjacent to this edge or its dual within their faces
+		Edge seed0 = null, seed1 = null, seed2 = null, seed3 = null;
+		if (mFacesValid) {
+			seed0 = edge.nextFaceEdge();
+			seed1 = edge.prevFaceEdge();
+			seed2 = dual.nextFaceEdge();
+			seed3 = dual.prevFaceEdge();
+			addStaleFace(edge.face());
+			addStaleFace(dual.face());
+		}
 
 		sourceVertex.removeEdge(edge);
-		destVertex.removeEdge(edge.dual());
+		destVertex.removeEdge(dual);
+		if (mEdgeIndex != null)
+			mEdgeIndex.remove(edge);
+
+		if (mFacesValid) {
+			relabelFaceIfStale(seed0, edge);
+			relabelFaceIfStale(seed1, edge);
+			relabelFaceIfStale(seed2, edge);
+			relabelFaceIfStale(seed3, edge);
+			releaseStaleFaces();
+		}
 
 		edge.addFlags(Edge.FLAG_DELETED);
 		edge.dual().addFlags(Edge.FLAG_DELETED);
+		mEdgeCount--;
+		if (mStats != null)
+			mStats.edgeDeleted();
+		if (mEdgePoolingEnabled)
+			mPendingEdges.add(edge);
 	}
 
 	public String toString() {
@@ -257,9 +1019,56 @@ public final class Mesh implements Renderable {
 	public void render(AlgorithmStepper s) {
 		final int COLOR_LIGHTBLUE = Color.argb(80, 100, 100, 255);
 		s.setColor(COLOR_LIGHTBLUE);
-		for (Edge e : constructListOfEdges(true)) {
+		forEachEdge(sRenderEdgeVisitor, true);
+	}
+
+	private static final EdgeVisitor sRenderEdgeVisitor = new EdgeVisitor() {
+		@Override
+		public void visit(Edge e) {
 			RenderTools.renderLine(e.sourceVertex(), e.destVertex());
 		}
+	};
+
+	/**
+	 * Construct an edge and its dual, without adding them to their vertices
+	 */
+	private Edge constructEdge(Vertex v0, Vertex v1) {
+		Edge edge;
+		Edge dual;
+		if (!mFreeEdges.isEmpty()) {
+			edge = pop(mFreeEdges);
+			dual = edge.dual();
+			edge.reset();
+			dual.reset();
+		} else {
+			edge = new Edge();
+			dual = new Edge();
+			edge.setDual(dual);
+			dual.setDual(edge);
+			if (mStats != null)
+				mStats.edgeAllocated();
+		}
+
+		Point delta = new Point(v1.x - v0.x, v1.y - v0.y);
+		float angle = pseudoPolarAngle(delta);
+
+		edge.setAngle(angle);
+		edge.setDestVertex(v1);
+
+		dual.setAngle(normalizePseudoAngle(angle + PSEUDO_ANGLE_RANGE_12));
+		dual.setDestVertex(v0);
+		return edge;
+	}
+
+	/**
+	 * Update the edge count (and high water mark) to reflect some newly
+	 * constructed edges
+	 */
+	void edgesAdded(int count) {
+		mEdgeCount += count;
+		mEdgeHighWaterMark = Math.max(mEdgeHighWaterMark, mEdgeCount);
+		if (mStats != null)
+			mStats.edgesAdded(count);
 	}
 
 	private void addEdgeToVertex(Edge edge, Vertex vertex) {
@@ -272,36 +1081,63 @@ public final class Mesh implements Renderable {
 			Edge existingEdge = vertex.edges();
 			// Look for the existing edge that will immediately preceded this
 			// one
-			while (true) {
-				float diff = edge.angle() - existingEdge.angle();
+			AngularIndex angularIndex = vertex.angularIndex();
+			if (angularIndex != null) {
+				existingEdge = angularIndex.predecessor(edge.angle());
+				if (mStats != null)
+					mStats.edgeInserted(-1);
+			} else {
+				int scanSteps = 0;
+				while (true) {
+					scanSteps++;
+					float diff = edge.angle() - existingEdge.angle();
 
-				if (diff < 0) {
-					existingEdge = existingEdge.prevEdge();
-					break;
-				} else {
-					Edge nextEdge = existingEdge.nextEdge();
-					if (nextEdge == vertex.edges()) {
+					if (diff < 0) {
+						existingEdge = existingEdge.prevEdge();
 						break;
+					} else {
+						Edge nextEdge = existingEdge.nextEdge();
+						if (nextEdge == vertex.edges()) {
+							break;
+						}
+						existingEdge = nextEdge;
 					}
-					existingEdge = nextEdge;
 				}
+				if (mStats != null)
+					mStats.edgeInserted(scanSteps);
 			}
 
-			// It's a degeneracy if the angle between the new edge and its
-			// neighbors is too close to zero or PI/2 ...
+			// Pseudo angles can't reliably order edges with almost the same
+			// direction, so if the edge is close to either neighbor, find its
+			// position exactly. There may be several such edges; e.g., all of
+			// a vertex's edges may lead to distant, nearly collinear vertices
+			boolean backwards = edgesMisordered(existingEdge, edge);
+			if (backwards || edgesMisordered(edge, existingEdge.nextEdge())) {
+				Edge firstEdge = existingEdge;
+				while (!edgeWithinSector(existingEdge, edge)) {
+					existingEdge = backwards ? existingEdge.prevEdge()
+							: existingEdge.nextEdge();
+					if (existingEdge == firstEdge)
+						break;
+				}
+			}
+
+			// It's a degeneracy if the angle between the new edge and either
+			// of its neighbors is zero
 			Edge degenerateEdge = null;
-			if (angleDifferenceIsDegenerate(edge.angle() - existingEdge.angle())) {
+			if (edgesAreDegenerate(existingEdge, edge)) {
 				degenerateEdge = existingEdge;
 			}
 			Edge followingEdge = existingEdge.nextEdge();
 			if (followingEdge != existingEdge) {
-				if (angleDifferenceIsDegenerate(followingEdge.angle()
-						- edge.angle())) {
+				if (edgesAreDegenerate(edge, followingEdge)) {
 					degenerateEdge = followingEdge;
 				}
 			}
 
 			if (degenerateEdge != null) {
+				if (mStats != null)
+					mStats.degeneracyRejected();
 				if (degenerateEdge.destVertex() == vertex) {
 					GeometryException.raise("edge already exists: "
 							+ degenerateEdge);
@@ -312,11 +1148,16 @@ public final class Mesh implements Renderable {
 				}
 			}
 
+			// The scan above starts from the edge with the smallest angle; if
+			// the new edge was inserted just before it, it's either the new
+			// first edge or the new last one
 			insertEdgeAfter(edge, existingEdge);
-			if (edge.angle() < existingEdge.angle()) {
+			if (edge.nextEdge() == vertex.edges()
+					&& edgePrecedes(edge, vertex.edges())) {
 				vertex.setEdges(edge);
 			}
 		}
+		vertex.edgeAdded(edge);
 	}
 
 	private void insertEdgeAfter(Edge newEdge, Edge previousEdge) {
@@ -327,12 +1168,90 @@ public final class Mesh implements Renderable {
 		follower.setPrevEdge(newEdge);
 	}
 
-	private boolean angleDifferenceIsDegenerate(float angleDiff) {
-		final float kMinSeparation = 1e-7f;
-		angleDiff = Math.abs(normalizePseudoAngle(angleDiff));
-		return (angleDiff <= kMinSeparation || angleDiff >= PSEUDO_ANGLE_RANGE_12
-				- kMinSeparation);
+	/**
+	 * Determine if two edges leaving the same vertex have the same direction.
+	 * The pseudo angles act as a filter; only if they're close is the exact
+	 * orientation predicate used. (Edges in opposite directions are allowed,
+	 * e.g. at a vertex lying on a straight line of edges)
+	 */
+	private static boolean edgesAreDegenerate(Edge a, Edge b) {
+		float angleDiff = Math.abs(normalizePseudoAngle(b.angle() - a.angle()));
+		if (angleDiff > PSEUDO_ANGLE_FILTER)
+			return false;
+		return Predicates.orient2d(a.sourceVertex(), a.destVertex(),
+				b.destVertex()) == 0;
 	}
 
-	private List<Vertex> mVertexBuffer = new ArrayList();
+	/**
+	 * Determine if edge b, which follows edge a (leaving the same vertex) in
+	 * CCW order of pseudo angle, should actually precede it; this can only
+	 * occur if their pseudo angles are almost equal
+	 */
+	private static boolean edgesMisordered(Edge a, Edge b) {
+		float angleDiff = Math.abs(normalizePseudoAngle(b.angle() - a.angle()));
+		if (angleDiff > PSEUDO_ANGLE_FILTER)
+			return false;
+		return Predicates.orient2d(a.sourceVertex(), a.destVertex(),
+				b.destVertex()) < 0;
+	}
+
+	/**
+	 * Determine if edge a has a smaller angle than edge b, both leaving the
+	 * same vertex; pseudo angles that are almost equal are compared exactly
+	 */
+	private static boolean edgePrecedes(Edge a, Edge b) {
+		float angleDiff = b.angle() - a.angle();
+		if (Math.abs(angleDiff) > PSEUDO_ANGLE_FILTER)
+			return angleDiff > 0;
+		return Predicates.orient2d(a.sourceVertex(), a.destVertex(),
+				b.destVertex()) > 0;
+	}
+
+	/**
+	 * Determine if an edge lies strictly within the CCW sector from one edge
+	 * to the next, all leaving the same vertex (using exact arithmetic)
+	 */
+	private static boolean edgeWithinSector(Edge sectorStart, Edge edge) {
+		Edge sectorEnd = sectorStart.nextEdge();
+		if (sectorEnd == sectorStart)
+			return true;
+		Point origin = edge.sourceVertex();
+		boolean leftOfStart = Predicates.orient2d(origin,
+				sectorStart.destVertex(), edge.destVertex()) > 0;
+		boolean rightOfEnd = Predicates.orient2d(origin, edge.destVertex(),
+				sectorEnd.destVertex()) > 0;
+		if (Predicates.orient2d(origin, sectorStart.destVertex(),
+				sectorEnd.destVertex()) > 0)
+			return leftOfStart && rightOfEnd;
+		return leftOfStart || rightOfEnd;
+	}
+
+	// Pseudo angles are calculated with a few ulps of error, so those closer
+	// than this are compared exactly; see edgesAreDegenerate()
+	private static final float PSEUDO_ANGLE_FILTER = 1e-5f;
+
+	private ArrayList<Vertex> mVertexBuffer = new ArrayList();
+	// Elements are marked iff their epoch equals this value; never zero
+	private int mMarkEpoch = 1;
+	private int mNextVertexId;
+	private EdgeIndex mEdgeIndex;
+	private MeshStats mStats;
+	// Face table, built on demand; see faceOf()
+	private static final int NO_FACE = -1;
+	private boolean mFacesValid;
+	private ArrayList<Edge> mFaceEdges = new ArrayList();
+	private IntArray mFreeFaces = new IntArray();
+	private IntArray mStaleFaces = new IntArray();
+	private int mFaceCount;
+	private int mEdgeCount;
+	private int mVertexHighWaterMark;
+	private int mEdgeHighWaterMark;
+	private boolean mVertexPoolingEnabled;
+	private boolean mEdgePoolingEnabled;
+	// Deleted elements awaiting the next call to recycle()
+	private ArrayList<Vertex> mPendingVertices = new ArrayList();
+	private ArrayList<Edge> mPendingEdges = new ArrayList();
+	// Elements available for reuse
+	private ArrayList<Vertex> mFreeVertices = new ArrayList();
+	private ArrayList<Edge> mFreeEdges = new ArrayList();
 }
@@ -0,0 +1,321 @@
+package com.js.geometry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.js.basic.Point;
+
+/**
+ * Reads and writes meshes in a compact binary format, consisting of a header
+ * followed by arrays of vertex and half edge attributes. All values are
+ * little-endian 32-bit ints or floats:
+ *
+ * <pre>
+ * header:  magic number, version, vertex count (V), half edge count (H)
+ * vertices: V x coordinates; V y coordinates; V flags; V first edges (-1 if none)
+ * half edges: H destination vertices; H next edges; H flags; H angles
+ * </pre>
+ *
+ * Half edges are stored in pairs, so the dual of half edge e is e ^ 1. Each
+ * vertex's first edge is the start of its ring, and the previous edges are
+ * implied by the next edges.
+ *
+ * Snapshots can be read into either a Mesh or a CompactMesh; the latter is
+ * much faster for large meshes, since its arrays are read directly from the
+ * file, and no per-element objects are constructed
+ */
+public final class MeshSnapshot {
+
+	// "MESH", read as a little-endian int
+	private static final int MAGIC = 0x4853454d;
+	private static final int VERSION = 1;
+	private static final int HEADER_INTS = 4;
+	private static final int BYTES_PER_INT = Integer.SIZE / Byte.SIZE;
+
+	/**
+	 * Write a mesh to a file
+	 */
+	public static void write(Mesh mesh, File file) throws IOException {
+		int vertexCount = mesh.numVertices();
+
+		// Assign each half edge an index, with each edge's dual following it
+		ArrayList<Edge> edges = mesh.constructListOfEdges(true);
+		int halfEdgeCount = edges.size() * 2;
+		Edge[] halfEdges = new Edge[halfEdgeCount];
+		Map<Edge, Integer> edgeIndices = new IdentityHashMap(halfEdgeCount);
+		for (int i = 0; i < edges.size(); i++) {
+			Edge edge = edges.get(i);
+			halfEdges[i * 2] = edge;
+			halfEdges[i * 2 + 1] = edge.dual();
+			edgeIndices.put(edge, i * 2);
+			edgeIndices.put(edge.dual(), i * 2 + 1);
+		}
+
+		float[] vertexX = new float[vertexCount];
+		float[] vertexY = new float[vertexCount];
+		int[] vertexFlags = new int[vertexCount];
+		int[] vertexEdges = new int[vertexCount];
+		for (int i = 0; i < vertexCount; i++) {
+			Vertex vertex = mesh.vertex(i);
+			vertexX[i] = vertex.x;
+			vertexY[i] = vertex.y;
+			vertexFlags[i] = vertex.flags();
+			vertexEdges[i] = (vertex.edges() == null) ? -1 : edgeIndices
+					.get(vertex.edges());
+		}
+
+		int[] edgeDest = new int[halfEdgeCount];
+		int[] edgeNext = new int[halfEdgeCount];
+		int[] edgeFlags = new int[halfEdgeCount];
+		float[] edgeAngles = new float[halfEdgeCount];
+		for (int i = 0; i < halfEdgeCount; i++) {
+			Edge edge = halfEdges[i];
+			edgeDest[i] = edge.destVertex().index();
+			edgeNext[i] = edgeIndices.get(edge.nextEdge());
+			edgeFlags[i] = edge.flags();
+			edgeAngles[i] = edge.angle();
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(
+				(int) fileSize(vertexCount, halfEdgeCount)).order(
+				ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(vertexCount);
+		buffer.putInt(halfEdgeCount);
+		putFloats(buffer, vertexX);
+		putFloats(buffer, vertexY);
+		putInts(buffer, vertexFlags);
+		putInts(buffer, vertexEdges);
+		putInts(buffer, edgeDest);
+		putInts(buffer, edgeNext);
+		putInts(buffer, edgeFlags);
+		putFloats(buffer, edgeAngles);
+		buffer.flip();
+
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Read a mesh from a file
+	 *
+	 * @throws IOException
+	 *             if the file is not a valid snapshot
+	 */
+	public static Mesh read(File file) throws IOException {
+		return read(map(file));
+	}
+
+	/**
+	 * Read a mesh from a buffer; its contents must be in the snapshot format
+	 *
+	 * @throws IOException
+	 *             if the buffer does not contain a valid snapshot
+	 */
+	public static Mesh read(ByteBuffer buffer) throws IOException {
+		Contents c = new Contents(buffer);
+
+		Mesh mesh = new Mesh();
+		Vertex[] vertices = new Vertex[c.vertexCount];
+		Point location = new Point();
+		for (int i = 0; i < c.vertexCount; i++) {
+			location.setTo(c.vertexX[i], c.vertexY[i]);
+			Vertex vertex = mesh.addVertex(location);
+			vertex.addFlags(c.vertexFlags[i]);
+			vertices[i] = vertex;
+		}
+
+		Edge[] edges = new Edge[c.halfEdgeCount];
+		for (int i = 0; i < c.halfEdgeCount; i++) {
+			Edge edge = new Edge();
+			edge.setDestVertex(vertices[c.edgeDest[i]]);
+			edge.setAngle(c.edgeAngles[i]);
+			edge.addFlags(c.edgeFlags[i]);
+			edges[i] = edge;
+		}
+		for (int i = 0; i < c.halfEdgeCount; i++) {
+			Edge edge = edges[i];
+			edge.setDual(edges[i ^ 1]);
+			edge.setNextEdge(edges[c.edgeNext[i]]);
+			edge.setPrevEdge(edges[c.edgePrev[i]]);
+		}
+		for (int i = 0; i < c.vertexCount; i++) {
+			int first = c.vertexEdges[i];
+			if (first >= 0)
+				vertices[i].setEdges(edges[first], c.vertexDegrees[i]);
+		}
+		mesh.edgesAdded(c.halfEdgeCount / 2);
+		return mesh;
+	}
+
+	/**
+	 * Read a CompactMesh from a file
+	 *
+	 * @throws IOException
+	 *             if the file is not a valid snapshot
+	 */
+	public static CompactMesh readCompact(File file) throws IOException {
+		return readCompact(map(file));
+	}
+
+	/**
+	 * Read a CompactMesh from a buffer; its contents must be in the snapshot
+	 * format
+	 *
+	 * @throws IOException
+	 *             if the buffer does not contain a valid snapshot
+	 */
+	public static CompactMesh readCompact(ByteBuffer buffer) throws IOException {
+		Contents c = new Contents(buffer);
+		CompactMesh mesh = new CompactMesh();
+		mesh.setContents(c.vertexCount, c.vertexX, c.vertexY, c.vertexEdges,
+				c.vertexFlags, c.halfEdgeCount, c.edgeAngles, c.edgeNext,
+				c.edgePrev, c.edgeDest, c.edgeFlags);
+		return mesh;
+	}
+
+	private static ByteBuffer map(File file) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size());
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * The arrays read from a snapshot, after validation
+	 */
+	private static class Contents {
+
+		public Contents(ByteBuffer buffer) throws IOException {
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() < HEADER_INTS * BYTES_PER_INT)
+				throw new IOException("mesh snapshot is truncated");
+			if (buffer.getInt() != MAGIC)
+				throw new IOException("not a mesh snapshot");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("unsupported mesh snapshot version: "
+						+ version);
+			vertexCount = buffer.getInt();
+			halfEdgeCount = buffer.getInt();
+			if (vertexCount < 0
+					|| halfEdgeCount < 0
+					|| halfEdgeCount % 2 != 0
+					|| buffer.remaining() != fileSize(vertexCount,
+							halfEdgeCount) - HEADER_INTS * BYTES_PER_INT)
+				throw new IOException("mesh snapshot is corrupt");
+
+			vertexX = getFloats(buffer, vertexCount);
+			vertexY = getFloats(buffer, vertexCount);
+			vertexFlags = getInts(buffer, vertexCount);
+			vertexEdges = getInts(buffer, vertexCount);
+			edgeDest = getInts(buffer, halfEdgeCount);
+			edgeNext = getInts(buffer, halfEdgeCount);
+			edgeFlags = getInts(buffer, halfEdgeCount);
+			edgeAngles = getFloats(buffer, halfEdgeCount);
+			validate();
+		}
+
+		/**
+		 * Verify that the indices are in range, derive the previous edges, and
+		 * verify that each vertex's ring is closed
+		 */
+		private void validate() throws IOException {
+			edgePrev = new int[halfEdgeCount];
+			Arrays.fill(edgePrev, -1);
+			for (int i = 0; i < halfEdgeCount; i++) {
+				int next = edgeNext[i];
+				int dest = edgeDest[i];
+				if (next < 0 || next >= halfEdgeCount || edgePrev[next] >= 0
+						|| dest < 0 || dest >= vertexCount)
+					throw new IOException("mesh snapshot is corrupt");
+				edgePrev[next] = i;
+			}
+			vertexDegrees = new int[vertexCount];
+			int ringEdges = 0;
+			for (int i = 0; i < vertexCount; i++) {
+				int first = vertexEdges[i];
+				if (first < 0)
+					continue;
+				if (first >= halfEdgeCount)
+					throw new IOException("mesh snapshot is corrupt");
+				int degree = 0;
+				int edge = first;
+				do {
+					degree++;
+					if (edgeDest[edge ^ 1] != i)
+						throw new IOException("mesh snapshot is corrupt");
+					edge = edgeNext[edge];
+				} while (edge != first);
+				vertexDegrees[i] = degree;
+				ringEdges += degree;
+			}
+			// Since the next edges form a permutation, every half edge must
+			// be in some vertex's ring
+			if (ringEdges != halfEdgeCount)
+				throw new IOException("mesh snapshot is corrupt");
+		}
+
+		public int vertexCount;
+		public int halfEdgeCount;
+		public float[] vertexX;
+		public float[] vertexY;
+		public int[] vertexFlags;
+		public int[] vertexEdges;
+		public int[] vertexDegrees;
+		public int[] edgeDest;
+		public int[] edgeNext;
+		public int[] edgePrev;
+		public int[] edgeFlags;
+		public float[] edgeAngles;
+	}
+
+	private static long fileSize(int vertexCount, int halfEdgeCount) {
+		return (HEADER_INTS + vertexCount * 4L + halfEdgeCount * 4L)
+				* BYTES_PER_INT;
+	}
+
+	private static void putInts(ByteBuffer buffer, int[] values) {
+		buffer.asIntBuffer().put(values);
+		buffer.position(buffer.position() + values.length * BYTES_PER_INT);
+	}
+
+	private static void putFloats(ByteBuffer buffer, float[] values) {
+		buffer.asFloatBuffer().put(values);
+		buffer.position(buffer.position() + values.length * BYTES_PER_INT);
+	}
+
+	private static int[] getInts(ByteBuffer buffer, int count) {
+		int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + count * BYTES_PER_INT);
+		return values;
+	}
+
+	private static float[] getFloats(ByteBuffer buffer, int count) {
+		float[] values = new float[count];
+		buffer.asFloatBuffer().get(values);
+		buffer.position(buffer.position() + count * BYTES_PER_INT);
+		return values;
+	}
+}
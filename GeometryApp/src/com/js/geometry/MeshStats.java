@@ -0,0 +1,205 @@
+package com.js.geometry;
+
+import static com.js.basic.Tools.*;
+
+/**
+ * For recording and displaying statistics about a mesh's size and the work
+ * done on it; see Mesh.setStats(). The counters are cheap enough to leave
+ * enabled, and all but the live element counts can be reset between
+ * algorithm runs with clear()
+ */
+public class MeshStats {
+
+	/**
+	 * Reset the operation counters; the live vertex and edge counts are
+	 * unaffected
+	 */
+	public void clear() {
+		mVerticesAdded = 0;
+		mVerticesDeleted = 0;
+		mVerticesAllocated = 0;
+		mEdgesAdded = 0;
+		mEdgesDeleted = 0;
+		mEdgesAllocated = 0;
+		mInsertions = 0;
+		mIndexedInsertions = 0;
+		mInsertionScanSteps = 0;
+		mMaxInsertionScan = 0;
+		mEdgeQueries = 0;
+		mEdgeQueryProbes = 0;
+		mDegeneracyRejections = 0;
+	}
+
+	public int liveVertices() {
+		return mLiveVertices;
+	}
+
+	public int liveEdges() {
+		return mLiveEdges;
+	}
+
+	public int verticesAdded() {
+		return mVerticesAdded;
+	}
+
+	public int verticesDeleted() {
+		return mVerticesDeleted;
+	}
+
+	/**
+	 * Get the number of vertices added that required a new object (i.e.,
+	 * that weren't recycled from the mesh's pool)
+	 */
+	public int verticesAllocated() {
+		return mVerticesAllocated;
+	}
+
+	/**
+	 * Get the number of edges added, not counting duals
+	 */
+	public int edgesAdded() {
+		return mEdgesAdded;
+	}
+
+	public int edgesDeleted() {
+		return mEdgesDeleted;
+	}
+
+	/**
+	 * Get the number of edges added that required new objects
+	 */
+	public int edgesAllocated() {
+		return mEdgesAllocated;
+	}
+
+	/**
+	 * Get the average number of edges examined while finding where to insert
+	 * a half edge into a vertex's ring, for insertions that scanned the ring
+	 */
+	public float averageInsertionScan() {
+		int scans = mInsertions - mIndexedInsertions;
+		if (scans == 0)
+			return 0;
+		return ((float) mInsertionScanSteps) / scans;
+	}
+
+	public int maxInsertionScan() {
+		return mMaxInsertionScan;
+	}
+
+	public int edgeQueries() {
+		return mEdgeQueries;
+	}
+
+	/**
+	 * Get the average number of edges examined by edgeExistsBetween(); a
+	 * lookup in the mesh's edge index counts as a single probe
+	 */
+	public float averageEdgeQueryProbes() {
+		if (mEdgeQueries == 0)
+			return 0;
+		return ((float) mEdgeQueryProbes) / mEdgeQueries;
+	}
+
+	public int degeneracyRejections() {
+		return mDegeneracyRejections;
+	}
+
+	void setLiveCounts(int vertices, int edges) {
+		mLiveVertices = vertices;
+		mLiveEdges = edges;
+	}
+
+	void vertexAdded(boolean allocated) {
+		mLiveVertices++;
+		mVerticesAdded++;
+		if (allocated)
+			mVerticesAllocated++;
+	}
+
+	void vertexDeleted() {
+		mLiveVertices--;
+		mVerticesDeleted++;
+	}
+
+	void edgesAdded(int count) {
+		mLiveEdges += count;
+		mEdgesAdded += count;
+	}
+
+	void edgeAllocated() {
+		mEdgesAllocated++;
+	}
+
+	void edgeDeleted() {
+		mLiveEdges--;
+		mEdgesDeleted++;
+	}
+
+	/**
+	 * Record the insertion of a half edge into a vertex's ring
+	 *
+	 * @param scanSteps
+	 *            number of ring edges examined, or -1 if an angular index was
+	 *            used
+	 */
+	void edgeInserted(int scanSteps) {
+		mInsertions++;
+		if (scanSteps < 0) {
+			mIndexedInsertions++;
+			return;
+		}
+		mInsertionScanSteps += scanSteps;
+		if (scanSteps > mMaxInsertionScan)
+			mMaxInsertionScan = scanSteps;
+	}
+
+	void edgeQueried(int probes) {
+		mEdgeQueries++;
+		mEdgeQueryProbes += probes;
+	}
+
+	void degeneracyRejected() {
+		mDegeneracyRejections++;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("------------------------------------------------\n");
+		sb.append("        Live vertices: " + d(mLiveVertices, 10) + "\n");
+		sb.append("           Live edges: " + d(mLiveEdges, 10) + "\n");
+		sb.append("       Vertices added: " + d(mVerticesAdded, 10) + " ("
+				+ d(mVerticesAllocated, 10) + " allocated)\n");
+		sb.append("     Vertices deleted: " + d(mVerticesDeleted, 10) + "\n");
+		sb.append("          Edges added: " + d(mEdgesAdded, 10) + " ("
+				+ d(mEdgesAllocated, 10) + " allocated)\n");
+		sb.append("        Edges deleted: " + d(mEdgesDeleted, 10) + "\n");
+		sb.append("      Ring insertions: " + d(mInsertions, 10) + " ("
+				+ d(mIndexedInsertions, 10) + " indexed)\n");
+		sb.append("         Avg/max scan: " + d(averageInsertionScan(), 6, 2)
+				+ " / " + d(mMaxInsertionScan, 10) + "\n");
+		sb.append("         Edge queries: " + d(mEdgeQueries, 10) + " (avg "
+				+ d(averageEdgeQueryProbes(), 6, 2) + " probes)\n");
+		sb.append("Degeneracy rejections: " + d(mDegeneracyRejections, 10)
+				+ "\n");
+		sb.append("------------------------------------------------\n");
+		return sb.toString();
+	}
+
+	private int mLiveVertices;
+	private int mLiveEdges;
+	private int mVerticesAdded;
+	private int mVerticesDeleted;
+	private int mVerticesAllocated;
+	private int mEdgesAdded;
+	private int mEdgesDeleted;
+	private int mEdgesAllocated;
+	private int mInsertions;
+	private int mIndexedInsertions;
+	private long mInsertionScanSteps;
+	private int mMaxInsertionScan;
+	private int mEdgeQueries;
+	private long mEdgeQueryProbes;
+	private int mDegeneracyRejections;
+}
@@ -0,0 +1,126 @@
+package com.js.geometry;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+import com.js.basic.Point;
+
+/**
+ * A read-only polygon whose vertices are stored as packed floats, rather than
+ * as a list of Points; for polygons too large to be represented as Polygon
+ * objects. The packed format is simply the vertices' coordinates, as
+ * little-endian floats:
+ *
+ * <pre>
+ * x0 y0 x1 y1 ... x(n-1) y(n-1)
+ * </pre>
+ *
+ * When read from a file, the file is memory mapped, so the vertices are paged
+ * in by the operating system as they're accessed, and occupy no heap space.
+ *
+ * As a vertex source, it's a single ring
+ */
+public final class PackedPolygon implements PolygonTriangulator.VertexSource {
+
+	private static final int BYTES_PER_VERTEX = 2 * Float.SIZE / Byte.SIZE;
+
+	/**
+	 * Construct a polygon from a buffer of packed coordinates
+	 */
+	public PackedPolygon(FloatBuffer coordinates) {
+		if (coordinates.remaining() % 2 != 0)
+			throw new IllegalArgumentException("odd number of coordinates");
+		mCoordinates = coordinates.slice();
+		mVertexCount = mCoordinates.capacity() / 2;
+	}
+
+	/**
+	 * Read a polygon from a file in the packed format
+	 *
+	 * @throws IOException
+	 *             if the file size isn't a multiple of the vertex size
+	 */
+	public static PackedPolygon read(File file) throws IOException {
+		FileInputStream stream = new FileInputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			long size = channel.size();
+			if (size % BYTES_PER_VERTEX != 0)
+				throw new IOException("not a packed polygon: " + file);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					size);
+			return new PackedPolygon(buffer.order(ByteOrder.LITTLE_ENDIAN)
+					.asFloatBuffer());
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Write a polygon to a file in the packed format
+	 */
+	public static void write(Polygon polygon, File file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(
+				polygon.numVertices() * BYTES_PER_VERTEX).order(
+				ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < polygon.numVertices(); i++) {
+			Point point = polygon.vertex(i);
+			buffer.putFloat(point.x);
+			buffer.putFloat(point.y);
+		}
+		buffer.flip();
+
+		FileOutputStream stream = new FileOutputStream(file);
+		try {
+			FileChannel channel = stream.getChannel();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		} finally {
+			stream.close();
+		}
+	}
+
+	@Override
+	public int numVertices() {
+		return mVertexCount;
+	}
+
+	@Override
+	public float x(int vertex) {
+		return mCoordinates.get(vertex * 2);
+	}
+
+	@Override
+	public float y(int vertex) {
+		return mCoordinates.get(vertex * 2 + 1);
+	}
+
+	@Override
+	public int nextVertex(int vertex) {
+		return (vertex == mVertexCount - 1) ? 0 : vertex + 1;
+	}
+
+	@Override
+	public int prevVertex(int vertex) {
+		return (vertex == 0) ? mVertexCount - 1 : vertex - 1;
+	}
+
+	/**
+	 * Calculate the polygon's area; positive iff its vertices are in CCW order
+	 */
+	public double signedArea() {
+		double sum = 0;
+		for (int i = 0, j = mVertexCount - 1; i < mVertexCount; j = i++)
+			sum += (double) x(j) * y(i) - (double) x(i) * y(j);
+		return sum / 2;
+	}
+
+	private FloatBuffer mCoordinates;
+	private int mVertexCount;
+}
@@ -299,23 +299,16 @@ public class Polygon implements Iterable<Point>, Renderable {
    * within mesh
    */
   public int embed(Mesh mesh) {
-    int baseVertex = embedVertices(mesh);
-    Vertex prevVertex = mesh.vertex(baseVertex + numVertices() - 1);
+    IntArray edgeVertices = new IntArray();
+    IntArray edgeFlags = new IntArray();
+    int prevVertex = numVertices() - 1;
     for (int i = 0; i < numVertices(); i++) {
-      Vertex currentVertex = mesh.vertex(baseVertex + i);
-      Edge edge = mesh.addEdge(prevVertex, currentVertex);
-      edge.addFlags(Edge.FLAG_POLYGON);
-      prevVertex = currentVertex;
+      edgeVertices.add(prevVertex);
+      edgeVertices.add(i);
+      edgeFlags.add(Edge.FLAG_POLYGON);
+      prevVertex = i;
     }
-    return baseVertex;
-  }
-
-  private int embedVertices(Mesh mesh) {
-    int embeddedVertexIndex = mesh.numVertices();
-    for (Point pt : this) {
-      mesh.addVertex(pt);
-    }
-    return embeddedVertexIndex;
+    return mesh.addVerticesAndEdges(mVertices, edgeVertices, edgeFlags);
   }
 
   public Rect bounds() {
@@ -421,6 +414,44 @@ public class Polygon implements Iterable<Point>, Renderable {
     return (orientation == 1);
   }
 
+  /**
+   * Determine if a point lies inside the polygon (by the even-odd rule)
+   */
+  public boolean contains(Point point) {
+    boolean inside = false;
+    Point v1 = vertexMod(-1);
+    for (Point v2 : this) {
+      if ((v1.y > point.y) != (v2.y > point.y)) {
+        float x = v1.x + (point.y - v1.y) * (v2.x - v1.x) / (v2.y - v1.y);
+        if (point.x < x)
+          inside = !inside;
+      }
+      v1 = v2;
+    }
+    return inside;
+  }
+
+  /**
+   * Orient a set of disjoint, non-intersecting rings so they bound a region
+   * with holes: rings nested within an even number of others become outer
+   * boundaries (CCW), and the rest become holes (CW)
+   * 
+   * @throws GeometryException
+   *           if any ring's orientation can't be determined
+   */
+  public static void orientRings(List<Polygon> rings) {
+    for (Polygon ring : rings) {
+      int depth = 0;
+      for (Polygon other : rings) {
+        if (other != ring && other.contains(ring.vertex(0)))
+          depth++;
+      }
+      boolean ccw = ring.isCCW(null);
+      if (ccw != (depth % 2 == 0))
+        ring.reverse();
+    }
+  }
+
   public static Polygon circleWithOrigin(Point origin, float radius,
       int numVertices) {
     Polygon p = new Polygon();
@@ -538,6 +569,44 @@ public class Polygon implements Iterable<Point>, Renderable {
       return new Renderer(this, Renderer.Style.FILLED);
   }
 
+  /**
+   * Get the cache of meshes used to render filled polygons
+   */
+  public static PolygonMeshCache meshCache() {
+    return sMeshCache;
+  }
+
+  /**
+   * Compile (in parallel) the meshes for rendering a number of filled
+   * polygons, so they are already in the mesh cache when rendered. Useful
+   * when a scene contains many filled polygons that aren't in the cache
+   *
+   * @param polygons
+   *          CCW polygons that will be rendered filled
+   */
+  public static void prepareFilledRendering(List<Polygon> polygons) {
+    List<Polygon> rendered = new ArrayList();
+    for (Polygon polygon : polygons) {
+      if (polygon.numVertices() == 0)
+        continue;
+      rendered.add(perturbedForRendering(polygon));
+    }
+    sMeshCache.prepare(rendered);
+  }
+
+  /**
+   * Construct the copy of a polygon that is actually rendered.
+   * 
+   * Always perturb polygons that are rendered, since we want to avoid geometry
+   * exceptions when displaying an algorithm (as opposed to those that occur
+   * during an algorithm execution)
+   */
+  private static Polygon perturbedForRendering(Polygon polygon) {
+    Polygon copy = new Polygon(polygon);
+    copy.perturb(new Random(1));
+    return copy;
+  }
+
   /**
    * Construct a Renderable for rendering a polyline
    */
@@ -551,11 +620,7 @@ public class Polygon implements Iterable<Point>, Renderable {
     };
 
     public Renderer(Polygon polygon, Style style) {
-      mPolygon = new Polygon(polygon);
-      // Always perturb polygons that are rendered, since we want to
-      // avoid geometry exceptions when displaying an algorithm (as
-      // opposed to those that occur during an algorithm execution)
-      mPolygon.perturb(new Random(1));
+      mPolygon = perturbedForRendering(polygon);
       mStyle = style;
     }
 
@@ -576,8 +641,9 @@ public class Polygon implements Iterable<Point>, Renderable {
       }
 
       if (mStyle == Style.FILLED) {
-        boolean useStrips = false;
-        PolygonMesh mesh = PolygonMesh.meshForPolygon(mPolygon, useStrips);
+        // The same polygons tend to be rendered every frame, so avoid
+        // triangulating them each time
+        PolygonMesh mesh = sMeshCache.indexedMeshForPolygon(mPolygon);
         PolygonProgram p = RenderTools.polygonProgram();
         p.setColor(RenderTools.getRenderColor());
         p.render(mesh);
@@ -596,6 +662,12 @@ public class Polygon implements Iterable<Point>, Renderable {
 
   }
 
+  // The maximum number of meshes retained for rendering filled polygons
+  private static final int MESH_CACHE_CAPACITY = 64;
+
+  private static PolygonMeshCache sMeshCache = new PolygonMeshCache(
+      MESH_CACHE_CAPACITY);
+
   private List<Point> mVertices = new ArrayList();
 
 }
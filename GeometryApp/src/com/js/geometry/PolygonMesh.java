@@ -1,7 +1,19 @@
 package com.js.geometry;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.js.basic.GeometryException;
 import com.js.basic.MyMath;
@@ -34,6 +46,28 @@ public class PolygonMesh {
 
 	private static final int EDGE_FLAG_INTERIOR = 1 << 0;
 
+	// Indexed meshes with more vertices than this require int indices
+	private static final int MAX_SHORT_INDEXED_VERTICES = 1 << 16;
+	private static final int BYTES_PER_SHORT = Short.SIZE / Byte.SIZE;
+
+	// Polygons with up to this many vertices are triangulated by ear clipping
+	// (unless strips are required)
+	private static final int EAR_CLIPPING_MAX_VERTICES = 256;
+
+	// The maximum number of triangles examined when comparing candidate strips
+	private static final int MAX_STRIP_LOOKAHEAD = 64;
+
+	// The maximum number of threads used by compileIndexedMeshes()
+	private static final int MAX_COMPILE_THREADS = 4;
+
+	private static ExecutorService sCompileExecutor;
+	private static final ThreadLocal<Mesh> sWorkerMesh = new ThreadLocal<Mesh>() {
+		@Override
+		protected Mesh initialValue() {
+			return new Mesh();
+		}
+	};
+
 	/**
 	 * Compile a TYPE_FANS mesh from a convex polygon
 	 */
@@ -61,11 +95,149 @@ public class PolygonMesh {
 	public static PolygonMesh meshForPolygon(Polygon polygon, boolean useStrips) {
 		if (EMPHASIZE_INDIVIDUAL_TRIANGLES)
 			warning("contracting strip vertices for demonstration purposes");
+		ArrayList<Polygon> rings = new ArrayList();
+		rings.add(polygon);
+		return meshForPolygons(rings, useStrips);
+	}
+
+	/**
+	 * Compile a mesh from a region bounded by multiple rings
+	 * 
+	 * @param rings
+	 *            outer boundaries (CCW) and holes (CW); see
+	 *            Polygon.orientRings()
+	 * @param useStrips
+	 *            if true, generates mesh of TYPE_STRIPS; else, TYPE_TRIANGLES
+	 */
+	public static PolygonMesh meshForPolygons(List<Polygon> rings,
+			boolean useStrips) {
 		PolygonMesh m = new PolygonMesh();
 		if (useStrips)
-			m.compilePolygonIntoStrips(polygon);
+			m.compilePolygonIntoStrips(rings);
 		else
-			m.compilePolygonIntoTriangles(polygon);
+			m.compilePolygonIntoTriangles(rings);
+		return m;
+	}
+
+	/**
+	 * Compile an indexed mesh of TYPE_TRIANGLES from a polygon; see
+	 * getIndexBuffer()
+	 */
+	public static PolygonMesh indexedMeshForPolygon(Polygon polygon) {
+		ArrayList<Polygon> rings = new ArrayList();
+		rings.add(polygon);
+		return indexedMeshForPolygons(rings);
+	}
+
+	/**
+	 * Compile an indexed mesh of TYPE_TRIANGLES from a region bounded by
+	 * multiple rings
+	 * 
+	 * @param rings
+	 *            outer boundaries (CCW) and holes (CW); see
+	 *            Polygon.orientRings()
+	 */
+	public static PolygonMesh indexedMeshForPolygons(List<Polygon> rings) {
+		return indexedMeshForPolygons(rings, null);
+	}
+
+	/**
+	 * @param workMesh
+	 *            if not null, mesh to (clear and) use for the triangulation,
+	 *            instead of constructing one
+	 */
+	private static PolygonMesh indexedMeshForPolygons(List<Polygon> rings,
+			Mesh workMesh) {
+		PolygonMesh m = new PolygonMesh();
+		m.mIndexArray = new IntArray();
+		m.mWorkMesh = workMesh;
+		m.compilePolygonIntoTriangles(rings);
+		return m;
+	}
+
+	/**
+	 * Compile indexed meshes for a number of (separate) polygons in parallel,
+	 * e.g. to prepare a large scene for rendering. Each worker thread has its
+	 * own Mesh for the triangulations; the number of threads (including the
+	 * calling thread, which also compiles meshes) is limited to the smaller
+	 * of MAX_COMPILE_THREADS and the number of processors
+	 * 
+	 * @return the meshes, in the same order as the polygons
+	 */
+	public static PolygonMesh[] compileIndexedMeshes(
+			final List<Polygon> polygons) {
+		final PolygonMesh[] meshes = new PolygonMesh[polygons.size()];
+		final AtomicInteger nextPolygon = new AtomicInteger();
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				Mesh workMesh = sWorkerMesh.get();
+				while (true) {
+					int i = nextPolygon.getAndIncrement();
+					if (i >= meshes.length)
+						break;
+					ArrayList<Polygon> rings = new ArrayList();
+					rings.add(polygons.get(i));
+					meshes[i] = indexedMeshForPolygons(rings, workMesh);
+				}
+				// Don't hold on to the mesh's contents
+				workMesh.clear();
+			}
+		};
+
+		int helperCount = Math.min(compileThreadCount(), meshes.length) - 1;
+		List<Future<?>> helpers = new ArrayList();
+		for (int i = 0; i < helperCount; i++)
+			helpers.add(compileExecutor().submit(worker));
+		worker.run();
+		for (Future<?> helper : helpers) {
+			try {
+				helper.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return meshes;
+	}
+
+	private static int compileThreadCount() {
+		return Math.min(MAX_COMPILE_THREADS, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	private static synchronized ExecutorService compileExecutor() {
+		if (sCompileExecutor == null) {
+			sCompileExecutor = Executors.newFixedThreadPool(
+					Math.max(1, compileThreadCount() - 1), new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "PolygonMesh compiler");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		return sCompileExecutor;
+	}
+
+	/**
+	 * Compile a mesh from a CompactMesh that already contains a triangulated
+	 * polygon (i.e., one whose boundary edges are flagged as polygon edges)
+	 * 
+	 * @param mesh
+	 *            triangulated mesh
+	 * @param useStrips
+	 *            if true, generates mesh of TYPE_STRIPS; else, TYPE_TRIANGLES
+	 */
+	public static PolygonMesh meshForTriangulatedMesh(CompactMesh mesh,
+			boolean useStrips) {
+		PolygonMesh m = new PolygonMesh();
+		m.compileTriangulatedMesh(mesh.toMesh(), useStrips);
 		return m;
 	}
 
@@ -92,6 +264,66 @@ public class PolygonMesh {
 		return mTriangleSet.capacity() / 2;
 	}
 
+	/**
+	 * Get the indices of the triangles' vertices, if this is an indexed mesh.
+	 * In that case, each vertex appears only once within the vertex buffer, and
+	 * each triple of indices defines a triangle.
+	 * 
+	 * @return a ShortBuffer if the vertices can be addressed by unsigned shorts,
+	 *         or an IntBuffer if there are too many; or null if the mesh is not
+	 *         indexed
+	 */
+	public Buffer getIndexBuffer() {
+		return mIndexBuffer;
+	}
+
+	/**
+	 * Get the number of indices in the index buffer
+	 */
+	public int getIndexCount() {
+		return (mIndexBuffer == null) ? 0 : mIndexBuffer.capacity();
+	}
+
+	/**
+	 * Get the number of triangles within the mesh (not counting the degenerate
+	 * triangles that join a TYPE_STRIPS mesh's strips)
+	 */
+	public int getTriangleCount() {
+		return mTriangleCount;
+	}
+
+	/**
+	 * Get the number of strips within a TYPE_STRIPS mesh (each of which, after
+	 * the first, is joined to its predecessor by degenerate triangles); the
+	 * lower the ratio of strips to triangles, the better
+	 */
+	public int getStripCount() {
+		return mStripCount;
+	}
+
+	/**
+	 * Calculate the average cache miss ratio of an indexed mesh; see
+	 * VertexCacheOptimizer.acmr()
+	 * 
+	 * @param cacheSize
+	 *            size of the simulated vertex cache
+	 */
+	public float getACMR(int cacheSize) {
+		if (mIndexBuffer == null)
+			throw new IllegalStateException("mesh is not indexed");
+		IntArray indices = new IntArray();
+		if (mIndexBuffer instanceof ShortBuffer) {
+			ShortBuffer buffer = (ShortBuffer) mIndexBuffer;
+			for (int i = 0; i < buffer.capacity(); i++)
+				indices.add(buffer.get(i) & 0xffff);
+		} else {
+			IntBuffer buffer = (IntBuffer) mIndexBuffer;
+			for (int i = 0; i < buffer.capacity(); i++)
+				indices.add(buffer.get(i));
+		}
+		return VertexCacheOptimizer.acmr(indices, getVertexCount(), cacheSize);
+	}
+
 	/**
 	 * Get any GeometryException that was produced during the triangulation /
 	 * strip extraction process
@@ -125,17 +357,51 @@ public class PolygonMesh {
 	 */
 	private void compileTriangleSet() {
 		mTriangleSet = mFloatArray.asFloatBuffer();
+		if (mIndexArray != null) {
+			mTriangleCount = mIndexArray.size() / 3;
+			compileIndexBuffer();
+		} else if (mType == TYPE_FANS) {
+			mTriangleCount = bufferedVertexCount() - 2;
+		} else if (mType == TYPE_STRIPS) {
+			mTriangleCount = mTrianglesExtracted;
+		} else {
+			mTriangleCount = bufferedVertexCount() / 3;
+		}
+	}
+
+	private void compileIndexBuffer() {
+		// The triangles produced by the triangulators are in no useful order
+		// as far as the vertex cache is concerned
+		VertexCacheOptimizer.optimize(mIndexArray, bufferedVertexCount());
+		int count = mIndexArray.size();
+		if (bufferedVertexCount() > MAX_SHORT_INDEXED_VERTICES) {
+			IntBuffer buffer = mIndexArray.asIntBuffer();
+			buffer.position(0);
+			mIndexBuffer = buffer;
+			return;
+		}
+		ShortBuffer buffer = ByteBuffer.allocateDirect(count * BYTES_PER_SHORT)
+				.order(ByteOrder.nativeOrder()).asShortBuffer();
+		int[] indices = mIndexArray.array(false);
+		for (int i = 0; i < count; i++)
+			buffer.put((short) indices[i]);
+		buffer.position(0);
+		mIndexBuffer = buffer;
 	}
 
 	/**
 	 * Set arbitrary (simple, but possibly nonconvex) polygon as source;
 	 * triangulate it extract individual polygons
 	 */
-	private void compilePolygonIntoTriangles(Polygon polygon) {
+	private void compilePolygonIntoTriangles(List<Polygon> rings) {
 		mType = TYPE_TRIANGLES;
+		if (rings.size() == 1
+				&& rings.get(0).numVertices() <= EAR_CLIPPING_MAX_VERTICES
+				&& compileByEarClipping(rings.get(0)))
+			return;
 		try {
-			mMesh = new Mesh();
-			triangulatePolygon(polygon);
+			mMesh = obtainMesh();
+			triangulatePolygon(rings);
 			extractTriangles();
 		} catch (GeometryException e) {
 			warning("caught: " + e);
@@ -144,15 +410,39 @@ public class PolygonMesh {
 		cleanUpConstructionResources();
 	}
 
+	/**
+	 * Triangulate a small polygon by ear clipping, which is faster than
+	 * constructing a mesh
+	 * 
+	 * @return true if successful; if not, the polygon should be triangulated
+	 *         by the sweep instead
+	 */
+	private boolean compileByEarClipping(Polygon polygon) {
+		IntArray triangles = new IntArray();
+		if (!new EarClippingTriangulator().triangulate(polygon, triangles))
+			return false;
+		if (mIndexArray != null) {
+			for (int i = 0; i < polygon.numVertices(); i++)
+				mFloatArray.add(polygon.vertex(i));
+			mIndexArray = triangles;
+		} else {
+			for (int i = 0; i < triangles.size(); i++)
+				mFloatArray.add(polygon.vertex(triangles.get(i)));
+		}
+		compileTriangleSet();
+		cleanUpConstructionResources();
+		return true;
+	}
+
 	/**
 	 * Set arbitrary (simple, but possibly nonconvex) polygon as source;
 	 * triangulate it and extract polygon strips
 	 */
-	private void compilePolygonIntoStrips(Polygon polygon) {
+	private void compilePolygonIntoStrips(List<Polygon> rings) {
 		mType = TYPE_STRIPS;
 		try {
 			mMesh = new Mesh();
-			triangulatePolygon(polygon);
+			triangulatePolygon(rings);
 			extractStrip();
 		} catch (GeometryException e) {
 			warning("caught: " + e);
@@ -161,20 +451,55 @@ public class PolygonMesh {
 		cleanUpConstructionResources();
 	}
 
+	/**
+	 * Extract triangles or strips from a mesh that has already been
+	 * triangulated
+	 */
+	private void compileTriangulatedMesh(Mesh mesh, boolean useStrips) {
+		mType = useStrips ? TYPE_STRIPS : TYPE_TRIANGLES;
+		try {
+			mMesh = mesh;
+			if (useStrips)
+				extractStrip();
+			else
+				extractTriangles();
+		} catch (GeometryException e) {
+			warning("caught: " + e);
+			mException = e;
+		}
+		cleanUpConstructionResources();
+	}
+
+	private Mesh obtainMesh() {
+		if (mWorkMesh == null)
+			return new Mesh();
+		mWorkMesh.clear();
+		return mWorkMesh;
+	}
+
 	/**
 	 * Throw away any resources that are no longer needed once the mesh has been
 	 * constructed
 	 */
 	private void cleanUpConstructionResources() {
 		mFloatArray = null;
+		mIndexArray = null;
 		mMeshEdges = null;
 		mMesh = null;
+		mWorkMesh = null;
 		mInteriorEdgeStack = null;
+		mStripDegrees = null;
+		mStripSeeds = null;
+		mLookaheadStamps = null;
 	}
 
-	private void triangulatePolygon(Polygon polygon) {
-		PolygonTriangulator t = PolygonTriangulator.triangulator(null, mMesh,
-				polygon);
+	private void triangulatePolygon(List<Polygon> rings) {
+		PolygonTriangulator t;
+		// A lone ring must be a CCW polygon, not a hole
+		if (rings.size() == 1)
+			t = PolygonTriangulator.triangulator(null, mMesh, rings.get(0));
+		else
+			t = PolygonTriangulator.triangulator(null, mMesh, rings);
 		t.triangulate();
 	}
 
@@ -195,22 +520,25 @@ public class PolygonMesh {
 	}
 
 	private void extractTriangles() {
-		mMeshEdges = mMesh.constructListOfEdges();
+		mMeshEdges = mMesh.edgeIterator(false);
 		findInteriorEdges();
+		if (mIndexArray != null) {
+			extractIndexedTriangles();
+			return;
+		}
 
-		for (Edge edge : mMeshEdges) {
-			// If this edge was included in a previous triangle, skip
-			if (edge.visited())
+		// Each face of the triangulated mesh is a triangle
+		int faceIdBound = mMesh.faceIdBound();
+		for (int face = 0; face < faceIdBound; face++) {
+			Edge abEdge = mMesh.faceEdge(face);
+			if (abEdge == null)
 				continue;
-			// If the face to its left is not inside the polygon, skip
-			if (!markedAsInteriorEdge(edge))
+			// If the face is not inside the polygon, skip
+			if (!markedAsInteriorEdge(abEdge))
 				continue;
 
-			Edge abEdge = edge;
 			Edge bcEdge = abEdge.nextFaceEdge();
 			Edge caEdge = bcEdge.nextFaceEdge();
-			bcEdge.setVisited(true);
-			caEdge.setVisited(true);
 
 			Point pa = caEdge.destVertex();
 			Point pb = abEdge.destVertex();
@@ -240,20 +568,59 @@ public class PolygonMesh {
 		cleanUpConstructionResources();
 	}
 
+	/**
+	 * Extract triangles as indices into the mesh's vertices, which are
+	 * compiled (once each) in their original order
+	 */
+	private void extractIndexedTriangles() {
+		for (int i = 0; i < mMesh.numVertices(); i++)
+			mFloatArray.add(mMesh.vertex(i));
+		int faceIdBound = mMesh.faceIdBound();
+		for (int face = 0; face < faceIdBound; face++) {
+			Edge abEdge = mMesh.faceEdge(face);
+			if (abEdge == null || !markedAsInteriorEdge(abEdge))
+				continue;
+			Edge bcEdge = abEdge.nextFaceEdge();
+			Edge caEdge = bcEdge.nextFaceEdge();
+			mIndexArray.add(caEdge.destVertex().index());
+			mIndexArray.add(abEdge.destVertex().index());
+			mIndexArray.add(bcEdge.destVertex().index());
+		}
+		int trianglesFound = mIndexArray.size() / 3;
+		if (trianglesFound != mTrianglesExpected) {
+			warning("expected " + mTrianglesExpected + " but got "
+					+ trianglesFound);
+		}
+		compileTriangleSet();
+		cleanUpConstructionResources();
+	}
+
 	private void extractStrip() {
-		mMeshEdges = mMesh.constructListOfEdges();
+		mMeshEdges = mMesh.edgeIterator(false);
 		findInteriorEdges();
+		prepareStripSeeds();
 
 		if (DUMP_STRIP)
 			prr("Strip: ");
-		for (Edge edge : mMeshEdges) {
-			if (edge.visited())
-				continue;
-			if (!markedAsInteriorEdge(edge))
-				continue;
+		while (true) {
+			int face = popStripSeed();
+			if (face < 0)
+				break;
 
-			// Start a strip with the triangle to the left of this edge
-			buildTriangleStrip(edge);
+			// Start the strip at whichever of the seed triangle's edges
+			// yields the longest strip
+			Edge edge = mMesh.faceEdge(face);
+			Edge bestEdge = null;
+			int bestLength = 0;
+			for (int i = 0; i < 3; i++) {
+				int length = stripLength(edge, stripParity());
+				if (length > bestLength) {
+					bestLength = length;
+					bestEdge = edge;
+				}
+				edge = edge.nextFaceEdge();
+			}
+			buildTriangleStrip(bestEdge);
 		}
 		if (mTrianglesExtracted != mTrianglesExpected)
 			GeometryException
@@ -262,6 +629,7 @@ public class PolygonMesh {
 			pr("");
 			int vertices = bufferedVertexCount();
 			pr("triangles=" + mTrianglesExtracted);
+			pr("   strips=" + mStripCount);
 			pr(" vertices=" + vertices);
 			int max = mTrianglesExtracted * 3;
 			pr("  maximum=" + max);
@@ -270,8 +638,12 @@ public class PolygonMesh {
 		compileTriangleSet();
 	}
 
+	/**
+	 * Determine if the next triangle to be added to the strip starts at an
+	 * odd vertex position, and will thus be rendered with reversed winding
+	 */
 	private boolean stripParity() {
-		return bufferedVertexCount() % 1 != 0;
+		return bufferedVertexCount() % 2 != 0;
 	}
 
 	private void addPointToStrip(Point point) {
@@ -280,6 +652,116 @@ public class PolygonMesh {
 		mFloatArray.add(point);
 	}
 
+	/**
+	 * Calculate the number of neighbors each interior triangle has (i.e., the
+	 * number of its edges that aren't polygon edges), and place each into the
+	 * seed bucket for that number
+	 */
+	private void prepareStripSeeds() {
+		int faceIdBound = mMesh.faceIdBound();
+		mStripDegrees = new int[faceIdBound];
+		mLookaheadStamps = new int[faceIdBound];
+		mStripSeeds = new IntArray[4];
+		for (int i = 0; i < mStripSeeds.length; i++)
+			mStripSeeds[i] = new IntArray();
+		for (int face = 0; face < faceIdBound; face++) {
+			Edge edge = mMesh.faceEdge(face);
+			if (edge == null || !markedAsInteriorEdge(edge)) {
+				mStripDegrees[face] = -1;
+				continue;
+			}
+			int degree = 0;
+			for (int i = 0; i < 3; i++) {
+				if (markedAsInteriorEdge(edge.dual()))
+					degree++;
+				edge = edge.nextFaceEdge();
+			}
+			mStripDegrees[face] = degree;
+			mStripSeeds[degree].add(face);
+		}
+	}
+
+	/**
+	 * Choose the triangle to start the next strip. Starting with a triangle
+	 * that has the fewest unextracted neighbors leaves fewer isolated
+	 * triangles behind, and thus requires fewer strips
+	 * 
+	 * @return face id, or -1 if all triangles have been extracted
+	 */
+	private int popStripSeed() {
+		for (int degree = 0; degree < mStripSeeds.length; degree++) {
+			IntArray seeds = mStripSeeds[degree];
+			while (!seeds.isEmpty()) {
+				int face = seeds.pop();
+				// Skip the face if it's been extracted, or its degree has
+				// since been reduced (in which case it's in a lower bucket)
+				if (mStripDegrees[face] == degree)
+					return face;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Mark an interior triangle as extracted, reducing its neighbors' degrees
+	 */
+	private void extractStripTriangle(Edge ccwEdge) {
+		mStripDegrees[mMesh.faceOf(ccwEdge)] = -1;
+		Edge edge = ccwEdge;
+		for (int i = 0; i < 3; i++) {
+			Edge dual = edge.dual();
+			if (markedAsInteriorEdge(dual)) {
+				int neighbor = mMesh.faceOf(dual);
+				int degree = mStripDegrees[neighbor];
+				if (degree > 0) {
+					mStripDegrees[neighbor] = --degree;
+					mStripSeeds[degree].add(neighbor);
+				}
+			}
+			edge = edge.nextFaceEdge();
+		}
+	}
+
+	/**
+	 * Get the edge of a strip triangle through which the strip leaves it (to
+	 * the triangle on the other side), given the edge through which it entered
+	 * 
+	 * @param ccwEdge
+	 *            entry edge, with the triangle to its left
+	 * @param oddParity
+	 *            true if the triangle is rendered with reversed winding
+	 */
+	private static Edge stripExitEdge(Edge ccwEdge, boolean oddParity) {
+		return oddParity ? ccwEdge.prevFaceEdge() : ccwEdge.nextFaceEdge();
+	}
+
+	/**
+	 * Determine how many triangles a strip would contain, up to a limit
+	 * 
+	 * @param ccwBaseEdge
+	 *            edge with first triangle to its left
+	 * @param oddParity
+	 *            parity of the first triangle
+	 */
+	private int stripLength(Edge ccwBaseEdge, boolean oddParity) {
+		mLookaheadStamp++;
+		int length = 0;
+		Edge edge = ccwBaseEdge;
+		while (length < MAX_STRIP_LOOKAHEAD) {
+			int face = mMesh.faceOf(edge);
+			if (mStripDegrees[face] < 0
+					|| mLookaheadStamps[face] == mLookaheadStamp)
+				break;
+			mLookaheadStamps[face] = mLookaheadStamp;
+			length++;
+			edge = stripExitEdge(edge, oddParity).dual();
+			if (!markedAsInteriorEdge(edge))
+				break;
+			oddParity = !oddParity;
+		}
+		return length;
+	}
+
 	/**
 	 * Build a triangle strip. Throws exception if the number of triangles
 	 * extracted ever exceeds the expected number. Extends a previous strip, if
@@ -289,28 +771,27 @@ public class PolygonMesh {
 	 *            edge with first triangle to its left
 	 */
 	private void buildTriangleStrip(Edge ccwBaseEdge) {
-
-		// For simplicity, we maintain both the ccwBaseEdge, and its the
-		// corresponding edge that alternates between ccw and cw orientations.
-
-		Edge baseEdge = ccwBaseEdge;
-		if (stripParity())
-			baseEdge = ccwBaseEdge.dual();
+		mStripCount++;
 
 		{
+			// If the first triangle is to be rendered with reversed winding,
+			// start with the base edge's vertices in reverse order
 			Point firstPoint, secondPoint;
-			firstPoint = baseEdge.sourceVertex();
-			secondPoint = baseEdge.destVertex();
+			if (stripParity()) {
+				firstPoint = ccwBaseEdge.destVertex();
+				secondPoint = ccwBaseEdge.sourceVertex();
+			} else {
+				firstPoint = ccwBaseEdge.sourceVertex();
+				secondPoint = ccwBaseEdge.destVertex();
+			}
 
 			// If we're continuing a previous strip, add degenerate
-			// triangles to bridge the gap
+			// triangles to bridge the gap (adding an even number of vertices,
+			// so the parity is unchanged)
 			if (mLastVertexGenerated != null) {
 				if (DUMP_STRIP)
 					prr("(");
-				// Special case if last vertex generated equals new start vertex
-				if (mLastVertexGenerated != firstPoint) {
-					addPointToStrip(mLastVertexGenerated);
-				}
+				addPointToStrip(mLastVertexGenerated);
 				addPointToStrip(firstPoint);
 				if (DUMP_STRIP)
 					prr(")");
@@ -320,34 +801,14 @@ public class PolygonMesh {
 		}
 
 		while (true) {
-			// If edge is not interior, or is already part of an earlier strip,
-			// stop the strip
-			if (ccwBaseEdge.visited()
-					|| !ccwBaseEdge.hasFlags(EDGE_FLAG_INTERIOR))
-				break;
-			ccwBaseEdge.setVisited(true);
-
+			extractStripTriangle(ccwBaseEdge);
 			mTrianglesExtracted++;
 			if (mTrianglesExtracted > mTrianglesExpected)
 				GeometryException
 						.raise("too many triangles generated for strips");
 
-			if (!stripParity()) {
-				Edge nextBaseEdge = baseEdge.nextFaceEdge();
-				nextBaseEdge.setVisited(true);
-				Edge edge3 = baseEdge.prevFaceEdge();
-				edge3.setVisited(true);
-				ccwBaseEdge = nextBaseEdge;
-				baseEdge = nextBaseEdge;
-			} else {
-				Edge nextBaseEdge = nextEdgeInCWTriangle(baseEdge);
-				nextBaseEdge.dual().setVisited(true);
-				Edge edge3 = prevEdgeInCWTriangle(baseEdge);
-				edge3.dual().setVisited(true);
-				ccwBaseEdge = nextBaseEdge.dual();
-				baseEdge = nextBaseEdge;
-			}
-			Point point = baseEdge.destVertex();
+			Edge exitEdge = stripExitEdge(ccwBaseEdge, stripParity());
+			Point point = ccwBaseEdge.nextFaceEdge().destVertex();
 			if (EMPHASIZE_INDIVIDUAL_TRIANGLES) {
 				Point p1 = peekLastPoint(2);
 				Point p2 = peekLastPoint(1);
@@ -359,6 +820,13 @@ public class PolygonMesh {
 			}
 			addPointToStrip(point);
 			mLastVertexGenerated = point;
+
+			// If the next triangle is outside the polygon, or is already part
+			// of a strip, stop the strip
+			ccwBaseEdge = exitEdge.dual();
+			if (!markedAsInteriorEdge(ccwBaseEdge)
+					|| mStripDegrees[mMesh.faceOf(ccwBaseEdge)] < 0)
+				break;
 		}
 	}
 
@@ -400,7 +868,7 @@ public class PolygonMesh {
 
 	/**
 	 * Mark all interior edges within mesh (i.e. edges whose area to their left
-	 * lies inside the polygon). Also clears all the edge visited flags.
+	 * lies inside the polygon).
 	 * 
 	 * We perform a flood fill from polygon edges. It's slightly complicated by
 	 * the fact that we don't have a data structure for faces.
@@ -409,7 +877,9 @@ public class PolygonMesh {
 	private void findInteriorEdges() {
 		mInteriorEdgeStack = new ArrayList();
 
-		for (Edge edge : mMeshEdges) {
+		mMeshEdges.reset();
+		while (mMeshEdges.hasNext()) {
+			Edge edge = mMeshEdges.next();
 			if (markedAsInteriorEdge(edge))
 				continue;
 
@@ -450,24 +920,30 @@ public class PolygonMesh {
 		mTrianglesExpected = mInteriorEdgeCount / 3;
 	}
 
-	private static Edge nextEdgeInCWTriangle(Edge edge) {
-		return edge.dual().nextEdge();
-	}
-
-	private static Edge prevEdgeInCWTriangle(Edge edge) {
-		return edge.prevEdge().dual();
-	}
-
 	private int mType;
 	private FloatBuffer mTriangleSet;
+	private Buffer mIndexBuffer;
 	private GeometryException mException;
+	private int mTriangleCount;
+	private int mStripCount;
 
 	// These are used only during the mesh construction process:
 	private FloatArray mFloatArray = new FloatArray();
-	private ArrayList<Edge> mMeshEdges;
+	// Non-null iff compiling an indexed mesh
+	private IntArray mIndexArray;
+	private Mesh.EdgeIterator mMeshEdges;
 	private int mTrianglesExtracted;
 	private Mesh mMesh;
+	// If not null, mesh to use for triangulating (instead of a new one)
+	private Mesh mWorkMesh;
 	private ArrayList<Edge> mInteriorEdgeStack;
+	// Degree of each interior triangle (by face id) during strip extraction,
+	// or -1 if it's been extracted (or isn't an interior triangle)
+	private int[] mStripDegrees;
+	// Triangles that may start strips, bucketed by degree
+	private IntArray[] mStripSeeds;
+	private int[] mLookaheadStamps;
+	private int mLookaheadStamp;
 	private int mInteriorEdgeCount;
 	private int mTrianglesExpected;
 	private Point mLastVertexGenerated;
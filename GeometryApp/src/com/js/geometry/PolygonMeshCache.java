@@ -0,0 +1,180 @@
+package com.js.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.js.basic.Point;
+
+import static com.js.basic.Tools.*;
+
+/**
+ * A bounded cache of compiled PolygonMeshes, keyed by the polygons' vertex
+ * coordinates; when full, the least recently used mesh is evicted. This
+ * allows polygons that are redrawn every frame (e.g., algorithm background
+ * layers) to avoid being triangulated each time
+ */
+public class PolygonMeshCache {
+
+	public PolygonMeshCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("bad capacity: " + capacity);
+		mCapacity = capacity;
+		// Iterate in access order, so the least recently used entry is first
+		mMeshes = new LinkedHashMap(16, .75f, true);
+	}
+
+	/**
+	 * Get an indexed mesh for a polygon, compiling it if it's not in the cache;
+	 * see PolygonMesh.indexedMeshForPolygon()
+	 */
+	public synchronized PolygonMesh indexedMeshForPolygon(Polygon polygon) {
+		Key key = new Key(polygon);
+		PolygonMesh mesh = mMeshes.get(key);
+		if (mesh != null) {
+			mHits++;
+			return mesh;
+		}
+		mMisses++;
+		mesh = PolygonMesh.indexedMeshForPolygon(polygon);
+		store(key, mesh);
+		return mesh;
+	}
+
+	/**
+	 * Compile meshes for any of a list of polygons that aren't in the cache,
+	 * in parallel (see PolygonMesh.compileIndexedMeshes()), so subsequent
+	 * calls to indexedMeshForPolygon() for them won't need to compile them.
+	 * The meshes are added to the cache in the order of the list, so the
+	 * cache's contents don't depend upon the order in which they were
+	 * compiled
+	 */
+	public void prepare(List<Polygon> polygons) {
+		ArrayList<Key> missingKeys = new ArrayList();
+		ArrayList<Polygon> missingPolygons = new ArrayList();
+		synchronized (this) {
+			Set<Key> keys = new HashSet();
+			for (Polygon polygon : polygons) {
+				Key key = new Key(polygon);
+				if (mMeshes.containsKey(key) || !keys.add(key))
+					continue;
+				missingKeys.add(key);
+				missingPolygons.add(polygon);
+			}
+		}
+		if (missingPolygons.isEmpty())
+			return;
+
+		// Compile the meshes without holding the lock, so the cache can still
+		// be used (e.g. by the renderer) meanwhile
+		PolygonMesh[] meshes = PolygonMesh
+				.compileIndexedMeshes(missingPolygons);
+
+		synchronized (this) {
+			for (int i = 0; i < meshes.length; i++) {
+				Key key = missingKeys.get(i);
+				if (mMeshes.containsKey(key))
+					continue;
+				mMisses++;
+				store(key, meshes[i]);
+			}
+		}
+	}
+
+	private void store(Key key, PolygonMesh mesh) {
+		mMeshes.put(key, mesh);
+		if (mMeshes.size() > mCapacity) {
+			Iterator<PolygonMesh> iter = mMeshes.values().iterator();
+			iter.next();
+			iter.remove();
+			mEvictions++;
+		}
+	}
+
+	public int capacity() {
+		return mCapacity;
+	}
+
+	public synchronized int size() {
+		return mMeshes.size();
+	}
+
+	public synchronized int hits() {
+		return mHits;
+	}
+
+	public synchronized int misses() {
+		return mMisses;
+	}
+
+	public synchronized int evictions() {
+		return mEvictions;
+	}
+
+	/**
+	 * Discard all cached meshes; the counters are unaffected
+	 */
+	public synchronized void clear() {
+		mMeshes.clear();
+	}
+
+	/**
+	 * Reset the hit, miss, and eviction counters
+	 */
+	public synchronized void clearStats() {
+		mHits = 0;
+		mMisses = 0;
+		mEvictions = 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "PolygonMeshCache size " + d(mMeshes.size()) + " of "
+				+ d(mCapacity) + ", hits " + d(mHits) + ", misses "
+				+ d(mMisses) + ", evictions " + d(mEvictions);
+	}
+
+	/**
+	 * A copy of a polygon's vertex coordinates, with its hash code computed in
+	 * advance
+	 */
+	private static class Key {
+		public Key(Polygon polygon) {
+			mCoordinates = new float[polygon.numVertices() * 2];
+			for (int i = 0; i < polygon.numVertices(); i++) {
+				Point point = polygon.vertex(i);
+				mCoordinates[i * 2 + 0] = point.x;
+				mCoordinates[i * 2 + 1] = point.y;
+			}
+			mHashCode = Arrays.hashCode(mCoordinates);
+		}
+
+		@Override
+		public int hashCode() {
+			return mHashCode;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Key))
+				return false;
+			Key other = (Key) object;
+			return mHashCode == other.mHashCode
+					&& Arrays.equals(mCoordinates, other.mCoordinates);
+		}
+
+		private float[] mCoordinates;
+		private int mHashCode;
+	}
+
+	private int mCapacity;
+	private Map<Key, PolygonMesh> mMeshes;
+	private int mHits;
+	private int mMisses;
+	private int mEvictions;
+}
@@ -1,18 +1,14 @@
 package com.js.geometry;
 
 import static com.js.basic.Tools.*;
-import static com.js.basic.MyMath.*;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Deque;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.List;
 
 import com.js.basic.GeometryException;
-import com.js.basic.MyMath;
 import com.js.basic.Point;
+import com.js.basic.Predicates;
 import com.js.basic.Rect;
 import com.js.geometryapp.RenderTools;
 
@@ -23,32 +19,129 @@ import android.graphics.Color;
  * 
  * Polygon must be CCW oriented.
  * 
+ * Alternatively, triangulates a region bounded by any number of rings: CCW
+ * rings bounding the region from outside, and CW rings bounding holes within
+ * it. All the rings are processed in a single sweep. The rings must not
+ * intersect each other or share vertices.
+ * 
+ * The sweep works with vertex indices, reading the rings from a VertexSource
+ * and passing each triangle to a TriangleSink as soon as it's produced; so it
+ * can also triangulate rings that aren't stored in a Mesh (see
+ * StreamingTriangulator). Vertices are swept from top to bottom; those with
+ * equal y coordinates are ordered from left to right, so horizontal edges
+ * need no special handling.
+ * 
+ * Each vertex is classified as a start, end, split, merge, or regular vertex.
+ * Rather than adding diagonals to split the region into monotone faces and
+ * then triangulating those faces, each region of the sweep status (the
+ * interior between a left and a right polygon edge) is triangulated as the
+ * sweep proceeds. A region keeps only the chain of its vertices that can't
+ * yet be triangulated (or, below a merge vertex, one such chain for each side
+ * of the merge). Only the start and split vertices are sorted; every other
+ * vertex is queued once its predecessors along the rings have been swept. So
+ * apart from the start and split vertices, memory use is proportional to the
+ * width of the sweep status and the lengths of the chains, not to the number
+ * of vertices.
  */
 public class PolygonTriangulator {
 
 	public static final String DETAIL_TRIANGULATE_MONOTONE_FACE = "Triangulate monotone face";
 
+	/**
+	 * Supplies the vertices of the rings to be triangulated. The vertices are
+	 * identified by indices 0...numVertices()-1, and each ring is a cycle of
+	 * these vertices
+	 */
+	public interface VertexSource {
+
+		int numVertices();
+
+		float x(int vertex);
+
+		float y(int vertex);
+
+		/**
+		 * Get the vertex following a vertex within its ring
+		 */
+		int nextVertex(int vertex);
+
+		/**
+		 * Get the vertex preceding a vertex within its ring
+		 */
+		int prevVertex(int vertex);
+	}
+
+	/**
+	 * Receives the triangles produced by the sweep
+	 */
+	public interface TriangleSink {
+
+		/**
+		 * Add a triangle, whose vertices are in CCW order
+		 */
+		void addTriangle(int a, int b, int c);
+	}
+
 	public static PolygonTriangulator triangulator(AlgorithmStepper stepper,
 			Mesh context, Polygon polygon) {
-		return new PolygonTriangulator(stepper, context, polygon);
+		ASSERT(polygon.isCCW(context));
+		ArrayList<Polygon> rings = new ArrayList();
+		rings.add(polygon);
+		return new PolygonTriangulator(stepper, context, rings);
+	}
+
+	/**
+	 * Construct a triangulator for a region bounded by multiple rings
+	 * 
+	 * @param rings
+	 *            outer boundaries (CCW) and holes (CW); see
+	 *            Polygon.orientRings()
+	 */
+	public static PolygonTriangulator triangulator(AlgorithmStepper stepper,
+			Mesh context, List<Polygon> rings) {
+		for (Polygon ring : rings) {
+			if (ring.orientation() == 0)
+				GeometryException.raise("Polygon winding number unknown");
+		}
+		return new PolygonTriangulator(stepper, context, rings);
+	}
+
+	/**
+	 * Triangulate a polygon within a CompactMesh. The mesh is converted to a
+	 * Mesh for the duration of the triangulation, then converted back
+	 */
+	public static void triangulate(CompactMesh mesh, Polygon polygon) {
+		Mesh m = mesh.toMesh();
+		triangulator(null, m, polygon).triangulate();
+		mesh.setTo(m);
+	}
+
+	/**
+	 * Triangulate the region bounded by the rings of a vertex source, without
+	 * constructing a mesh
+	 * 
+	 * @param source
+	 *            rings, oriented as for triangulator(AlgorithmStepper, Mesh,
+	 *            List)
+	 * @param sink
+	 *            receives each triangle as soon as it's produced
+	 */
+	public static void triangulate(VertexSource source, TriangleSink sink) {
+		PolygonTriangulator t = new PolygonTriangulator(null, null, null);
+		t.mSource = source;
+		t.mSink = sink;
+		t.sweep();
 	}
 
 	private PolygonTriangulator(AlgorithmStepper stepper, Mesh mesh,
-			Polygon polygon) {
+			List<Polygon> rings) {
 		if (stepper == null)
 			stepper = AlgorithmStepper.INACTIVE_STEPPER;
 		s = stepper;
 		mMesh = mesh;
-		mPolygon = polygon;
-		ASSERT(polygon.isCCW(mesh));
-		mMonotoneQueue = new ArrayDeque();
-		mVertexList = new ArrayList();
+		mRings = rings;
 	}
 
-	// Vertex flags internal to this algorithm
-	private static final int VERTEXFLAG_MERGE = 1 << 0;
-	private static final int VERTEXFLAG_LEFTSIDE = 1 << 1;
-
 	// Characterizations of each polygon vertex.
 	// Derived from http://www.cs.uu.nl/docs/vakken/ga/slides3.pdf, but
 	// with two versions of REGULAR depending upon orientation of the boundary
@@ -59,511 +152,691 @@ public class PolygonTriangulator {
 	private static final int VTYPE_SPLIT = 4;
 	private static final int VTYPE_MERGE = 5;
 
+	// Sides of a region that a chain's vertices can lie on
+	private static final int SIDE_NONE = 0;
+	private static final int SIDE_LEFT = 1;
+	private static final int SIDE_RIGHT = 2;
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
 	private static final String BGND_ELEMENT_POLYGON_FILLED = "10";
 	private static final String BGND_ELEMENT_POLYGON_OUTLINE = "11";
-	private static final String BGND_ELEMENT_MONOTONE_FACE = "15";
 	private static final String BGND_ELEMENT_SWEEPSTATUS = "20";
 	private static final String BGND_ELEMENT_MESH = "00:mesh";
 
 	public void triangulate() {
-		s.addLayer(
-				BGND_ELEMENT_POLYGON_FILLED,
-				s.colored(Color.argb(0x40, 0x80, 0x80, 0x80),
-						mPolygon.renderable(true)));
-		s.addLayer(BGND_ELEMENT_POLYGON_OUTLINE, mPolygon);
-		s.addLayer(BGND_ELEMENT_MESH, mMesh);
+		// Don't construct any layers unless they'll be displayed
+		if (s.isActive()) {
+			// Holes are left unfilled; compile the meshes for filling the
+			// other rings together, rather than one at a time as each is
+			// first rendered
+			boolean[] filled = new boolean[mRings.size()];
+			List<Polygon> filledRings = new ArrayList();
+			for (int i = 0; i < mRings.size(); i++) {
+				Polygon ring = mRings.get(i);
+				filled[i] = ring.orientation() > 0;
+				if (filled[i])
+					filledRings.add(ring);
+			}
+			Polygon.prepareFilledRendering(filledRings);
+			for (int i = 0; i < mRings.size(); i++) {
+				Polygon ring = mRings.get(i);
+				if (filled[i])
+					s.addLayer(
+							BGND_ELEMENT_POLYGON_FILLED + i,
+							s.colored(Color.argb(0x40, 0x80, 0x80, 0x80),
+									ring.renderable(true)));
+				s.addLayer(BGND_ELEMENT_POLYGON_OUTLINE + i, ring);
+			}
+			s.addLayer(BGND_ELEMENT_MESH, mMesh);
+		}
 
 		if (s.bigStep())
 			s.show("Triangulating polygon");
 
-		mPolygonMeshBase = mPolygon.embed(mMesh);
-		createEventList();
+		EmbeddedRings rings = new EmbeddedRings();
+		mSource = rings;
+		mSink = rings;
+		sweep();
+	}
+
+	private void sweep() {
+		createEventQueue();
 		createSweepStatus();
 
-		for (Vertex v : mVertexEvents) {
-			processVertexEvent(v);
+		while (true) {
+			int vertex = nextEvent();
+			if (vertex < 0)
+				break;
+			processVertexEvent(vertex);
 		}
+		if (mStatusSize != 0)
+			GeometryException.raise("sweep status not empty");
 
 		if (s.isActive()) {
 			s.removeLayer(BGND_ELEMENT_SWEEPSTATUS);
 		}
+	}
 
+	/**
+	 * Determine if vertex a precedes vertex b in the sweep
+	 */
+	private boolean precedes(int a, int b) {
+		float ya = mSource.y(a);
+		float yb = mSource.y(b);
+		if (ya != yb)
+			return ya > yb;
+		float xa = mSource.x(a);
+		float xb = mSource.x(b);
+		if (xa != xb)
+			return xa < xb;
+		return a < b;
 	}
 
-	private void createSweepStatus() {
-		mSweepStatus = new TreeSet<SweepEdge>(new Comparator<SweepEdge>() {
-			@Override
-			public int compare(SweepEdge a, SweepEdge b) {
-				Point sa = a.positionOnSweepLine(mSweepLinePosition, mMesh,
-						false);
-				Point sb = b.positionOnSweepLine(mSweepLinePosition, mMesh,
-						false);
-				return (int) Math.signum(sa.x - sb.x);
-			}
-		});
-		mSweepLineVisible = false;
+	private double orientation(int a, int b, int c) {
+		return Predicates.orient2d(mSource.x(a), mSource.y(a), mSource.x(b),
+				mSource.y(b), mSource.x(c), mSource.y(c));
+	}
 
-		s.addLayer(BGND_ELEMENT_SWEEPSTATUS, new Renderable() {
-			@Override
-			public void render(AlgorithmStepper s) {
-				if (!mSweepLineVisible)
-					return;
-				s.setColor(RenderTools.COLOR_DARKGREEN);
-				Rect r = s.algorithmRect();
-				float horizExtent = r.width * .25f;
-				s.renderLine(new Point(-horizExtent, mSweepLinePosition),
-						new Point(r.width + horizExtent, mSweepLinePosition));
-				s.setLineWidth(2);
-				for (SweepEdge e : mSweepStatus) {
-
-					// Extrapolate a little above and below the
-					// sweep line
-					float vertExtent = 22;
-					Point p1 = e.positionOnSweepLine(mSweepLinePosition
-							- vertExtent * .8f, mMesh, true);
-					Point p2 = e.positionOnSweepLine(mSweepLinePosition
-							+ vertExtent * 1.2f, mMesh, true);
-					s.render(Segment.directed(p1, p2));
-
-					Point pt = e.positionOnSweepLine(mSweepLinePosition, mMesh,
-							false);
-					s.render(pt);
-				}
-			}
-		});
+	private Point point(int vertex) {
+		return new Point(mSource.x(vertex), mSource.y(vertex));
 	}
 
-	private void createEventList() {
-		ArrayList<Vertex> array = new ArrayList();
-		for (int i = 0; i < mPolygon.numVertices(); i++) {
-			Vertex vertex = mMesh.vertex(mPolygonMeshBase + i);
-			vertex.clearFlags();
-			array.add(vertex);
+	/**
+	 * Find the vertices that precede both of their neighbors (the start and
+	 * split vertices), and sort them into sweep order. Every other vertex is
+	 * added to the event queue when the last of its neighbors that precede it
+	 * has been processed, so the queue holds only the next vertex of each
+	 * boundary that intersects the sweep line
+	 */
+	private void createEventQueue() {
+		mMinima = new IntArray();
+		for (int v = 0; v < mSource.numVertices(); v++) {
+			if (precedes(v, mSource.prevVertex(v))
+					&& precedes(v, mSource.nextVertex(v)))
+				mMinima.add(v);
 		}
+		sortVertices(mMinima.array(false), 0, mMinima.size());
+		mMinimaProcessed = 0;
+		mQueue = new int[16];
+		mQueueSize = 0;
+	}
 
-		Collections.sort(array, new Comparator<Vertex>() {
-			@Override
-			public int compare(Vertex va, Vertex vb) {
-				float diff = va.y - vb.y;
-				testForZero(diff);
-				return (int) Math.signum(diff);
-			}
-		});
-		mVertexEvents = array;
+	/**
+	 * Get the next vertex to be processed, or -1 if the sweep is done
+	 */
+	private int nextEvent() {
+		int vertex;
+		if (mMinimaProcessed < mMinima.size()
+				&& (mQueueSize == 0 || precedes(mMinima.get(mMinimaProcessed),
+						mQueue[0]))) {
+			vertex = mMinima.get(mMinimaProcessed++);
+		} else if (mQueueSize != 0) {
+			vertex = removeFirstQueuedVertex();
+		} else {
+			return -1;
+		}
+		queueIfReady(vertex, mSource.nextVertex(vertex), true);
+		queueIfReady(vertex, mSource.prevVertex(vertex), false);
+		return vertex;
 	}
 
-	private void moveSweepLineTo(float y) {
-		mSweepLinePosition = y;
-		mSweepLineVisible = true;
+	/**
+	 * Add a neighbor of the vertex being processed to the event queue, if it
+	 * follows that vertex, and its other neighbor doesn't follow it or has
+	 * already been processed
+	 */
+	private void queueIfReady(int vertex, int neighbor, boolean forward) {
+		if (!precedes(vertex, neighbor))
+			return;
+		int other = forward ? mSource.nextVertex(neighbor) : mSource
+				.prevVertex(neighbor);
+		if (other != vertex && precedes(other, neighbor)
+				&& !precedes(other, vertex))
+			return;
+		queueVertex(neighbor);
 	}
 
-	private Edge polygonEdgeLeavingVertex(Vertex vertex) {
-		Edge edge = vertex.edges();
-		while (true) {
-			if (edge.isPolygon())
-				return edge;
-			edge = edge.nextEdge();
-			if (edge == vertex.edges())
-				throw new IllegalStateException();
+	/**
+	 * Add a vertex to the event queue, a binary heap ordered by sweep position
+	 */
+	private void queueVertex(int vertex) {
+		if (mQueueSize == mQueue.length)
+			mQueue = Arrays.copyOf(mQueue, mQueueSize * 2);
+		int i = mQueueSize++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!precedes(vertex, mQueue[parent]))
+				break;
+			mQueue[i] = mQueue[parent];
+			i = parent;
 		}
+		mQueue[i] = vertex;
 	}
 
-	private void polygonEdgesThroughVertex(Vertex vertex, Edge output[]) {
-		Edge edge = polygonEdgeLeavingVertex(vertex);
-		output[1] = edge;
-		Edge edgeB = edge.nextEdge().dual();
-		if (edgeB.destVertex() != vertex)
-			throw new IllegalStateException();
-		output[0] = edgeB;
+	private int removeFirstQueuedVertex() {
+		int first = mQueue[0];
+		int vertex = mQueue[--mQueueSize];
+		int i = 0;
+		while (true) {
+			int child = i * 2 + 1;
+			if (child >= mQueueSize)
+				break;
+			if (child + 1 < mQueueSize
+					&& precedes(mQueue[child + 1], mQueue[child]))
+				child++;
+			if (!precedes(mQueue[child], vertex))
+				break;
+			mQueue[i] = mQueue[child];
+			i = child;
+		}
+		mQueue[i] = vertex;
+		return first;
 	}
 
-	private int vertexType(Vertex v, Edge incoming, Edge outgoing) {
-		Point ipt = incoming.dual().destVertex();
-		Point opt = outgoing.destVertex();
-
-		int type;
-		if (opt.y > v.y) {
-			if (ipt.y > v.y) {
-				if (pseudoAngleIsConvex(outgoing.angle(), incoming.dual()
-						.angle())) {
-					type = VTYPE_START;
-				} else {
-					type = VTYPE_SPLIT;
+	/**
+	 * Sort vertices into sweep order; a quicksort, which (unlike
+	 * Arrays.sort() with a Comparator) doesn't require boxing the indices
+	 */
+	private void sortVertices(int[] vertices, int low, int high) {
+		while (high - low > INSERTION_SORT_THRESHOLD) {
+			int pivot = medianOfThree(vertices[low],
+					vertices[(low + high) >>> 1], vertices[high - 1]);
+			int i = low;
+			int j = high - 1;
+			while (i <= j) {
+				while (precedes(vertices[i], pivot))
+					i++;
+				while (precedes(pivot, vertices[j]))
+					j--;
+				if (i <= j) {
+					int tmp = vertices[i];
+					vertices[i] = vertices[j];
+					vertices[j] = tmp;
+					i++;
+					j--;
 				}
-			} else {
-				type = VTYPE_REGULAR_UP;
 			}
-		} else {
-			if (ipt.y < v.y) {
-				if (pseudoAngleIsConvex(outgoing.angle(), incoming.dual()
-						.angle())) {
-					type = VTYPE_END;
-				} else {
-					type = VTYPE_MERGE;
-				}
+			// Recurse on the smaller partition, to limit the stack depth
+			if (j + 1 - low < high - i) {
+				sortVertices(vertices, low, j + 1);
+				low = i;
 			} else {
-				type = VTYPE_REGULAR_DOWN;
+				sortVertices(vertices, i, high);
+				high = j + 1;
 			}
 		}
-		return type;
+		for (int i = low + 1; i < high; i++) {
+			int v = vertices[i];
+			int j = i;
+			while (j > low && precedes(v, vertices[j - 1])) {
+				vertices[j] = vertices[j - 1];
+				j--;
+			}
+			vertices[j] = v;
+		}
 	}
 
-	/**
-	 * Replace helper, and possibly add edge if old helper was a MERGE
-	 */
-	private Edge replaceHelperForEdge(SweepEdge sweepEdge, Vertex newHelper) {
-		Vertex prevHelper = sweepEdge.helper();
-		if (s.step())
-			s.show("Replace edge helper", s.highlighted(prevHelper),
-					s.highlighted(newHelper), highlighted(sweepEdge));
-
-		Edge newEdge = null;
-		if ((prevHelper.flags() & VERTEXFLAG_MERGE) != 0) {
-			newEdge = addEdge(newHelper, prevHelper);
-			ASSERT(newEdge.angle() < 0);
+	private int medianOfThree(int a, int b, int c) {
+		if (precedes(a, b)) {
+			if (precedes(b, c))
+				return b;
+			return precedes(a, c) ? c : a;
+		}
+		if (precedes(a, c))
+			return a;
+		return precedes(b, c) ? c : b;
+	}
 
-			// Test if we've formed a new 'end' vertex to either side of the new
-			// (downward-facing) edge;
-			// if so, triangulate the monotone face that ends at that vertex.
+	private void createSweepStatus() {
+		mStatus = new Region[16];
+		mStatusSize = 0;
+		mSweepLineVisible = false;
 
-			Edge auxEdge = newEdge.nextEdge();
-			if (auxEdge.angle() > newEdge.angle() && auxEdge.angle() < 0) {
-				triangulateMonotoneFace(auxEdge.dual());
+		if (!s.isActive())
+			return;
+		s.addLayer(BGND_ELEMENT_SWEEPSTATUS, new Renderable() {
+			@Override
+			public void render(AlgorithmStepper s) {
+				if (!mSweepLineVisible)
+					return;
+				s.setColor(RenderTools.COLOR_DARKGREEN);
+				Rect r = s.algorithmRect();
+				float horizExtent = r.width * .25f;
+				s.renderLine(new Point(-horizExtent, mSweepLinePosition),
+						new Point(r.width + horizExtent, mSweepLinePosition));
+				s.setLineWidth(2);
+				for (int i = 0; i < mStatusSize; i++) {
+					Region region = mStatus[i];
+					s.render(Segment.directed(point(region.mLeftStart),
+							point(region.mLeftEnd)));
+					s.render(Segment.directed(point(region.mRightStart),
+							point(region.mRightEnd)));
+				}
 			}
+		});
+	}
 
-			auxEdge = newEdge.prevEdge();
-			if (auxEdge.angle() < newEdge.angle()) {
-				triangulateMonotoneFace(newEdge.dual());
-			}
-		}
-		sweepEdge.setHelper(newHelper);
-		return newEdge;
+	private void moveSweepLineTo(float y) {
+		mSweepLinePosition = y;
+		mSweepLineVisible = true;
 	}
 
-	private SweepEdge findExistingEdge(Edge polygonEdge) {
-		SweepEdge sentinel = SweepEdge.edge(polygonEdge, null);
-		TreeSet<SweepEdge> tail = (TreeSet<SweepEdge>) mSweepStatus.tailSet(
-				sentinel, true);
-		SweepEdge found = tail.first();
-		ASSERT(found.polygonEdge() == polygonEdge);
-		ASSERT(found.helper() != null);
-		return found;
+	private int vertexType(int v, int prev, int next) {
+		boolean prevPrecedes = precedes(prev, v);
+		boolean nextPrecedes = precedes(next, v);
+		if (prevPrecedes != nextPrecedes)
+			return prevPrecedes ? VTYPE_REGULAR_DOWN : VTYPE_REGULAR_UP;
+		boolean convex = orientation(prev, v, next) > 0;
+		if (!prevPrecedes)
+			return convex ? VTYPE_START : VTYPE_SPLIT;
+		return convex ? VTYPE_END : VTYPE_MERGE;
 	}
 
-	private SweepEdge findEdgeFollowing(Edge polygonEdge) {
-		SweepEdge sentinel = SweepEdge.edge(polygonEdge, null);
-		TreeSet<SweepEdge> tail = (TreeSet<SweepEdge>) mSweepStatus.tailSet(
-				sentinel, false);
+	private void processVertexEvent(int v) {
+		if (s.step())
+			s.show("Process vertex event", s.highlighted(point(v)));
+		moveSweepLineTo(mSource.y(v));
 
-		SweepEdge found = tail.first();
+		int prev = mSource.prevVertex(v);
+		int next = mSource.nextVertex(v);
 
-		ASSERT(found.helper() != null);
-		return found;
-	}
+		// The interior lies to the left of each (CCW or CW) ring's edges; so
+		// downward edges bound regions on the left, and upward edges bound
+		// them on the right
 
-	private void processVertexEvent(Vertex vertex) {
-		if (s.step())
-			s.show("Process vertex event", s.highlighted(vertex));
-
-		moveSweepLineTo(vertex.y);
-		Edge edges[] = new Edge[2];
-		polygonEdgesThroughVertex(vertex, edges);
-		Edge incoming = edges[0];
-		Edge outgoing = edges[1];
-		int vType = vertexType(vertex, incoming, outgoing);
-		Edge newEdge = null;
-		Edge delEdge = null;
-
-		switch (vType) {
+		switch (vertexType(v, prev, next)) {
 		default:
-			ASSERT(vType == VTYPE_START);
-			newEdge = outgoing;
+			processStartVertex(v, prev, next);
 			break;
 
-		case VTYPE_REGULAR_UP:
-			newEdge = outgoing;
-			delEdge = incoming;
+		case VTYPE_REGULAR_DOWN: {
+			Region r = mStatus[findLeftEdgeEndingAt(v)];
+			if (r.mMergeChain != null) {
+				r.mChain.finish(v);
+				r.mChain = r.mMergeChain;
+				r.mMergeChain = null;
+			}
+			r.mChain.add(v, SIDE_LEFT);
+			r.mLeftStart = v;
+			r.mLeftEnd = next;
+		}
 			break;
 
-		case VTYPE_END:
-			delEdge = incoming;
-			triangulateMonotoneFace(delEdge);
+		case VTYPE_REGULAR_UP: {
+			Region r = mStatus[findRightEdgeEndingAt(v)];
+			if (r.mMergeChain != null) {
+				r.mMergeChain.finish(v);
+				r.mMergeChain = null;
+			}
+			r.mChain.add(v, SIDE_RIGHT);
+			r.mRightStart = v;
+			r.mRightEnd = prev;
+		}
 			break;
 
-		case VTYPE_REGULAR_DOWN: {
-			SweepEdge se = findEdgeFollowing(outgoing);
-			replaceHelperForEdge(se, vertex);
-		}
+		case VTYPE_END:
+			processEndVertex(v);
 			break;
 
-		case VTYPE_MERGE: {
-			vertex.addFlags(VERTEXFLAG_MERGE);
-			SweepEdge se = findEdgeFollowing(incoming);
-			replaceHelperForEdge(se, vertex);
-			delEdge = incoming;
-		}
+		case VTYPE_SPLIT:
+			processSplitVertex(v, prev, next);
 			break;
 
-		case VTYPE_SPLIT: {
-			SweepEdge se = findEdgeFollowing(outgoing);
-			Vertex oldHelper = se.helper();
-			Edge mergeEdge = replaceHelperForEdge(se, vertex);
-			if (mergeEdge == null) {
-				addEdge(vertex, oldHelper);
-			}
-			newEdge = outgoing;
-		}
+		case VTYPE_MERGE:
+			processMergeVertex(v);
 			break;
 		}
+	}
 
-		if (delEdge != null) {
-			SweepEdge se = findExistingEdge(delEdge);
-			replaceHelperForEdge(se, vertex);
-			if (s.step())
-				s.show("Removing status edge", highlighted(se));
-			boolean existed = mSweepStatus.remove(se);
-			if (!existed) {
-				GeometryException.raise("could not find item in sweep status");
+	private void processStartVertex(int v, int prev, int next) {
+		Region r = new Region();
+		r.mLeftStart = v;
+		r.mLeftEnd = next;
+		r.mRightStart = v;
+		r.mRightEnd = prev;
+		r.mChain = new Chain(v);
+		insertRegion(leftEdgesLowerBound(v), r);
+	}
+
+	private void processSplitVertex(int v, int prev, int next) {
+		int position = leftEdgesLowerBound(v) - 1;
+		if (position < 0
+				|| orientation(mStatus[position].mRightStart,
+						mStatus[position].mRightEnd, v) >= 0)
+			GeometryException.raise("split vertex isn't within sweep status");
+		Region r = mStatus[position];
+
+		// Add a diagonal from the vertex to the region's most recently
+		// processed vertex (its helper), dividing its chain between the two
+		// new regions
+		Chain leftChain = r.mChain;
+		Chain rightChain = r.mMergeChain;
+		if (rightChain == null) {
+			Chain helper = new Chain(r.mChain.last());
+			if (r.mChain.mSide == SIDE_LEFT) {
+				leftChain = helper;
+				rightChain = r.mChain;
+			} else {
+				rightChain = helper;
 			}
 		}
+		leftChain.add(v, SIDE_RIGHT);
+		rightChain.add(v, SIDE_LEFT);
+
+		Region right = new Region();
+		right.mLeftStart = v;
+		right.mLeftEnd = next;
+		right.mRightStart = r.mRightStart;
+		right.mRightEnd = r.mRightEnd;
+		right.mChain = rightChain;
+
+		r.mRightStart = v;
+		r.mRightEnd = prev;
+		r.mChain = leftChain;
+		r.mMergeChain = null;
+		insertRegion(position + 1, right);
+	}
 
-		if (newEdge != null) {
-			SweepEdge se = SweepEdge.edge(newEdge, vertex);
-			if (s.step())
-				s.show("Adding status edge", highlighted(se));
-			mSweepStatus.add(se);
-		}
+	private void processEndVertex(int v) {
+		int position = findLeftEdgeEndingAt(v);
+		Region r = mStatus[position];
+		if (r.mRightEnd != v)
+			GeometryException.raise("end vertex doesn't close region");
+		r.mChain.finish(v);
+		if (r.mMergeChain != null)
+			r.mMergeChain.finish(v);
+		removeRegion(position);
 	}
 
-	private void buildVertexList(Edge edgePointingToHighestVertex) {
-		mVertexList.clear();
-		Vertex startVertex = edgePointingToHighestVertex.destVertex();
+	private void processMergeVertex(int v) {
+		int position = findLeftEdgeEndingAt(v);
+		if (position == 0 || mStatus[position - 1].mRightEnd != v)
+			GeometryException.raise("merge vertex doesn't join regions");
+		Region left = mStatus[position - 1];
+		Region right = mStatus[position];
+
+		// The vertex lies on the right boundary of the left region, and the
+		// left boundary of the right one; it's the helper of the merged
+		// region, which keeps a chain for each side of it
+		if (left.mMergeChain != null)
+			left.mMergeChain.finish(v);
+		left.mChain.add(v, SIDE_RIGHT);
+
+		Chain rightChain = right.mChain;
+		if (right.mMergeChain != null) {
+			rightChain.finish(v);
+			rightChain = right.mMergeChain;
+		}
+		rightChain.add(v, SIDE_LEFT);
 
-		Edge eRight = edgePointingToHighestVertex.dual();
-		Edge eLeft = eRight.prevEdge();
+		left.mMergeChain = rightChain;
+		left.mRightStart = right.mRightStart;
+		left.mRightEnd = right.mRightEnd;
+		removeRegion(position);
+	}
 
-		startVertex.clearFlags(VERTEXFLAG_LEFTSIDE);
-		if (eLeft.destVertex().y > eRight.destVertex().y) {
-			startVertex.addFlags(VERTEXFLAG_LEFTSIDE);
+	/**
+	 * Find the position of the first region whose left edge does not lie to
+	 * the left of a vertex
+	 */
+	private int leftEdgesLowerBound(int v) {
+		int low = 0;
+		int high = mStatusSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			Region r = mStatus[mid];
+			if (orientation(r.mLeftStart, r.mLeftEnd, v) > 0)
+				low = mid + 1;
+			else
+				high = mid;
 		}
-		mVertexList.add(startVertex);
+		return low;
+	}
 
-		while (true) {
-			Vertex nextLeft = eLeft.destVertex();
-			Vertex nextRight = eRight.destVertex();
-			if (nextLeft.y > nextRight.y) {
-				nextLeft.addFlags(VERTEXFLAG_LEFTSIDE);
-				mVertexList.add(nextLeft);
-				eLeft = eLeft.dual().prevEdge();
-			} else {
-				nextRight.clearFlags(VERTEXFLAG_LEFTSIDE);
-				mVertexList.add(nextRight);
-				eRight = eRight.dual().nextEdge();
-			}
-			if (nextLeft == nextRight) {
-				break;
-			}
-		}
+	private int findLeftEdgeEndingAt(int v) {
+		int position = leftEdgesLowerBound(v);
+		if (position == mStatusSize || mStatus[position].mLeftEnd != v)
+			GeometryException.raise("could not find item in sweep status");
+		return position;
 	}
 
-	private void triangulateMonotoneFace(final Edge edgePointingToHighestVertex) {
-		// have stepper display the face while triangulating it
-		s.addLayer(BGND_ELEMENT_MONOTONE_FACE, new Renderable() {
-			public void render(AlgorithmStepper s) {
-				// Construct CCW-ordered polygon from monotone face's vertices
-				buildVertexList(edgePointingToHighestVertex);
-				Polygon facePolygon = new Polygon();
-				Deque<Point> points = new ArrayDeque();
-				for (Vertex vertex : mVertexList) {
-					if (vertex.hasFlags(VERTEXFLAG_LEFTSIDE))
-						points.addLast(vertex);
-					else
-						points.addFirst(vertex);
-				}
-				while (!points.isEmpty())
-					facePolygon.add(points.removeFirst());
-				s.setColor(Color.argb(0x60, 0x80, 0xff, 0x80));
-				s.render(facePolygon.renderable(true));
-			}
-		});
+	private int findRightEdgeEndingAt(int v) {
+		int low = 0;
+		int high = mStatusSize;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			Region r = mStatus[mid];
+			if (orientation(r.mRightStart, r.mRightEnd, v) > 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		if (low == mStatusSize || mStatus[low].mRightEnd != v)
+			GeometryException.raise("could not find item in sweep status");
+		return low;
+	}
 
-		// call an auxilliary function to do the actual triangulation
-		s.pushActive(DETAIL_TRIANGULATE_MONOTONE_FACE);
-		triangulateMonotoneFaceAux(edgePointingToHighestVertex);
-		s.popActive();
+	private void insertRegion(int position, Region region) {
+		if (mStatusSize == mStatus.length)
+			mStatus = Arrays.copyOf(mStatus, mStatusSize * 2);
+		System.arraycopy(mStatus, position, mStatus, position + 1,
+				mStatusSize - position);
+		mStatus[position] = region;
+		mStatusSize++;
+	}
 
-		if (s.isActive())
-			s.removeLayer(BGND_ELEMENT_MONOTONE_FACE);
+	private void removeRegion(int position) {
+		mStatusSize--;
+		System.arraycopy(mStatus, position + 1, mStatus, position,
+				mStatusSize - position);
+		mStatus[mStatusSize] = null;
 	}
 
-	// See:
-	// http://www.personal.kent.edu/~rmuhamma/Compgeometry/MyCG/PolyPart/polyPartition.htm
-	//
-	private void triangulateMonotoneFaceAux(Edge edgePointingToHighestVertex) {
-		if (s.bigStep())
-			s.show("Triangulate monotone face",
-					s.highlighted(edgePointingToHighestVertex));
-		if (edgePointingToHighestVertex.visited()) {
-			if (s.step())
-				s.show("Edge already visited");
-			return;
+	private void emit(int a, int b, int c) {
+		if (s.isActive()) {
+			s.pushActive(DETAIL_TRIANGULATE_MONOTONE_FACE);
+			if (s.step()) {
+				Polygon triangle = new Polygon();
+				triangle.add(point(a));
+				triangle.add(point(b));
+				triangle.add(point(c));
+				s.show("Adding triangle", s.highlighted(triangle));
+			}
+			s.popActive();
 		}
-		edgePointingToHighestVertex.setVisited(true);
+		mSink.addTriangle(a, b, c);
+	}
+
+	/**
+	 * An interval of the sweep line lying within the region being
+	 * triangulated, between a left and a right polygon edge. Each edge is
+	 * stored as its endpoints in sweep order
+	 */
+	private static class Region {
+		int mLeftStart;
+		int mLeftEnd;
+		int mRightStart;
+		int mRightEnd;
+		// Vertices not yet triangulated; if there is a merge chain, these are
+		// the ones to the left of the merge vertex
+		Chain mChain;
+		// If not null, the vertices to the right of the merge vertex
+		Chain mMergeChain;
+	}
+
+	/**
+	 * The vertices of a region that can't yet be triangulated, in sweep
+	 * order. All but the first lie on the same side of the region, and form a
+	 * reflex chain; see
+	 * http://www.personal.kent.edu/~rmuhamma/Compgeometry/MyCG/PolyPart/polyPartition.htm
+	 */
+	private class Chain {
 
-		buildVertexList(edgePointingToHighestVertex);
+		public Chain(int vertex) {
+			mVertices = new int[8];
+			mVertices[0] = vertex;
+			mSize = 1;
+		}
 
-		boolean queueIsLeft;
-		int vIndex = 0;
-		{
-			mMonotoneQueue.clear();
-			Vertex v = mVertexList.get(vIndex++);
-			queueIsLeft = (v.flags() & VERTEXFLAG_LEFTSIDE) != 0;
+		public int last() {
+			return mVertices[mSize - 1];
+		}
 
-			mMonotoneQueue.addLast(v);
-			Vertex v2 = mVertexList.get(vIndex++);
-			if (s.step())
-				s.show("Queuing vertex", s.highlighted(v2));
-			mMonotoneQueue.addLast(v2);
-		}
-
-		// We don't want to add edges that already exist. The last edge
-		// added (if we follow the pseudocode) actually already exists in
-		// the mesh; so use a counter to determine when we're done.
-
-		int edgesRemaining = mVertexList.size() - 3;
-
-		while (edgesRemaining != 0) {
-			ASSERT(vIndex < mVertexList.size());
-			Vertex vertex = mVertexList.get(vIndex++);
-
-			if (queueIsLeft != ((vertex.flags() & VERTEXFLAG_LEFTSIDE) != 0)) {
-				while (edgesRemaining != 0 && mMonotoneQueue.size() > 1) {
-					// Skip the first queued vertex
-					Vertex v1 = mMonotoneQueue.removeFirst();
-					if (s.step())
-						s.show("Skipping first queued vertex",
-								s.highlighted(v1));
-					Vertex v2 = mMonotoneQueue.getFirst();
-					addEdge(v2, vertex);
-					edgesRemaining--;
-				}
-				if (s.step())
-					s.show("Queuing vertex", s.highlighted(vertex));
-				mMonotoneQueue.addLast(vertex);
-				queueIsLeft ^= true;
-			} else {
-				while (edgesRemaining != 0 && mMonotoneQueue.size() > 1) {
-					// Peek at the last two vertices in the queue (..v2,v1]) by
-					// temporarily removing v1
-					Vertex v1 = mMonotoneQueue.removeLast();
-					Vertex v2 = mMonotoneQueue.getLast();
-					mMonotoneQueue.addLast(v1);
-					float distance = pointUnitLineSignedDistance(vertex, v1, v2);
-					boolean isConvex = ((distance > 0) ^ queueIsLeft);
-					if (s.step())
-						s.show("Test for convex angle", s.highlighted(v1),
-								s.highlighted(v2));
-
-					if (!isConvex)
+		/**
+		 * Add the next vertex of the region, emitting any triangles that it
+		 * completes
+		 */
+		public void add(int v, int side) {
+			if (mSize == 1) {
+				push(v);
+				mSide = side;
+				return;
+			}
+			if (side != mSide) {
+				// Connect the vertex to every vertex in the chain
+				emitFan(v);
+				int last = last();
+				mSize = 0;
+				push(last);
+				push(v);
+				mSide = side;
+				return;
+			}
+			while (mSize >= 2) {
+				int a = mVertices[mSize - 1];
+				int b = mVertices[mSize - 2];
+				double orientation = orientation(b, a, v);
+				if (side == SIDE_LEFT) {
+					if (orientation <= 0)
 						break;
-					addEdge(v2, vertex);
-					edgesRemaining--;
-					mMonotoneQueue.removeLast();
+					emit(b, a, v);
+				} else {
+					if (orientation >= 0)
+						break;
+					emit(b, v, a);
 				}
-				if (s.step())
-					s.show("Queuing vertex", s.highlighted(vertex));
-				mMonotoneQueue.addLast(vertex);
+				mSize--;
 			}
+			push(v);
 		}
-	}
 
-	private Edge addEdge(Vertex v1, Vertex v2) {
-		if (s.step())
-			s.show("Adding mesh edge", s.highlightedLine(v1, v2));
-		return mMesh.addEdge(v1, v2);
-	}
-
-	// Convenience methods for displaying algorithm objects
+		/**
+		 * Add the region's last vertex, which completes its triangulation
+		 */
+		public void finish(int v) {
+			emitFan(v);
+			mSize = 0;
+		}
 
-	private Renderable highlighted(SweepEdge edge) {
-		return s.highlighted(edge.polygonEdge());
-	}
+		private void emitFan(int v) {
+			for (int i = 0; i < mSize - 1; i++) {
+				if (mSide == SIDE_LEFT)
+					emit(mVertices[i], mVertices[i + 1], v);
+				else
+					emit(mVertices[i], v, mVertices[i + 1]);
+			}
+		}
 
-	private static class SweepEdge {
+		private void push(int v) {
+			if (mSize == mVertices.length)
+				mVertices = Arrays.copyOf(mVertices, mSize * 2);
+			mVertices[mSize++] = v;
+		}
 
-		public Edge mPolygonEdge;
-		public Vertex mHelper;
+		private int[] mVertices;
+		private int mSize;
+		private int mSide = SIDE_NONE;
+	}
 
-		public Edge polygonEdge() {
-			return mPolygonEdge;
+	/**
+	 * The rings embedded in the mesh, as a vertex source; adds the edges of
+	 * each triangle that aren't already in the mesh
+	 */
+	private class EmbeddedRings implements VertexSource, TriangleSink {
+
+		public EmbeddedRings() {
+			// The rings' vertices are consecutive within the mesh
+			mBase = mMesh.numVertices();
+			mRingStarts = new int[mRings.size() + 1];
+			for (int i = 0; i < mRings.size(); i++)
+				mRingStarts[i] = mRings.get(i).embed(mMesh) - mBase;
+			mRingStarts[mRings.size()] = mMesh.numVertices() - mBase;
 		}
 
-		public static SweepEdge edge(Edge polygonEdge, Vertex helper) {
-			SweepEdge s = new SweepEdge();
-			s.mPolygonEdge = polygonEdge;
-			s.mHelper = helper;
-			return s;
+		@Override
+		public int numVertices() {
+			return mRingStarts[mRingStarts.length - 1];
 		}
 
 		@Override
-		public String toString() {
-			StringBuilder sb = new StringBuilder("SweepEdge(polygonEdge ");
-			sb.append(mPolygonEdge);
-			sb.append(" helper ");
-			sb.append(nameOf(mHelper));
-			return sb.toString();
+		public float x(int vertex) {
+			return mMesh.vertex(mBase + vertex).x;
 		}
 
-		/**
-		 * Calculate intersection point of edge with horizontal sweep line
-		 * 
-		 * @param sweepLinePosition
-		 * @param context
-		 * @param clampWithinRange
-		 *            if true, clamps sweep line to lie within edge's vertical
-		 *            range
-		 * @return intersection point
-		 */
-		public Point positionOnSweepLine(float sweepLinePosition, Mesh context,
-				boolean clampWithinRange) {
-			Edge edge = mPolygonEdge;
-
-			Point v1 = edge.sourceVertex();
-			Point v2 = edge.destVertex();
+		@Override
+		public float y(int vertex) {
+			return mMesh.vertex(mBase + vertex).y;
+		}
 
-			if (clampWithinRange) {
-				float y0 = Math.min(v1.y, v2.y);
-				float y1 = Math.max(v1.y, v2.y);
-				sweepLinePosition = MyMath.clamp(sweepLinePosition, y0, y1);
-			}
+		@Override
+		public int nextVertex(int vertex) {
+			int ring = ringContaining(vertex);
+			if (vertex + 1 == mRingStarts[ring + 1])
+				return mRingStarts[ring];
+			return vertex + 1;
+		}
 
-			Point ipt = MyMath.segHorzLineIntersection(v1, v2,
-					sweepLinePosition, null);
+		@Override
+		public int prevVertex(int vertex) {
+			int ring = ringContaining(vertex);
+			if (vertex == mRingStarts[ring])
+				return mRingStarts[ring + 1] - 1;
+			return vertex - 1;
+		}
 
-			if (ipt == null) {
-				GeometryException.raise("Sweep " + d(sweepLinePosition)
-						+ " doesn't intersect edge " + edge);
-			}
-			return ipt;
+		private int ringContaining(int vertex) {
+			if (mRingStarts.length == 2)
+				return 0;
+			int ring = Arrays.binarySearch(mRingStarts, vertex);
+			return (ring >= 0) ? ring : -ring - 2;
 		}
 
-		public Vertex helper() {
-			return mHelper;
+		@Override
+		public void addTriangle(int a, int b, int c) {
+			addEdge(mMesh.vertex(mBase + a), mMesh.vertex(mBase + b));
+			addEdge(mMesh.vertex(mBase + b), mMesh.vertex(mBase + c));
+			addEdge(mMesh.vertex(mBase + c), mMesh.vertex(mBase + a));
 		}
 
-		public void setHelper(Vertex h) {
-			mHelper = h;
+		private void addEdge(Vertex v1, Vertex v2) {
+			if (mMesh.edgeExistsBetween(v1, v2) != null)
+				return;
+			if (s.step())
+				s.show("Adding mesh edge", s.highlightedLine(v1, v2));
+			mMesh.addEdge(v1, v2);
 		}
+
+		private int mBase;
+		// Index of each ring's first vertex, followed by the total number of
+		// vertices
+		private int[] mRingStarts;
 	}
 
 	private AlgorithmStepper s;
 	private Mesh mMesh;
-	private Polygon mPolygon;
-	private ArrayList<Vertex> mVertexEvents;
-	private TreeSet<SweepEdge> mSweepStatus;
+	private List<Polygon> mRings;
+	private VertexSource mSource;
+	private TriangleSink mSink;
+	// Start and split vertices, in sweep order
+	private IntArray mMinima;
+	private int mMinimaProcessed;
+	// Vertices whose predecessors along the rings have been processed
+	private int[] mQueue;
+	private int mQueueSize;
+	// Regions intersecting the sweep line, sorted by x coordinate
+	private Region[] mStatus;
+	private int mStatusSize;
 	private boolean mSweepLineVisible;
 	private float mSweepLinePosition;
-	private Deque<Vertex> mMonotoneQueue;
-	private ArrayList<Vertex> mVertexList;
-	private int mPolygonMeshBase;
 }
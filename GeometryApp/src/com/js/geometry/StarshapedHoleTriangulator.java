@@ -1,15 +1,10 @@
-package com.js.delaunay;
+package com.js.geometry;
 
 import java.util.ArrayList;
 
-import com.js.geometry.AlgorithmStepper;
-import com.js.geometry.Edge;
 import com.js.basic.GeometryException;
-import com.js.geometry.Mesh;
-import com.js.basic.MyMath;
 import com.js.basic.Point;
-import com.js.geometry.Renderable;
-import com.js.geometry.Vertex;
+import com.js.basic.Predicates;
 import com.js.geometryapp.RenderTools;
 
 import static com.js.basic.Tools.*;
@@ -95,7 +90,8 @@ public class StarshapedHoleTriangulator {
 			if (s.step())
 				s.show("Current edge", s.highlighted(mStartEdge));
 
-			if (MyMath.sideOfLine(v0, v1, v2) < 0) {
+			// A vertex collinear with its neighbors can't be clipped either
+			if (Predicates.orient2d(v0, v1, v2) <= 0) {
 				if (s.step())
 					s.show("Vertex is reflex", s.highlighted(mStartEdge),
 							s.highlighted(advanceEdge), s.highlighted(v1));
@@ -103,7 +99,7 @@ public class StarshapedHoleTriangulator {
 				continue;
 			}
 
-			if (MyMath.sideOfLine(v0, v2, mKernelPoint) < 0) {
+			if (Predicates.orient2d(v0, v2, mKernelPoint) < 0) {
 				if (s.step())
 					s.show("Kernel to right of candidate"
 							+ s.highlightedLine(v0, v2));
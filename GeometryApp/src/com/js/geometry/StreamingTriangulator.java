@@ -0,0 +1,100 @@
+package com.js.geometry;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+import com.js.basic.GeometryException;
+
+/**
+ * Triangulates a CCW polygon stored as a PackedPolygon, writing the triangles
+ * to a channel as they are produced; for polygons too large to triangulate
+ * within a Mesh.
+ *
+ * This runs PolygonTriangulator's sweep with the polygon as its vertex
+ * source, so apart from the polygon's start and split vertices, memory use is
+ * proportional to the width of the sweep status rather than to the size of
+ * the polygon.
+ *
+ * Triangles are written as triples of vertex indices, in CCW order, each a
+ * little-endian int
+ */
+public final class StreamingTriangulator implements
+		PolygonTriangulator.TriangleSink {
+
+	private static final int BYTES_PER_TRIANGLE = 3 * Integer.SIZE / Byte.SIZE;
+	private static final int OUTPUT_BUFFER_TRIANGLES = 4096;
+
+	/**
+	 * Triangulate a polygon
+	 *
+	 * @param polygon
+	 *            CCW polygon
+	 * @param output
+	 *            channel to write the triangles to
+	 * @return the number of triangles written
+	 */
+	public static long triangulate(PackedPolygon polygon,
+			WritableByteChannel output) throws IOException {
+		if (polygon.numVertices() < 3)
+			GeometryException.raise("Polygon has too few vertices");
+		if (polygon.signedArea() <= 0)
+			GeometryException.raise("Polygon isn't CCW");
+
+		StreamingTriangulator t = new StreamingTriangulator(output);
+		try {
+			PolygonTriangulator.triangulate(polygon, t);
+		} catch (OutputException e) {
+			throw e.mCause;
+		}
+		t.flush();
+		return t.mTriangleCount;
+	}
+
+	private StreamingTriangulator(WritableByteChannel output) {
+		mOutput = output;
+		mOutputBuffer = ByteBuffer.allocateDirect(
+				OUTPUT_BUFFER_TRIANGLES * BYTES_PER_TRIANGLE).order(
+				ByteOrder.LITTLE_ENDIAN);
+	}
+
+	@Override
+	public void addTriangle(int a, int b, int c) {
+		if (mOutputBuffer.remaining() < BYTES_PER_TRIANGLE) {
+			try {
+				flush();
+			} catch (IOException e) {
+				throw new OutputException(e);
+			}
+		}
+		mOutputBuffer.putInt(a);
+		mOutputBuffer.putInt(b);
+		mOutputBuffer.putInt(c);
+		mTriangleCount++;
+	}
+
+	private void flush() throws IOException {
+		mOutputBuffer.flip();
+		while (mOutputBuffer.hasRemaining())
+			mOutput.write(mOutputBuffer);
+		mOutputBuffer.clear();
+	}
+
+	/**
+	 * Carries an IOException out of the sweep, whose sink can't throw checked
+	 * exceptions
+	 */
+	private static class OutputException extends RuntimeException {
+		public OutputException(IOException cause) {
+			super(cause);
+			mCause = cause;
+		}
+
+		private final IOException mCause;
+	}
+
+	private WritableByteChannel mOutput;
+	private ByteBuffer mOutputBuffer;
+	private long mTriangleCount;
+}
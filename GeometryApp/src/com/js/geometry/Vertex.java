@@ -7,11 +7,27 @@ import com.js.basic.Point;
 public final class Vertex extends Point {
 	public static final int FLAG_VISITED = 1 << 31;
 
+	// Vertices with more than this many edges maintain an AngularIndex
+	static final int ANGULAR_INDEX_MIN_DEGREE = 32;
+
 	public Vertex(int index, Point location) {
 		super(location);
 		mIndex = index;
 	}
 
+	/**
+	 * Restore this vertex to a newly constructed state, so it can be reused
+	 */
+	void reset(int index, Point location) {
+		setTo(location);
+		mIndex = index;
+		mEdges = null;
+		mFlags = 0;
+		mMarkEpoch = 0;
+		mDegree = 0;
+		mAngularIndex = null;
+	}
+
 	void setIndex(int index) {
 		mIndex = index;
 	}
@@ -20,6 +36,18 @@ public final class Vertex extends Point {
 		return mIndex;
 	}
 
+	void setId(int id) {
+		mId = id;
+	}
+
+	/**
+	 * Get this vertex's id, which (unlike its index) doesn't change as other
+	 * vertices are deleted from the mesh
+	 */
+	int id() {
+		return mId;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder("v ");
@@ -59,6 +87,20 @@ public final class Vertex extends Point {
 		mEdges = edge;
 	}
 
+	/**
+	 * Set the first of a ring of edges that has been constructed externally
+	 * 
+	 * @param degree
+	 *            number of edges in the ring
+	 */
+	void setEdges(Edge edge, int degree) {
+		mEdges = edge;
+		mDegree = degree;
+		mAngularIndex = null;
+		if (degree > ANGULAR_INDEX_MIN_DEGREE)
+			mAngularIndex = new AngularIndex(this, degree);
+	}
+
 	public int flags() {
 		return mFlags;
 	}
@@ -74,10 +116,57 @@ public final class Vertex extends Point {
 		return (mFlags & flags) == flags;
 	}
 
+	/**
+	 * Get the epoch in which this vertex was last marked (see Mesh.mark())
+	 */
+	int markEpoch() {
+		return mMarkEpoch;
+	}
+
+	void setMarkEpoch(int epoch) {
+		mMarkEpoch = epoch;
+	}
+
+	/**
+	 * Get the number of edges leaving this vertex
+	 */
+	public int degree() {
+		return mDegree;
+	}
+
+	/**
+	 * Get the index of this vertex's edges by angle, or null if its degree is
+	 * too low to warrant one
+	 */
+	AngularIndex angularIndex() {
+		return mAngularIndex;
+	}
+
+	/**
+	 * Update the degree (and angular index) after a half edge has been
+	 * inserted into this vertex's ring
+	 */
+	void edgeAdded(Edge edge) {
+		mDegree++;
+		if (mAngularIndex != null)
+			mAngularIndex.add(edge);
+		else if (mDegree > ANGULAR_INDEX_MIN_DEGREE)
+			mAngularIndex = new AngularIndex(this, mDegree);
+	}
+
 	/**
 	 * Remove a half edge leaving this source vertex; ignores its dual
 	 */
 	void removeEdge(Edge edge) {
+		mDegree--;
+		if (mAngularIndex != null) {
+			// Discard the index once the degree has fallen well below the
+			// threshold, so vertices near it don't keep rebuilding it
+			if (mDegree < ANGULAR_INDEX_MIN_DEGREE / 2)
+				mAngularIndex = null;
+			else
+				mAngularIndex.remove(edge);
+		}
 		Edge nextEdge = edge.nextEdge();
 		Edge prevEdge = edge.prevEdge();
 		if (edge == mEdges) {
@@ -95,7 +184,12 @@ public final class Vertex extends Point {
 
 	private Edge mEdges;
 	private int mFlags;
+	private int mMarkEpoch;
+	private int mDegree;
+	private AngularIndex mAngularIndex;
 
 	// index of vertex within vertex array
 	private int mIndex;
+	// unique id of vertex within its mesh
+	private int mId;
 }
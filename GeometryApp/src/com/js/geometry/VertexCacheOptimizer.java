@@ -0,0 +1,204 @@
+package com.js.geometry;
+
+import java.util.Arrays;
+
+/**
+ * Reorders the triangles of an indexed triangle list to make better use of
+ * the GPU's post-transform vertex cache, using Tom Forsyth's linear-speed
+ * algorithm: triangles are emitted greedily, preferring those whose vertices
+ * are recently used (according to a simulated LRU cache), and those whose
+ * vertices have few triangles remaining.
+ *
+ * Also calculates the average cache miss ratio (ACMR) of a triangle list:
+ * the number of vertex transforms per triangle, with a simulated FIFO cache.
+ * This lies between about 0.5 (optimal, for a large regular mesh) and 3
+ */
+public final class VertexCacheOptimizer {
+
+	/**
+	 * The cache size assumed by the optimizer; results are not very sensitive
+	 * to this, provided it's at least as large as the actual cache
+	 */
+	private static final int CACHE_SIZE = 32;
+
+	// Scoring parameters, from Forsyth's paper
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = .75f;
+	private static final float VALENCE_BOOST_SCALE = 2;
+	private static final float VALENCE_BOOST_POWER = .5f;
+
+	private VertexCacheOptimizer() {
+	}
+
+	/**
+	 * Reorder triangles to improve vertex cache performance
+	 *
+	 * @param indices
+	 *            triples of vertex indices; reordered in place (the order of
+	 *            each triangle's vertices is preserved)
+	 * @param vertexCount
+	 *            number of vertices; each index must be less than this
+	 */
+	public static void optimize(IntArray indices, int vertexCount) {
+		int[] input = indices.array(false);
+		int triangleCount = indices.size() / 3;
+		if (triangleCount < 2)
+			return;
+
+		// Build each vertex's list of triangles
+		int[] remaining = new int[vertexCount];
+		for (int i = 0; i < triangleCount * 3; i++)
+			remaining[input[i]]++;
+		int[] adjacencyStart = new int[vertexCount + 1];
+		for (int v = 0; v < vertexCount; v++)
+			adjacencyStart[v + 1] = adjacencyStart[v] + remaining[v];
+		int[] adjacency = new int[triangleCount * 3];
+		int[] cursor = Arrays.copyOf(adjacencyStart, vertexCount);
+		for (int i = 0; i < triangleCount * 3; i++)
+			adjacency[cursor[input[i]]++] = i / 3;
+
+		float[] vertexScore = new float[vertexCount];
+		for (int v = 0; v < vertexCount; v++)
+			vertexScore[v] = vertexScore(-1, remaining[v]);
+		float[] triangleScore = new float[triangleCount];
+		for (int t = 0; t < triangleCount; t++)
+			triangleScore[t] = vertexScore[input[t * 3]]
+					+ vertexScore[input[t * 3 + 1]]
+					+ vertexScore[input[t * 3 + 2]];
+		boolean[] emitted = new boolean[triangleCount];
+
+		int[] output = new int[triangleCount * 3];
+		int[] cache = new int[CACHE_SIZE + 3];
+		int[] newCache = new int[CACHE_SIZE + 3];
+		int cacheCount = 0;
+		// All triangles before this one have been emitted; it's where the
+		// full scan for the best triangle starts, if none of the cached
+		// vertices have any triangles remaining
+		int scanStart = 0;
+
+		int bestTriangle = -1;
+		for (int emitCount = 0; emitCount < triangleCount; emitCount++) {
+			if (bestTriangle < 0) {
+				while (emitted[scanStart])
+					scanStart++;
+				float bestScore = -1;
+				for (int t = scanStart; t < triangleCount; t++) {
+					if (!emitted[t] && triangleScore[t] > bestScore) {
+						bestScore = triangleScore[t];
+						bestTriangle = t;
+					}
+				}
+			}
+
+			// Emit the triangle
+			emitted[bestTriangle] = true;
+			System.arraycopy(input, bestTriangle * 3, output, emitCount * 3, 3);
+
+			// Move its vertices to the front of the cache, and remove it from
+			// their lists of remaining triangles
+			int newCount = 0;
+			for (int k = 0; k < 3; k++) {
+				int v = input[bestTriangle * 3 + k];
+				newCache[newCount++] = v;
+				int end = adjacencyStart[v] + remaining[v];
+				for (int j = adjacencyStart[v]; j < end; j++) {
+					if (adjacency[j] == bestTriangle) {
+						adjacency[j] = adjacency[end - 1];
+						break;
+					}
+				}
+				remaining[v]--;
+			}
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				if (v != newCache[0] && v != newCache[1] && v != newCache[2])
+					newCache[newCount++] = v;
+			}
+			int[] tmp = cache;
+			cache = newCache;
+			newCache = tmp;
+			cacheCount = newCount;
+
+			// Update the scores of the cached vertices (including any just
+			// pushed out of the cache), and of their triangles; and choose the
+			// best of those triangles for the next iteration
+			bestTriangle = -1;
+			float bestScore = -1;
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				int position = (i < CACHE_SIZE) ? i : -1;
+				vertexScore[v] = vertexScore(position, remaining[v]);
+			}
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				int end = adjacencyStart[v] + remaining[v];
+				for (int j = adjacencyStart[v]; j < end; j++) {
+					int t = adjacency[j];
+					float score = vertexScore[input[t * 3]]
+							+ vertexScore[input[t * 3 + 1]]
+							+ vertexScore[input[t * 3 + 2]];
+					triangleScore[t] = score;
+					if (score > bestScore) {
+						bestScore = score;
+						bestTriangle = t;
+					}
+				}
+			}
+			if (cacheCount > CACHE_SIZE)
+				cacheCount = CACHE_SIZE;
+		}
+
+		System.arraycopy(output, 0, input, 0, output.length);
+	}
+
+	private static float vertexScore(int cachePosition, int remainingTriangles) {
+		if (remainingTriangles == 0)
+			return -1;
+		float score = 0;
+		if (cachePosition >= 0) {
+			if (cachePosition < 3) {
+				// The vertices of the last triangle get a fixed score, so
+				// the next triangle doesn't depend upon their order
+				score = LAST_TRIANGLE_SCORE;
+			} else {
+				float scaler = 1.0f / (CACHE_SIZE - 3);
+				score = 1.0f - (cachePosition - 3) * scaler;
+				score = (float) Math.pow(score, CACHE_DECAY_POWER);
+			}
+		}
+		// Boost vertices with few triangles remaining, so they're finished
+		// off rather than left as isolated triangles
+		score += VALENCE_BOOST_SCALE
+				* (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+		return score;
+	}
+
+	/**
+	 * Calculate the average cache miss ratio of a triangle list, i.e. the
+	 * number of vertices transformed per triangle, assuming a FIFO cache
+	 *
+	 * @param indices
+	 *            triples of vertex indices
+	 * @param vertexCount
+	 *            number of vertices; each index must be less than this
+	 * @param cacheSize
+	 *            size of the simulated cache
+	 */
+	public static float acmr(IntArray indices, int vertexCount, int cacheSize) {
+		int triangleCount = indices.size() / 3;
+		if (triangleCount == 0)
+			return 0;
+		// The time each vertex entered the cache, as a count of misses
+		int[] entryTime = new int[vertexCount];
+		Arrays.fill(entryTime, -cacheSize - 1);
+		int misses = 0;
+		for (int i = 0; i < triangleCount * 3; i++) {
+			int v = indices.get(i);
+			if (misses - entryTime[v] > cacheSize) {
+				entryTime[v] = misses;
+				misses++;
+			}
+		}
+		return misses / (float) triangleCount;
+	}
+}
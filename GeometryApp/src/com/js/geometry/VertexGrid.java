@@ -0,0 +1,141 @@
+package com.js.geometry;
+
+import java.util.Arrays;
+
+import com.js.basic.Point;
+import com.js.basic.Rect;
+
+/**
+ * A uniform grid of buckets covering a rectangle, each holding at most one
+ * vertex lying within it (the one most recently added); used to find a vertex
+ * near a point, from which to start a walk through a triangulation.
+ *
+ * The grid is rebuilt (by the client) with a finer resolution as the number
+ * of vertices grows, so there are a few vertices per bucket. Points outside
+ * the rectangle are treated as lying in the nearest bucket
+ */
+final class VertexGrid {
+
+	private static final int VERTICES_PER_CELL = 2;
+	private static final int MIN_SIDE = 4;
+	private static final int MAX_SIDE = 2048;
+	// The grid is rebuilt once the vertex count reaches this multiple of its
+	// capacity, so its side doubles each time
+	private static final int GROWTH_FACTOR = 4;
+	// How far (in cells) to search around a point's cell for a vertex
+	private static final int MAX_SEARCH_RADIUS = 3;
+
+	/**
+	 * Determine if the grid should be rebuilt, since it's too coarse for a
+	 * number of vertices
+	 */
+	public boolean needsRebuild(int vertexCount) {
+		return mCells == null || vertexCount >= mRebuildThreshold;
+	}
+
+	/**
+	 * Rebuild the grid, sized for the current number of vertices
+	 *
+	 * @param bounds
+	 *            rectangle to be covered by the grid
+	 * @param mesh
+	 *            mesh containing the vertices to add
+	 * @param firstVertex
+	 *            index of first vertex within mesh to add
+	 */
+	public void rebuild(Rect bounds, Mesh mesh, int firstVertex) {
+		int vertexCount = mesh.numVertices() - firstVertex;
+		int side = (int) Math.ceil(Math.sqrt(vertexCount
+				/ (double) VERTICES_PER_CELL));
+		side = Math.max(MIN_SIDE, Math.min(MAX_SIDE, side));
+		mSide = side;
+		if (mCells == null || mCells.length != side * side)
+			mCells = new Vertex[side * side];
+		else
+			Arrays.fill(mCells, null);
+		mRebuildThreshold = (side == MAX_SIDE) ? Integer.MAX_VALUE : side
+				* side * VERTICES_PER_CELL * GROWTH_FACTOR;
+
+		mOriginX = bounds.x;
+		mOriginY = bounds.y;
+		float size = Math.max(bounds.width, bounds.height);
+		mScale = (size == 0) ? 0 : side / size;
+
+		for (int i = firstVertex; i < mesh.numVertices(); i++)
+			add(mesh.vertex(i));
+	}
+
+	public void add(Vertex vertex) {
+		mCells[cellIndex(vertex)] = vertex;
+	}
+
+	/**
+	 * Remove a vertex, if it's stored in the grid
+	 *
+	 * @param replacement
+	 *            if not null, a vertex to store instead, if it lies within the
+	 *            same cell
+	 */
+	public void remove(Vertex vertex, Vertex replacement) {
+		if (mCells == null)
+			return;
+		int cell = cellIndex(vertex);
+		if (mCells[cell] != vertex)
+			return;
+		if (replacement != null && cellIndex(replacement) != cell)
+			replacement = null;
+		mCells[cell] = replacement;
+	}
+
+	/**
+	 * Find a vertex near a point
+	 *
+	 * @return vertex, or null if none was found near the point's cell
+	 */
+	public Vertex find(Point point) {
+		if (mCells == null)
+			return null;
+		int x = cellCoordinate(point.x, mOriginX);
+		int y = cellCoordinate(point.y, mOriginY);
+		Vertex vertex = mCells[y * mSide + x];
+		if (vertex != null)
+			return vertex;
+
+		// Search the rings of cells surrounding the point's cell
+		for (int radius = 1; radius <= MAX_SEARCH_RADIUS; radius++) {
+			int x0 = Math.max(0, x - radius);
+			int x1 = Math.min(mSide - 1, x + radius);
+			int y0 = Math.max(0, y - radius);
+			int y1 = Math.min(mSide - 1, y + radius);
+			for (int cy = y0; cy <= y1; cy++) {
+				boolean edgeRow = (cy == y - radius || cy == y + radius);
+				int step = edgeRow ? 1 : 2 * radius;
+				for (int cx = x - radius; cx <= x + radius; cx += step) {
+					if (cx < x0 || cx > x1)
+						continue;
+					vertex = mCells[cy * mSide + cx];
+					if (vertex != null)
+						return vertex;
+				}
+			}
+		}
+		return null;
+	}
+
+	private int cellIndex(Point point) {
+		return cellCoordinate(point.y, mOriginY) * mSide
+				+ cellCoordinate(point.x, mOriginX);
+	}
+
+	private int cellCoordinate(float value, float origin) {
+		int cell = (int) ((value - origin) * mScale);
+		return Math.max(0, Math.min(mSide - 1, cell));
+	}
+
+	private Vertex[] mCells;
+	private int mSide;
+	private int mRebuildThreshold;
+	private float mOriginX;
+	private float mOriginY;
+	private float mScale;
+}
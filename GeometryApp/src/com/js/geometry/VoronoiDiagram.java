@@ -0,0 +1,241 @@
+package com.js.geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.js.basic.Point;
+
+/**
+ * The Voronoi diagram of a Delaunay triangulation's sites, stored in flat
+ * arrays rather than as a Polygon per cell. The diagram's vertices are the
+ * circumcentres of the triangulation's faces, each calculated once, and
+ * stored as consecutive floats (x, y) indexed by the face's id (see
+ * Mesh.faceOf()). The cells are stored in compressed sparse row form: the
+ * vertices of cell i are vertexIndices[k] for cellOffsets[i] <= k <
+ * cellOffsets[i + 1], in CCW order.
+ *
+ * The diagram is a snapshot; it isn't updated as sites are added or removed
+ */
+public final class VoronoiDiagram {
+
+	// Each task of a parallel construction handles at least this many faces or
+	// cells
+	private static final int MIN_TASK_SIZE = 4096;
+
+	/**
+	 * Construct the diagram for the vertices of a triangulated mesh
+	 *
+	 * @param mesh
+	 *            mesh containing a triangulation; every face incident with a
+	 *            site must be a triangle
+	 * @param firstSite
+	 *            index of the first vertex that is a site; the sites are this
+	 *            vertex and all following it
+	 * @param executor
+	 *            if not null, executor for running parts of the construction
+	 *            in parallel
+	 * @param threadCount
+	 *            number of threads to divide the work between (including the
+	 *            calling thread), if executor is not null
+	 */
+	static VoronoiDiagram construct(Mesh mesh, int firstSite,
+			ExecutorService executor, int threadCount) {
+		// Build the face table, if necessary, before any workers read it
+		int faceCount = mesh.faceIdBound();
+		VoronoiDiagram d = new VoronoiDiagram(mesh, firstSite, faceCount);
+		if (executor == null)
+			threadCount = 1;
+		d.runTasks(d.new CircumcentreTask(), faceCount, executor, threadCount);
+		d.runTasks(d.new CellTask(), d.numCells(), executor, threadCount);
+		// Don't retain the mesh
+		d.mMesh = null;
+		return d;
+	}
+
+	private VoronoiDiagram(Mesh mesh, int firstSite, int faceCount) {
+		mMesh = mesh;
+		mFirstSite = firstSite;
+		mCoordinates = new float[faceCount * 2];
+		int cellCount = mesh.numVertices() - firstSite;
+		mCellOffsets = new int[cellCount + 1];
+		for (int i = 0; i < cellCount; i++)
+			mCellOffsets[i + 1] = mCellOffsets[i]
+					+ mesh.vertex(firstSite + i).degree();
+		mVertexIndices = new int[mCellOffsets[cellCount]];
+	}
+
+	public int numCells() {
+		return mCellOffsets.length - 1;
+	}
+
+	/**
+	 * Get the number of vertices of a cell
+	 */
+	public int cellSize(int cell) {
+		return mCellOffsets[cell + 1] - mCellOffsets[cell];
+	}
+
+	/**
+	 * Get the index of one of a cell's vertices
+	 *
+	 * @param cell
+	 *            index of cell (i.e., of its site)
+	 * @param i
+	 *            position of vertex within cell, 0...cellSize()-1
+	 */
+	public int cellVertex(int cell, int i) {
+		return mVertexIndices[mCellOffsets[cell] + i];
+	}
+
+	public float vertexX(int vertex) {
+		return mCoordinates[vertex * 2];
+	}
+
+	public float vertexY(int vertex) {
+		return mCoordinates[vertex * 2 + 1];
+	}
+
+	/**
+	 * Get the offsets of each cell within vertexIndices(), followed by the
+	 * total number of vertex indices; the array is not copied
+	 */
+	public int[] cellOffsets() {
+		return mCellOffsets;
+	}
+
+	/**
+	 * Get the vertex indices of every cell; the array is not copied
+	 */
+	public int[] vertexIndices() {
+		return mVertexIndices;
+	}
+
+	/**
+	 * Get the coordinates of the vertices, as (x, y) pairs; the array is not
+	 * copied. Slots not belonging to any cell are undefined
+	 */
+	public float[] coordinates() {
+		return mCoordinates;
+	}
+
+	/**
+	 * Construct a Polygon from a cell; its vertices are the same as those
+	 * produced by Delaunay.constructVoronoiPolygon()
+	 */
+	public Polygon cellPolygon(int cell) {
+		Polygon p = new Polygon();
+		for (int i = 0; i < cellSize(cell); i++) {
+			int vertex = cellVertex(cell, i);
+			p.add(new Point(vertexX(vertex), vertexY(vertex)));
+		}
+		return p;
+	}
+
+	/**
+	 * A task that operates on a range of items
+	 */
+	private interface RangeTask {
+		void run(int start, int end);
+	}
+
+	/**
+	 * Calculates the circumcentres of a range of faces
+	 */
+	private class CircumcentreTask implements RangeTask {
+		@Override
+		public void run(int start, int end) {
+			for (int face = start; face < end; face++) {
+				Edge edge = mMesh.faceEdge(face);
+				if (edge == null)
+					continue;
+				Edge edge2 = edge.nextFaceEdge();
+				if (edge2.nextFaceEdge().nextFaceEdge() != edge)
+					continue;
+				storeCircumcentre(face, edge.sourceVertex(),
+						edge.destVertex(), edge2.destVertex());
+			}
+		}
+	}
+
+	/**
+	 * Builds a range of cells. The vertices of a site's cell are in the same
+	 * order as its edges: the one lying between edge e and its predecessor
+	 * (the circumcentre of the face to the left of the predecessor) is first
+	 */
+	private class CellTask implements RangeTask {
+		@Override
+		public void run(int start, int end) {
+			for (int cell = start; cell < end; cell++) {
+				Edge startEdge = mMesh.vertex(mFirstSite + cell).edges();
+				int k = mCellOffsets[cell];
+				Edge edge = startEdge;
+				do {
+					mVertexIndices[k++] = edge.prevEdge().face();
+					edge = edge.nextEdge();
+				} while (edge != startEdge);
+			}
+		}
+	}
+
+	private void storeCircumcentre(int face, Point a, Point b, Point c) {
+		// Calculate relative to a, to reduce roundoff error
+		double bx = b.x - a.x;
+		double by = b.y - a.y;
+		double cx = c.x - a.x;
+		double cy = c.y - a.y;
+		double denom = 2 * (bx * cy - by * cx);
+		double bLength = bx * bx + by * by;
+		double cLength = cx * cx + cy * cy;
+		double x = (cy * bLength - by * cLength) / denom;
+		double y = (bx * cLength - cx * bLength) / denom;
+		mCoordinates[face * 2] = (float) (a.x + x);
+		mCoordinates[face * 2 + 1] = (float) (a.y + y);
+	}
+
+	/**
+	 * Run a task over a number of items, dividing them into ranges to be run
+	 * in parallel if an executor is available and there are enough items
+	 */
+	private void runTasks(final RangeTask task, int count,
+			ExecutorService executor, int threadCount) {
+		int taskCount = Math.max(1,
+				Math.min(threadCount, count / MIN_TASK_SIZE));
+		List<Future<?>> helpers = new ArrayList();
+		for (int i = 1; i < taskCount; i++) {
+			final int start = rangeStart(count, taskCount, i);
+			final int end = rangeStart(count, taskCount, i + 1);
+			helpers.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					task.run(start, end);
+				}
+			}));
+		}
+		task.run(0, rangeStart(count, taskCount, 1));
+		for (Future<?> helper : helpers) {
+			try {
+				helper.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
+	private static int rangeStart(int count, int taskCount, int task) {
+		return (int) ((long) count * task / taskCount);
+	}
+
+	private Mesh mMesh;
+	private int mFirstSite;
+	private float[] mCoordinates;
+	private int[] mCellOffsets;
+	private int[] mVertexIndices;
+}
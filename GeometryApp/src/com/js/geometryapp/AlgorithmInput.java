@@ -91,5 +91,8 @@ public class AlgorithmInput {
 	public Rect algorithmRect;
 	public Point[] points;
 	public Polygon[] polygons;
+	// The same polygons, but with those nested within others oriented as
+	// holes (see Polygon.orientRings)
+	public Polygon[] rings;
 	public Disc[] discs;
 }
@@ -1,6 +1,8 @@
 package com.js.geometryapp;
 
+import java.nio.Buffer;
 import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 
 import android.graphics.Matrix;
 
@@ -105,7 +107,18 @@ public class PolygonProgram {
 				GL_FLOAT, false, stride, fb);
 		glEnableVertexAttribArray(mPositionLocation);
 
-		glDrawArrays(sMeshTypeToGL[mesh.type()], 0, mesh.getVertexCount());
+		Buffer indices = mesh.getIndexBuffer();
+		if (indices == null) {
+			glDrawArrays(sMeshTypeToGL[mesh.type()], 0, mesh.getVertexCount());
+			return;
+		}
+		indices.position(0);
+		// Int indices require the OES_element_index_uint extension; but
+		// PolygonMesh only uses them for meshes too large for shorts
+		int indexType = (indices instanceof ShortBuffer) ? GL_UNSIGNED_SHORT
+				: GL_UNSIGNED_INT;
+		glDrawElements(sMeshTypeToGL[mesh.type()], mesh.getIndexCount(),
+				indexType, indices);
 	}
 
 	private void prepareAttributes() {
@@ -799,6 +799,7 @@ public class Editor {
     AlgorithmInput algorithmInput = new AlgorithmInput(mStepper.algorithmRect());
     List<Point> pointList = new ArrayList();
     List<Polygon> polygonList = new ArrayList();
+    List<Polygon> ringList = new ArrayList();
     List<Disc> discList = new ArrayList();
 
     for (EdObject obj : objects()) {
@@ -821,6 +822,7 @@ public class Editor {
           polygon.reverse();
 
         polygonList.add(polygon);
+        ringList.add(new Polygon(polygon));
       } else if (obj instanceof EdDisc) {
         EdDisc disc = (EdDisc) obj;
         discList.add(new Disc(disc.getOrigin(), disc.getRadius()));
@@ -828,6 +830,8 @@ public class Editor {
     }
     algorithmInput.points = pointList.toArray(new Point[0]);
     algorithmInput.polygons = polygonList.toArray(new Polygon[0]);
+    Polygon.orientRings(ringList);
+    algorithmInput.rings = ringList.toArray(new Polygon[0]);
     algorithmInput.discs = discList.toArray(new Disc[0]);
     return algorithmInput;
   }
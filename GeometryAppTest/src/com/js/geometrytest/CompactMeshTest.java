@@ -0,0 +1,118 @@
+package com.js.geometrytest;
+
+import com.js.basic.GeometryException;
+import com.js.basic.Predicates;
+import com.js.geometry.CompactMesh;
+import com.js.geometry.Mesh;
+import com.js.geometry.Polygon;
+import com.js.geometry.PolygonMesh;
+import com.js.geometry.PolygonTriangulator;
+import com.js.testUtils.MyTestCase;
+
+public class CompactMeshTest extends MyTestCase {
+
+	private Polygon mPolygon;
+
+	private Polygon polygon() {
+		if (mPolygon == null)
+			mPolygon = Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 5);
+		return mPolygon;
+	}
+
+	private Mesh triangulatedMesh() {
+		Mesh mesh = new Mesh();
+		PolygonTriangulator.triangulator(null, mesh, polygon()).triangulate();
+		return mesh;
+	}
+
+	public void testTriangulationMatchesMesh() {
+		CompactMesh compactMesh = new CompactMesh();
+		PolygonTriangulator.triangulate(compactMesh, polygon());
+		assertStringsMatch(triangulatedMesh(), compactMesh.toMesh());
+	}
+
+	public void testConvertFromMesh() {
+		Mesh mesh = triangulatedMesh();
+		CompactMesh compactMesh = CompactMesh.fromMesh(mesh);
+		assertEquals(mesh.numVertices(), compactMesh.numVertices());
+		assertEquals(mesh.constructListOfEdges(true).size(), compactMesh
+				.constructListOfEdges(true).size());
+		assertEquals(mesh.constructListOfEdges(false).size(), compactMesh
+				.constructListOfEdges(false).size());
+		assertStringsMatch(mesh, compactMesh.toMesh());
+	}
+
+	public void testEdgeExistsBetween() {
+		CompactMesh mesh = new CompactMesh();
+		int v0 = mesh.addVertex(0, 0);
+		int v1 = mesh.addVertex(100, 0);
+		int v2 = mesh.addVertex(0, 100);
+		int e01 = mesh.addEdge(v0, v1);
+		int e12 = mesh.addEdge(v1, v2);
+
+		assertEquals(e01, mesh.edgeExistsBetween(v0, v1));
+		assertEquals(mesh.dual(e01), mesh.edgeExistsBetween(v1, v0));
+		assertEquals(CompactMesh.NONE, mesh.edgeExistsBetween(v0, v2));
+		assertEquals(e12, mesh.addEdge(v1, v2, true));
+
+		mesh.deleteEdge(e01);
+		assertEquals(CompactMesh.NONE, mesh.edgeExistsBetween(v0, v1));
+		assertEquals(CompactMesh.NONE, mesh.vertexEdges(v0));
+	}
+
+	public void testDeleteVerticesMatchesMesh() {
+		Mesh mesh = triangulatedMesh();
+		CompactMesh compactMesh = CompactMesh.fromMesh(mesh);
+		while (mesh.numVertices() != 0) {
+			int index = random().nextInt(mesh.numVertices());
+			mesh.deleteVertex(mesh.vertex(index));
+			compactMesh.deleteVertex(index);
+			assertStringsMatch(mesh, compactMesh.toMesh());
+		}
+		assertEquals(0, compactMesh.constructListOfEdges(false).size());
+	}
+
+	public void testPolygonMeshFromTriangulatedMesh() {
+		CompactMesh compactMesh = new CompactMesh();
+		PolygonTriangulator.triangulate(compactMesh, polygon());
+		PolygonMesh polygonMesh = PolygonMesh.meshForTriangulatedMesh(
+				compactMesh, false);
+		assertNull(polygonMesh.getError());
+		assertEquals((polygon().numVertices() - 2) * 3,
+				polygonMesh.getVertexCount());
+	}
+
+	public void testNearlyParallelEdges() {
+		CompactMesh mesh = new CompactMesh();
+		int center = mesh.addVertex(0, 0);
+		// Spokes in the other quadrants, so consecutive edges are always
+		// less than a half turn apart
+		mesh.addEdge(center, mesh.addVertex(0, 1000));
+		mesh.addEdge(center, mesh.addVertex(1000, 0));
+		mesh.addEdge(center, mesh.addVertex(0, -1000));
+		// Add distant spokes whose angles are too close for the pseudo-angles
+		// to distinguish, in random order; they point left, where the
+		// pseudo-angles are least precise
+		for (int i = 0; i < 200; i++) {
+			int spoke = mesh.addVertex(-100000, random().nextFloat() * .5f);
+			try {
+				mesh.addEdge(center, spoke);
+			} catch (GeometryException e) {
+				// Collinear with an existing spoke
+				mesh.deleteVertex(spoke);
+			}
+		}
+		int first = mesh.vertexEdges(center);
+		int edge = first;
+		do {
+			int nextEdge = mesh.nextEdge(edge);
+			int dest = mesh.destVertex(edge);
+			int nextDest = mesh.destVertex(nextEdge);
+			assertTrue(Predicates.orient2d(mesh.vertexX(center),
+					mesh.vertexY(center), mesh.vertexX(dest),
+					mesh.vertexY(dest), mesh.vertexX(nextDest),
+					mesh.vertexY(nextDest)) > 0);
+			edge = nextEdge;
+		} while (edge != first);
+	}
+}
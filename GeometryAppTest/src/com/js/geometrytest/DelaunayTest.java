@@ -0,0 +1,279 @@
+package com.js.geometrytest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.js.basic.GeometryException;
+import com.js.basic.Point;
+import com.js.basic.Predicates;
+import com.js.basic.Rect;
+import com.js.geometry.AlgorithmStepper;
+import com.js.geometry.Delaunay;
+import com.js.geometry.Edge;
+import com.js.geometry.Mesh;
+import com.js.geometry.Polygon;
+import com.js.geometry.Vertex;
+import com.js.geometry.VoronoiDiagram;
+import com.js.testUtils.MyTestCase;
+
+import static com.js.basic.Tools.*;
+
+public class DelaunayTest extends MyTestCase {
+
+	private static List<Point> randomPoints(Random r, int count) {
+		List<Point> points = new ArrayList();
+		for (int i = 0; i < count; i++)
+			points.add(new Point(50 + r.nextFloat() * 900, 50 + r.nextFloat()
+					* 900));
+		return points;
+	}
+
+	private static Delaunay delaunay(Mesh mesh) {
+		return new Delaunay(mesh, new Rect(40, 40, 920, 920),
+				AlgorithmStepper.INACTIVE_STEPPER);
+	}
+
+	/**
+	 * Verify that no vertex lies within the circumcircle of the triangle on
+	 * the other side of an edge
+	 */
+	private static void verifyDelaunay(Mesh mesh) {
+		for (Edge edge : mesh.constructListOfEdges(true)) {
+			Edge next = edge.nextFaceEdge();
+			Edge dualNext = edge.dual().nextFaceEdge();
+			if (next.nextFaceEdge().nextFaceEdge() != edge
+					|| dualNext.nextFaceEdge().nextFaceEdge() != edge.dual())
+				continue;
+			assertFalse(Predicates.incircle(edge.sourceVertex(),
+					edge.destVertex(), next.destVertex(),
+					dualNext.destVertex()) > 0);
+		}
+	}
+
+	private static String location(Point point) {
+		return "(" + point.x + "," + point.y + ")";
+	}
+
+	/**
+	 * Get the edges of a mesh, as strings describing their endpoints
+	 */
+	private static Set<String> edgeSet(Mesh mesh) {
+		Set<String> edges = new HashSet();
+		for (Edge edge : mesh.constructListOfEdges(true)) {
+			String a = location(edge.sourceVertex());
+			String b = location(edge.destVertex());
+			edges.add(a.compareTo(b) < 0 ? a + b : b + a);
+		}
+		return edges;
+	}
+
+	public void testBulkInsertion() {
+		Random r = new Random(1);
+		List<Point> points = randomPoints(r, 2000);
+		Mesh mesh = new Mesh();
+		Delaunay d = delaunay(mesh);
+		List<Vertex> vertices = d.add(points);
+
+		assertEquals(points.size(), vertices.size());
+		assertEquals(points.size(), d.nSites());
+		for (int i = 0; i < points.size(); i++) {
+			assertEquals(points.get(i).x, vertices.get(i).x);
+			assertEquals(points.get(i).y, vertices.get(i).y);
+		}
+		verifyDelaunay(mesh);
+
+		// The triangulation is unique, so it should match that produced by
+		// adding the points one at a time
+		Mesh mesh2 = new Mesh();
+		Delaunay d2 = delaunay(mesh2);
+		for (Point point : points)
+			d2.add(point);
+		assertEquals(edgeSet(mesh2), edgeSet(mesh));
+	}
+
+	public void testAddAndRemoveAfterBulkInsertion() {
+		Random r = new Random(2);
+		Mesh mesh = new Mesh();
+		Delaunay d = delaunay(mesh);
+		List<Vertex> vertices = new ArrayList(d.add(randomPoints(r, 500)));
+
+		for (int i = 0; i < 200; i++)
+			d.remove(removeAndFill(vertices, r.nextInt(vertices.size())));
+		for (Point point : randomPoints(r, 100))
+			vertices.add(d.add(point));
+		verifyDelaunay(mesh);
+
+		vertices.addAll(d.add(randomPoints(r, 300)));
+		verifyDelaunay(mesh);
+		assertEquals(vertices.size(), mesh.numVertices() - 4);
+	}
+
+	/**
+	 * A vertex that has been removed must not be reused for a new site, since
+	 * the caller may still be holding it
+	 */
+	public void testRemovedVertexNotReused() {
+		Random r = new Random(3);
+		Mesh mesh = new Mesh();
+		Delaunay d = delaunay(mesh);
+		List<Vertex> vertices = new ArrayList(d.add(randomPoints(r, 100)));
+
+		List<Vertex> removed = new ArrayList();
+		List<Point> locations = new ArrayList();
+		for (int i = 0; i < 50; i++) {
+			Vertex vertex = removeAndFill(vertices, r.nextInt(vertices.size()));
+			removed.add(vertex);
+			locations.add(new Point(vertex));
+			d.remove(vertex);
+		}
+		for (Point point : randomPoints(r, 50)) {
+			Vertex vertex = d.add(point);
+			assertFalse(removed.contains(vertex));
+		}
+		// The removed vertices are unchanged
+		for (int i = 0; i < removed.size(); i++) {
+			assertEquals(locations.get(i).x, removed.get(i).x, 0);
+			assertEquals(locations.get(i).y, removed.get(i).y, 0);
+		}
+		verifyDelaunay(mesh);
+	}
+
+	public void testParallelConstruction() {
+		Random r = new Random(3);
+		List<Point> points = randomPoints(r, 5000);
+		Mesh mesh = new Mesh();
+		Delaunay d = delaunay(mesh);
+		List<Vertex> vertices = new ArrayList(d.addInParallel(points));
+
+		assertEquals(points.size(), vertices.size());
+		assertEquals(points.size(), d.nSites());
+		for (int i = 0; i < points.size(); i++) {
+			assertEquals(points.get(i).x, vertices.get(i).x);
+			assertEquals(points.get(i).y, vertices.get(i).y);
+		}
+		verifyDelaunay(mesh);
+
+		Mesh mesh2 = new Mesh();
+		delaunay(mesh2).add(points);
+		assertEquals(edgeSet(mesh2), edgeSet(mesh));
+
+		// The triangulation should remain editable
+		for (int i = 0; i < 500; i++)
+			d.remove(removeAndFill(vertices, r.nextInt(vertices.size())));
+		for (Point point : randomPoints(r, 200))
+			vertices.add(d.add(point));
+		verifyDelaunay(mesh);
+		assertEquals(vertices.size(), mesh.numVertices() - 4);
+	}
+
+	public void testVoronoiDiagram() {
+		Random r = new Random(4);
+		Mesh mesh = new Mesh();
+		Delaunay d = delaunay(mesh);
+		d.add(randomPoints(r, 10000));
+		VoronoiDiagram diagram = d.constructVoronoiDiagram(false);
+
+		assertEquals(d.nSites(), diagram.numCells());
+		for (int cell = 0; cell < diagram.numCells(); cell++) {
+			Polygon expected = d.constructVoronoiPolygon(cell);
+			assertEquals(expected.numVertices(), diagram.cellSize(cell));
+			for (int i = 0; i < expected.numVertices(); i++) {
+				Point point = expected.vertex(i);
+				int vertex = diagram.cellVertex(cell, i);
+				assertEqualsFloatWithRelativePrecision(point.x,
+						diagram.vertexX(vertex), 1e-3);
+				assertEqualsFloatWithRelativePrecision(point.y,
+						diagram.vertexY(vertex), 1e-3);
+			}
+		}
+
+		// The parallel version should produce the same diagram
+		VoronoiDiagram diagram2 = d.constructVoronoiDiagram(true);
+		assertTrue(Arrays.equals(diagram.cellOffsets(),
+				diagram2.cellOffsets()));
+		assertTrue(Arrays.equals(diagram.vertexIndices(),
+				diagram2.vertexIndices()));
+		assertTrue(Arrays.equals(diagram.coordinates(),
+				diagram2.coordinates()));
+	}
+
+	/**
+	 * Verify that no vertex visible from an unconstrained edge lies within
+	 * the circumcircle of the triangle on the other side of the edge
+	 */
+	private static void verifyConstrainedDelaunay(Delaunay d, Mesh mesh) {
+		for (Edge edge : mesh.constructListOfEdges(true)) {
+			assertEquals(d.isConstrained(edge), d.isConstrained(edge.dual()));
+			if (d.isConstrained(edge))
+				continue;
+			Edge next = edge.nextFaceEdge();
+			Edge dualNext = edge.dual().nextFaceEdge();
+			if (next.nextFaceEdge().nextFaceEdge() != edge
+					|| dualNext.nextFaceEdge().nextFaceEdge() != edge.dual())
+				continue;
+			assertFalse(Predicates.incircle(edge.sourceVertex(),
+					edge.destVertex(), next.destVertex(),
+					dualNext.destVertex()) > 0);
+		}
+	}
+
+	private static void verifyConstrainedEdge(Delaunay d, Mesh mesh,
+			Vertex a, Vertex b) {
+		Edge edge = mesh.edgeExistsBetween(a, b);
+		assertNotNull(edge);
+		assertTrue(d.isConstrained(edge));
+	}
+
+	public void testConstraints() {
+		Random r = new Random(5);
+		Mesh mesh = new Mesh();
+		Delaunay d = delaunay(mesh);
+		List<Vertex> vertices = new ArrayList(d.add(randomPoints(r, 1000)));
+
+		// Constrain the boundary of a square, whose sides cross many edges
+		Vertex[] corners = new Vertex[4];
+		corners[0] = d.add(new Point(100.5f, 100.5f));
+		corners[1] = d.add(new Point(900.5f, 100.5f));
+		corners[2] = d.add(new Point(900.5f, 900.5f));
+		corners[3] = d.add(new Point(100.5f, 900.5f));
+		for (int i = 0; i < 4; i++)
+			d.addConstraint(corners[i], corners[(i + 1) % 4]);
+		for (int i = 0; i < 4; i++)
+			verifyConstrainedEdge(d, mesh, corners[i], corners[(i + 1) % 4]);
+		verifyConstrainedDelaunay(d, mesh);
+
+		// Constraints can't cross
+		Vertex outside = d.add(new Point(60.25f, 500.25f));
+		Vertex inside = d.add(new Point(500.25f, 500.25f));
+		try {
+			d.addConstraint(outside, inside);
+			failMissingException();
+		} catch (GeometryException e) {
+		}
+
+		// Adding a site on a constrained edge splits it
+		Vertex middle = d.add(new Point(500.5f, 100.5f));
+		verifyConstrainedEdge(d, mesh, corners[0], middle);
+		verifyConstrainedEdge(d, mesh, middle, corners[1]);
+		assertNull(mesh.edgeExistsBetween(corners[0], corners[1]));
+
+		// Adding and removing other sites leaves the constraints intact
+		for (int i = 0; i < 300; i++)
+			d.remove(removeAndFill(vertices, r.nextInt(vertices.size())));
+		for (Point point : randomPoints(r, 300))
+			vertices.add(d.add(point));
+		verifyConstrainedDelaunay(d, mesh);
+
+		// Removing the splitting site restores the original edge
+		d.remove(middle);
+		verifyConstrainedEdge(d, mesh, corners[0], corners[1]);
+		for (int i = 0; i < 4; i++)
+			verifyConstrainedEdge(d, mesh, corners[i], corners[(i + 1) % 4]);
+		verifyConstrainedDelaunay(d, mesh);
+	}
+
+}
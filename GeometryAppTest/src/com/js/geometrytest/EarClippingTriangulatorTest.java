@@ -0,0 +1,71 @@
+package com.js.geometrytest;
+
+import com.js.basic.Point;
+import com.js.geometry.EarClippingTriangulator;
+import com.js.geometry.IntArray;
+import com.js.geometry.Polygon;
+import com.js.testUtils.MyTestCase;
+
+public class EarClippingTriangulatorTest extends MyTestCase {
+
+	private EarClippingTriangulator mTriangulator = new EarClippingTriangulator();
+
+	/**
+	 * Triangulate a polygon, and verify that the triangles are CCW and that
+	 * they cover the polygon's area
+	 */
+	private void verifyTriangulation(int polygonIndex) {
+		Polygon polygon = Polygon.testPolygon(polygonIndex);
+		IntArray triangles = new IntArray();
+		assertTrue(mTriangulator.triangulate(polygon, triangles));
+		assertEquals((polygon.numVertices() - 2) * 3, triangles.size());
+
+		float area = 0;
+		for (int i = 0; i < triangles.size(); i += 3) {
+			Point a = polygon.vertex(triangles.get(i));
+			Point b = polygon.vertex(triangles.get(i + 1));
+			Point c = polygon.vertex(triangles.get(i + 2));
+			float triangleArea = ((b.x - a.x) * (c.y - a.y) - (c.x - a.x)
+					* (b.y - a.y)) / 2;
+			assertTrue(triangleArea > 0);
+			area += triangleArea;
+		}
+		assertEquals(polygon.area(), area, polygon.area() * 1e-4f);
+	}
+
+	public void testSmallPolygon() {
+		verifyTriangulation(Polygon.TESTPOLY_CONCAVE_BLOB);
+	}
+
+	public void testPolygonWithHorizontalEdges() {
+		verifyTriangulation(Polygon.TESTPOLY_Y_EQUALS_X_SQUARED);
+	}
+
+	/**
+	 * This polygon is large enough to use the z-order index
+	 */
+	public void testLargePolygon() {
+		verifyTriangulation(Polygon.TESTPOLY_DRAGON_X + 9);
+		verifyTriangulation(Polygon.TESTPOLY_STARSHAPED_X + 500);
+	}
+
+	public void testNonSimplePolygonFails() {
+		Polygon polygon = Polygon.testPolygon(Polygon.TESTPOLY_NONSIMPLE_SPIRAL);
+		assertFalse(mTriangulator.triangulate(polygon, new IntArray()));
+	}
+
+	/**
+	 * Every vertex of this CCW polygon can be clipped, but two of its edges
+	 * cross, so the triangles would overlap
+	 */
+	public void testCrossingEdgesFail() {
+		Polygon polygon = new Polygon();
+		polygon.add(70, 40);
+		polygon.add(70, 50);
+		polygon.add(10, 90);
+		polygon.add(90, 20);
+		polygon.add(60, 90);
+		assertFalse(mTriangulator.triangulate(polygon, new IntArray()));
+	}
+
+}
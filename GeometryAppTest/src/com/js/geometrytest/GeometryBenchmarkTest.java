@@ -0,0 +1,442 @@
+package com.js.geometrytest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import android.os.Debug;
+
+import com.js.basic.Point;
+import com.js.basic.Rect;
+import com.js.geometry.AlgorithmStepper;
+import com.js.geometry.BatchTriangulator;
+import com.js.geometry.CompactMesh;
+import com.js.geometry.Delaunay;
+import com.js.geometry.EarClippingTriangulator;
+import com.js.geometry.Edge;
+import com.js.geometry.IntArray;
+import com.js.geometry.Mesh;
+import com.js.geometry.MeshSnapshot;
+import com.js.geometry.Polygon;
+import com.js.geometry.PolygonMesh;
+import com.js.geometry.PolygonTriangulator;
+import com.js.geometry.Vertex;
+import com.js.geometry.VertexCacheOptimizer;
+import com.js.testUtils.MyTestCase;
+
+import static com.js.basic.Tools.*;
+
+/**
+ * Benchmarks for the geometry classes. These verify correctness only loosely;
+ * their main purpose is to print timing and allocation statistics
+ */
+public class GeometryBenchmarkTest extends MyTestCase {
+
+	private static final int FRAMES = 20;
+
+	/**
+	 * Set this to run the benchmarks that build structures with millions of
+	 * elements at full size; otherwise they run at sizes small enough for the
+	 * regular test suite
+	 */
+	private static final boolean LARGE_BENCHMARKS = false;
+
+	/**
+	 * Build a triangulated grid of points with approximately the requested
+	 * number of edges (not counting duals). The rows and columns are bent
+	 * slightly, since the mesh doesn't allow a vertex to have two collinear
+	 * edges without one lying between them
+	 */
+	private static Mesh buildGridMesh(int approximateEdgeCount) {
+		int size = (int) Math.sqrt(approximateEdgeCount / 3) + 2;
+		Mesh mesh = new Mesh();
+		Vertex[] grid = new Vertex[size * size];
+		for (int y = 0; y < size; y++)
+			for (int x = 0; x < size; x++)
+				grid[y * size + x] = mesh.addVertex(new Point(x * 10 + y * y
+						* .01f, y * 10 + x * x * .01f));
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				Vertex v = grid[y * size + x];
+				if (x + 1 < size)
+					mesh.addEdge(v, grid[y * size + x + 1]);
+				if (y + 1 < size)
+					mesh.addEdge(v, grid[(y + 1) * size + x]);
+				if (x + 1 < size && y + 1 < size)
+					mesh.addEdge(v, grid[(y + 1) * size + x + 1]);
+			}
+		}
+		return mesh;
+	}
+
+	/**
+	 * Accumulates something from each edge, so the traversal can't be
+	 * optimized away
+	 */
+	private static class Accumulator implements Mesh.EdgeVisitor {
+		@Override
+		public void visit(Edge edge) {
+			mTotal += edge.angle();
+		}
+
+		float mTotal;
+	}
+
+	private static void report(String label, int frames, long allocCount,
+			long allocBytes, long nanos) {
+		pr(label + ": " + d((int) (allocCount / frames)) + " allocs/frame, "
+				+ d((int) (allocBytes / frames)) + " bytes/frame, "
+				+ d((int) (nanos / (1000 * frames))) + " us/frame");
+	}
+
+	private static void startCounting() {
+		Debug.resetThreadAllocCount();
+		Debug.resetThreadAllocSize();
+		Debug.startAllocCounting();
+	}
+
+	public void testEdgeEnumerationAllocations() {
+		Mesh mesh = buildGridMesh(100000);
+		Accumulator accumulator = new Accumulator();
+		Mesh.EdgeIterator iterator = mesh.edgeIterator(true);
+
+		startCounting();
+		long time = System.nanoTime();
+		int listedEdges = 0;
+		for (int frame = 0; frame < FRAMES; frame++) {
+			ArrayList<Edge> edges = mesh.constructListOfEdges(true);
+			for (Edge edge : edges)
+				accumulator.mTotal += edge.angle();
+			listedEdges = edges.size();
+		}
+		time = System.nanoTime() - time;
+		Debug.stopAllocCounting();
+		report("constructListOfEdges", FRAMES, Debug.getThreadAllocCount(),
+				Debug.getThreadAllocSize(), time);
+
+		startCounting();
+		time = System.nanoTime();
+		for (int frame = 0; frame < FRAMES; frame++)
+			mesh.forEachEdge(accumulator, true);
+		time = System.nanoTime() - time;
+		Debug.stopAllocCounting();
+		long visitorAllocations = Debug.getThreadAllocCount();
+		report("forEachEdge", FRAMES, visitorAllocations,
+				Debug.getThreadAllocSize(), time);
+
+		startCounting();
+		time = System.nanoTime();
+		int iteratedEdges = 0;
+		for (int frame = 0; frame < FRAMES; frame++) {
+			iterator.reset();
+			iteratedEdges = 0;
+			while (iterator.hasNext()) {
+				accumulator.mTotal += iterator.next().angle();
+				iteratedEdges++;
+			}
+		}
+		time = System.nanoTime() - time;
+		Debug.stopAllocCounting();
+		long iteratorAllocations = Debug.getThreadAllocCount();
+		report("EdgeIterator", FRAMES, iteratorAllocations,
+				Debug.getThreadAllocSize(), time);
+
+		assertEquals(listedEdges, iteratedEdges);
+		assertTrue(listedEdges >= 100000);
+		assertEquals(0, visitorAllocations);
+		assertEquals(0, iteratorAllocations);
+	}
+
+	/**
+	 * Build a fan of spokes around a single vertex; an odd count ensures no two
+	 * spokes are collinear
+	 */
+	public void testHighDegreeFan() {
+		final int SPOKES = 10001;
+		final float RADIUS = 100000;
+
+		Mesh mesh = new Mesh();
+		Vertex center = mesh.addVertex(new Point(0, 0));
+		Vertex[] spokes = new Vertex[SPOKES];
+		for (int i = 0; i < SPOKES; i++) {
+			double theta = (i + .5) * Math.PI * 2 / SPOKES;
+			spokes[i] = mesh.addVertex(new Point(
+					(float) (RADIUS * Math.cos(theta)),
+					(float) (RADIUS * Math.sin(theta))));
+		}
+
+		long time = System.nanoTime();
+		for (int i = 0; i < SPOKES; i++)
+			mesh.addEdge(center, spokes[i]);
+		time = System.nanoTime() - time;
+		pr("Fan of " + SPOKES + " spokes: " + d((int) (time / 1000000))
+				+ " ms");
+
+		assertEquals(SPOKES, center.degree());
+		Edge edge = center.edges();
+		for (int i = 1; i < SPOKES; i++) {
+			Edge nextEdge = edge.nextEdge();
+			assertTrue(nextEdge.angle() > edge.angle());
+			edge = nextEdge;
+		}
+	}
+
+	private static Mesh embedIncrementally(Polygon polygon) {
+		Mesh mesh = new Mesh();
+		for (int i = 0; i < polygon.numVertices(); i++)
+			mesh.addVertex(polygon.vertex(i));
+		Vertex prevVertex = mesh.vertex(polygon.numVertices() - 1);
+		for (int i = 0; i < polygon.numVertices(); i++) {
+			Vertex vertex = mesh.vertex(i);
+			mesh.addEdge(prevVertex, vertex).addFlags(Edge.FLAG_POLYGON);
+			prevVertex = vertex;
+		}
+		return mesh;
+	}
+
+	public void testEmbedLargePolygon() {
+		Polygon polygon = Polygon
+				.testPolygon(Polygon.TESTPOLY_DRAGON_X + 12);
+
+		Mesh incrementalMesh = null;
+		long time = System.nanoTime();
+		for (int frame = 0; frame < FRAMES; frame++)
+			incrementalMesh = embedIncrementally(polygon);
+		time = System.nanoTime() - time;
+		report("Embed incrementally", FRAMES, 0, 0, time);
+
+		Mesh mesh = null;
+		time = System.nanoTime();
+		for (int frame = 0; frame < FRAMES; frame++) {
+			mesh = new Mesh();
+			polygon.embed(mesh);
+		}
+		time = System.nanoTime() - time;
+		report("Embed in bulk", FRAMES, 0, 0, time);
+
+		assertEquals(incrementalMesh.numVertices(), mesh.numVertices());
+		assertEquals(incrementalMesh.constructListOfEdges().size(), mesh
+				.constructListOfEdges().size());
+	}
+
+	public void testSnapshotLoad() throws IOException {
+		Mesh mesh = buildGridMesh(LARGE_BENCHMARKS ? 1500000 : 30000);
+		File file = new File(tempDirectory(), "mesh.bin");
+		String description = mesh.numEdges() + " edges: ";
+
+		long time = System.nanoTime();
+		MeshSnapshot.write(mesh, file);
+		time = System.nanoTime() - time;
+		pr("Write snapshot of " + description + (time / 1000000) + " ms");
+
+		time = System.nanoTime();
+		Mesh mesh2 = MeshSnapshot.read(file);
+		time = System.nanoTime() - time;
+		pr("Read snapshot of " + description + (time / 1000000) + " ms");
+
+		time = System.nanoTime();
+		CompactMesh compactMesh = MeshSnapshot.readCompact(file);
+		time = System.nanoTime() - time;
+		pr("Read compact snapshot of " + description + (time / 1000000)
+				+ " ms");
+
+		assertEquals(mesh.numVertices(), mesh2.numVertices());
+		assertEquals(mesh.numEdges(), mesh2.numEdges());
+		assertEquals(mesh.numVertices(), compactMesh.numVertices());
+	}
+
+	public void testBatchTriangulation() {
+		final int POLYGONS = 2000;
+		ArrayList<Polygon> polygons = new ArrayList();
+		for (int i = 0; i < POLYGONS; i++)
+			polygons.add(Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 1
+					+ (i % 7)));
+
+		long time = System.nanoTime();
+		for (Polygon polygon : polygons)
+			PolygonTriangulator.triangulator(null, new Mesh(), polygon)
+					.triangulate();
+		time = System.nanoTime() - time;
+		pr("Triangulate " + POLYGONS + " polygons sequentially: "
+				+ (time / 1000000) + " ms");
+
+		BatchTriangulator triangulator = new BatchTriangulator();
+		time = System.nanoTime();
+		BatchTriangulator.Result result = triangulator.triangulate(polygons);
+		time = System.nanoTime() - time;
+		triangulator.shutdown();
+		pr("Triangulate " + POLYGONS + " polygons in batch: "
+				+ (time / 1000000) + " ms");
+
+		for (int i = 0; i < POLYGONS; i++)
+			assertEquals(polygons.get(i).numVertices() - 2,
+					result.numTriangles(i));
+	}
+
+	private static void benchmarkTriangulation(String label, int polygonIndex) {
+		Polygon polygon = Polygon.testPolygon(polygonIndex);
+		// Warm up
+		for (int frame = 0; frame < FRAMES; frame++)
+			PolygonTriangulator.triangulator(null, new Mesh(), polygon)
+					.triangulate();
+
+		startCounting();
+		long time = System.nanoTime();
+		for (int frame = 0; frame < FRAMES; frame++)
+			PolygonTriangulator.triangulator(null, new Mesh(), polygon)
+					.triangulate();
+		time = System.nanoTime() - time;
+		Debug.stopAllocCounting();
+		report("Triangulate " + label + " (" + polygon.numVertices()
+				+ " vertices)", FRAMES, Debug.getThreadAllocCount(),
+				Debug.getThreadAllocSize(), time);
+	}
+
+	public void testTriangulationSweep() {
+		benchmarkTriangulation("dragon", Polygon.TESTPOLY_DRAGON_X + 9);
+		benchmarkTriangulation("star", Polygon.TESTPOLY_STARSHAPED_X + 998);
+	}
+
+	/**
+	 * Compare ear clipping with the sweep triangulator, for those polygons from
+	 * the test catalogue that both can triangulate
+	 */
+	public void testEarClippingVersusSweep() {
+		int[] polygonIndices = { Polygon.TESTPOLY_CONCAVE_BLOB,
+				Polygon.TESTPOLY_DRAGON_X + 3, Polygon.TESTPOLY_DRAGON_X + 5,
+				Polygon.TESTPOLY_DRAGON_X + 7, Polygon.TESTPOLY_DRAGON_X + 9,
+				Polygon.TESTPOLY_STARSHAPED_X + 30,
+				Polygon.TESTPOLY_STARSHAPED_X + 100,
+				Polygon.TESTPOLY_STARSHAPED_X + 300, };
+		final int REPETITIONS = 200;
+		EarClippingTriangulator earClipper = new EarClippingTriangulator();
+		IntArray triangles = new IntArray();
+
+		for (int polygonIndex : polygonIndices) {
+			Polygon polygon = Polygon.testPolygon(polygonIndex);
+			// Warm up
+			for (int i = 0; i < REPETITIONS; i++) {
+				triangles.clear();
+				earClipper.triangulate(polygon, triangles);
+				PolygonTriangulator.triangulator(null, new Mesh(), polygon)
+						.triangulate();
+			}
+
+			long time = System.nanoTime();
+			for (int i = 0; i < REPETITIONS; i++)
+				PolygonTriangulator.triangulator(null, new Mesh(), polygon)
+						.triangulate();
+			long sweepTime = System.nanoTime() - time;
+
+			time = System.nanoTime();
+			for (int i = 0; i < REPETITIONS; i++) {
+				triangles.clear();
+				assertTrue(earClipper.triangulate(polygon, triangles));
+			}
+			long earClippingTime = System.nanoTime() - time;
+
+			pr(d(polygon.numVertices()) + " vertices: sweep "
+					+ d((int) (sweepTime / (1000 * REPETITIONS)))
+					+ " us, ear clipping "
+					+ d((int) (earClippingTime / (1000 * REPETITIONS))) + " us");
+			assertEquals((polygon.numVertices() - 2) * 3, triangles.size());
+		}
+	}
+
+	/**
+	 * Compare the strip and indexed representations of the test polygons:
+	 * strips per triangle for the former, and the average cache miss ratio
+	 * before and after vertex cache optimization for the latter
+	 */
+	public void testMeshOrdering() {
+		int[] polygonIndices = { Polygon.TESTPOLY_CONCAVE_BLOB,
+				Polygon.TESTPOLY_DRAGON_X + 5, Polygon.TESTPOLY_DRAGON_X + 7,
+				Polygon.TESTPOLY_DRAGON_X + 9,
+				Polygon.TESTPOLY_STARSHAPED_X + 100,
+				Polygon.TESTPOLY_STARSHAPED_X + 300,
+				Polygon.TESTPOLY_STARSHAPED_X + 998, };
+		final int CACHE_SIZE = 16;
+		final int REPETITIONS = 20;
+		BatchTriangulator triangulator = new BatchTriangulator(1);
+		ArrayList<Polygon> polygons = new ArrayList();
+
+		for (int polygonIndex : polygonIndices) {
+			Polygon polygon = Polygon.testPolygon(polygonIndex);
+			PolygonMesh strips = PolygonMesh.meshForPolygon(polygon, true);
+			assertNull(strips.getError());
+			int triangleCount = strips.getTriangleCount();
+
+			polygons.clear();
+			polygons.add(polygon);
+			BatchTriangulator.Result result = triangulator.triangulate(polygons);
+			assertNull(result.error(0));
+			IntArray indices = new IntArray();
+			for (int i = 0; i < result.numTriangles(0) * 3; i++)
+				indices.add(result.indices()[i]);
+			int vertexCount = polygon.numVertices();
+			float acmrBefore = VertexCacheOptimizer.acmr(indices, vertexCount,
+					CACHE_SIZE);
+
+			IntArray optimized = new IntArray();
+			long time = 0;
+			for (int rep = 0; rep < REPETITIONS; rep++) {
+				optimized.clear();
+				for (int i = 0; i < indices.size(); i++)
+					optimized.add(indices.get(i));
+				long startTime = System.nanoTime();
+				VertexCacheOptimizer.optimize(optimized, vertexCount);
+				time += System.nanoTime() - startTime;
+			}
+			float acmrAfter = VertexCacheOptimizer.acmr(optimized, vertexCount,
+					CACHE_SIZE);
+
+			pr(d(vertexCount) + " vertices: " + d(strips.getStripCount())
+					+ " strips / " + d(triangleCount) + " triangles = "
+					+ d(strips.getStripCount() / (float) triangleCount, 2, 3)
+					+ ", ACMR " + d(acmrBefore, 1, 3) + " -> "
+					+ d(acmrAfter, 1, 3) + " in "
+					+ d((int) (time / (1000 * REPETITIONS))) + " us");
+		}
+		triangulator.shutdown();
+	}
+
+	/**
+	 * Insert random points (a million, if LARGE_BENCHMARKS is set) into a
+	 * Delaunay triangulation, one at a time (locating each using the vertex
+	 * grid), and in bulk
+	 */
+	public void testDelaunayInsertion() {
+		final int POINTS = LARGE_BENCHMARKS ? 1000000 : 20000;
+		Random r = new Random(1);
+		List<Point> points = new ArrayList();
+		for (int i = 0; i < POINTS; i++)
+			points.add(new Point(r.nextFloat() * 1000, r.nextFloat() * 1000));
+		Rect bounds = new Rect(-10, -10, 1020, 1020);
+
+		Mesh mesh = new Mesh();
+		Delaunay delaunay = new Delaunay(mesh, bounds,
+				AlgorithmStepper.INACTIVE_STEPPER);
+		long time = System.nanoTime();
+		for (Point point : points)
+			delaunay.add(point);
+		time = System.nanoTime() - time;
+		pr("Delaunay insertion of " + POINTS + " points: "
+				+ (time / 1000000) + " ms");
+		assertEquals(POINTS, delaunay.nSites());
+		int edgeCount = mesh.numEdges();
+
+		mesh = new Mesh();
+		delaunay = new Delaunay(mesh, bounds,
+				AlgorithmStepper.INACTIVE_STEPPER);
+		time = System.nanoTime();
+		delaunay.add(points);
+		time = System.nanoTime() - time;
+		pr("Delaunay bulk insertion of " + POINTS + " points: "
+				+ (time / 1000000) + " ms");
+		assertEquals(POINTS, delaunay.nSites());
+		assertEquals(edgeCount, mesh.numEdges());
+	}
+
+}
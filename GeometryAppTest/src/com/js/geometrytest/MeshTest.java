@@ -1,9 +1,19 @@
 package com.js.geometrytest;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
+import com.js.basic.Files;
+import com.js.basic.GeometryException;
+import com.js.basic.Point;
+import com.js.basic.Predicates;
+import com.js.geometry.CompactMesh;
 import com.js.geometry.Edge;
+import com.js.geometry.IntArray;
 import com.js.geometry.Mesh;
+import com.js.geometry.MeshSnapshot;
+import com.js.geometry.MeshStats;
 import com.js.geometry.Polygon;
 import com.js.geometry.PolygonTriangulator;
 import com.js.geometry.Vertex;
@@ -93,6 +103,504 @@ public class MeshTest extends MyTestCase {
 		verifySquareEdgesFound(false);
 	}
 
+	private void verifyEnumerationsMatchList(boolean omitDuals) {
+		final ArrayList<Edge> edges = mesh().constructListOfEdges(omitDuals);
+
+		final ArrayList<Edge> visited = new ArrayList();
+		mesh().forEachEdge(new Mesh.EdgeVisitor() {
+			@Override
+			public void visit(Edge edge) {
+				visited.add(edge);
+			}
+		}, omitDuals);
+		assertEquals(edges, visited);
+
+		Mesh.EdgeIterator iter = mesh().edgeIterator(omitDuals);
+		// Verify that the iterator can be reused
+		for (int pass = 0; pass < 2; pass++) {
+			iter.reset();
+			ArrayList<Edge> iterated = new ArrayList();
+			while (iter.hasNext())
+				iterated.add(iter.next());
+			assertEquals(edges, iterated);
+		}
+	}
+
+	public void testEdgeEnumerationOmitDuals() {
+		triangulatePolygon();
+		verifyEnumerationsMatchList(true);
+	}
+
+	public void testEdgeEnumerationIncludingDuals() {
+		triangulatePolygon();
+		verifyEnumerationsMatchList(false);
+	}
+
+	public void testClearMarks() {
+		triangulatePolygon();
+		ArrayList<Edge> edges = mesh().constructListOfEdges(false);
+		Vertex vertex = mesh().vertex(0);
+
+		mesh().clearMarks();
+		for (Edge edge : edges)
+			assertFalse(mesh().isMarked(edge));
+		assertFalse(mesh().isMarked(vertex));
+
+		for (Edge edge : edges)
+			mesh().mark(edge);
+		mesh().mark(vertex);
+		for (Edge edge : edges)
+			assertTrue(mesh().isMarked(edge));
+		assertTrue(mesh().isMarked(vertex));
+
+		mesh().unmark(edges.get(0));
+		assertFalse(mesh().isMarked(edges.get(0)));
+
+		mesh().clearMarks();
+		for (Edge edge : edges)
+			assertFalse(mesh().isMarked(edge));
+		assertFalse(mesh().isMarked(vertex));
+	}
+
+	/**
+	 * Verify that edgeExistsBetween() gives the same results for every pair of
+	 * vertices whether or not the edge index is enabled
+	 */
+	private void verifyEdgeIndex() {
+		for (int i = 0; i < mesh().numVertices(); i++) {
+			Vertex v0 = mesh().vertex(i);
+			for (int j = 0; j < mesh().numVertices(); j++) {
+				Vertex v1 = mesh().vertex(j);
+				if (v0 == v1)
+					continue;
+				mesh().setEdgeIndexEnabled(false);
+				Edge expected = mesh().edgeExistsBetween(v0, v1);
+				mesh().setEdgeIndexEnabled(true);
+				assertSame(expected, mesh().edgeExistsBetween(v0, v1));
+			}
+		}
+	}
+
+	public void testEdgeIndex() {
+		mesh().setEdgeIndexEnabled(true);
+		triangulatePolygon();
+		assertTrue(mesh().isEdgeIndexEnabled());
+		verifyEdgeIndex();
+
+		ArrayList<Edge> edges = mesh().constructListOfEdges(true);
+		MyTestUtils.permute(random(), edges);
+		Edge edge = edges.get(0);
+		assertSame(edge, mesh().addEdge(edge.sourceVertex(),
+				edge.destVertex(), true));
+		assertSame(edge.dual(),
+				mesh().addEdge(edge.destVertex(), edge.sourceVertex(), true));
+
+		// Delete some edges and vertices while the index is being maintained
+		for (int i = 0; i < edges.size() / 2; i++)
+			mesh().deleteEdge(edges.get(i));
+		assertNull(mesh().edgeExistsBetween(edge.sourceVertex(),
+				edge.destVertex()));
+		mesh().setEdgeIndexEnabled(true);
+		for (int i = 0; i < 5; i++)
+			mesh().deleteVertex(
+					mesh().vertex(random().nextInt(mesh().numVertices())));
+		verifyEdgeIndex();
+	}
+
+	public void testAbsorbWithEdgeIndex() {
+		mesh().setEdgeIndexEnabled(true);
+		triangulatePolygon();
+		int vertexCount = mesh().numVertices();
+		int edgeCount = mesh().numEdges();
+
+		// The other mesh's vertex ids overlap those of this one
+		Mesh other = new Mesh();
+		PolygonTriangulator.triangulator(null, other,
+				Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 4))
+				.triangulate();
+		int otherVertexCount = other.numVertices();
+		int otherEdgeCount = other.numEdges();
+		ArrayList<Edge> otherEdges = other.constructListOfEdges(true);
+
+		assertEquals(vertexCount, mesh().absorb(other));
+		assertEquals(0, other.numVertices());
+		assertEquals(vertexCount + otherVertexCount, mesh().numVertices());
+		assertEquals(edgeCount + otherEdgeCount, mesh().numEdges());
+		for (Edge edge : otherEdges)
+			assertSame(edge, mesh().edgeExistsBetween(edge.sourceVertex(),
+					edge.destVertex()));
+		verifyEdgeIndex();
+	}
+
+	public void testMoveVertex() {
+		mesh().setEdgeIndexEnabled(true);
+		triangulatePolygon();
+		Vertex vertex = mesh().vertex(7);
+		Vertex displaced = mesh().vertex(2);
+		int degree = vertex.degree();
+
+		mesh().moveVertex(vertex, 2);
+		assertSame(vertex, mesh().vertex(2));
+		assertSame(displaced, mesh().vertex(7));
+		assertEquals(degree, vertex.degree());
+		verifyEdgeRing(vertex);
+		verifyEdgeIndex();
+
+		// Moving a vertex to its own position does nothing
+		mesh().moveVertex(vertex, 2);
+		assertSame(vertex, mesh().vertex(2));
+	}
+
+	/**
+	 * Verify that a vertex's edges are sorted by angle, starting from its
+	 * first edge, and that its degree is correct
+	 */
+	private void verifyEdgeRing(Vertex vertex) {
+		int degree = 0;
+		Edge first = vertex.edges();
+		if (first != null) {
+			Edge edge = first;
+			do {
+				degree++;
+				Edge nextEdge = edge.nextEdge();
+				if (nextEdge != first)
+					assertTrue(nextEdge.angle() > edge.angle());
+				edge = nextEdge;
+			} while (edge != first);
+		}
+		assertEquals(degree, vertex.degree());
+	}
+
+	public void testHighDegreeVertex() {
+		Vertex center = mesh().addVertex(new Point(0, 0));
+		ArrayList<Vertex> spokes = new ArrayList();
+		// Add spokes in random order, deleting some along the way, so the
+		// vertex passes the degree at which it switches to an angular index
+		// in both directions
+		for (int i = 0; i < 500; i++) {
+			double theta = random().nextDouble() * Math.PI * 2;
+			Vertex spoke = mesh().addVertex(
+					new Point((float) (1000 * Math.cos(theta)),
+							(float) (1000 * Math.sin(theta))));
+			try {
+				mesh().addEdge(center, spoke);
+				spokes.add(spoke);
+			} catch (GeometryException e) {
+				// Collinear with an existing spoke
+				mesh().deleteVertex(spoke);
+			}
+			if (random().nextInt(3) == 0)
+				mesh().deleteVertex(
+						spokes.remove(random().nextInt(spokes.size())));
+			verifyEdgeRing(center);
+		}
+		while (!spokes.isEmpty()) {
+			mesh().deleteVertex(spokes.remove(spokes.size() - 1));
+			verifyEdgeRing(center);
+		}
+		assertNull(center.edges());
+	}
+
+	public void testNearlyParallelEdges() {
+		Vertex center = mesh().addVertex(new Point(0, 0));
+		// Spokes in the other quadrants, so consecutive edges are always
+		// less than a half turn apart
+		mesh().addEdge(center, mesh().addVertex(new Point(0, 1000)));
+		mesh().addEdge(center, mesh().addVertex(new Point(-1000, 0)));
+		mesh().addEdge(center, mesh().addVertex(new Point(0, -1000)));
+		// Add distant spokes whose angles are too close for the pseudo-angles
+		// to distinguish, in random order
+		for (int i = 0; i < 200; i++) {
+			Vertex spoke = mesh().addVertex(
+					new Point(100000, random().nextFloat() * .5f));
+			try {
+				mesh().addEdge(center, spoke);
+			} catch (GeometryException e) {
+				// Collinear with an existing spoke
+				mesh().deleteVertex(spoke);
+			}
+		}
+		Edge edge = center.edges();
+		do {
+			Edge nextEdge = edge.nextEdge();
+			assertTrue(Predicates.orient2d(center, edge.destVertex(),
+					nextEdge.destVertex()) > 0);
+			edge = nextEdge;
+		} while (edge != center.edges());
+	}
+
+	public void testDeleteNearlyParallelEdges() {
+		Vertex center = mesh().addVertex(new Point(.25f, .75f));
+		mesh().addEdge(center, mesh().addVertex(new Point(0, 1000)));
+		mesh().addEdge(center, mesh().addVertex(new Point(-1000, 0)));
+		mesh().addEdge(center, mesh().addVertex(new Point(0, -1000)));
+		// Add spokes along the same ray, differing only by rounding. Those
+		// added from the far end get the pseudo angles of their duals, which
+		// are less precise, so the vertex's ring (and the angular index
+		// built from it) isn't in pseudo angle order
+		for (int i = 0; i < 200; i++) {
+			float t = 1000 + random().nextFloat() * 100000;
+			Vertex spoke = mesh().addVertex(
+					new Point(.25f + t * 3.1f, .75f + t * 1.7f));
+			try {
+				if (random().nextBoolean())
+					mesh().addEdge(center, spoke);
+				else
+					mesh().addEdge(spoke, center);
+			} catch (GeometryException e) {
+				// Collinear with an existing spoke
+				mesh().deleteVertex(spoke);
+			}
+		}
+		assertTrue(center.degree() > 100);
+		while (center.edges() != null)
+			mesh().deleteEdge(center.edges());
+		assertEquals(0, center.degree());
+	}
+
+	/**
+	 * Embed a polygon by adding its vertices and edges individually
+	 */
+	private static void embedIncrementally(Polygon polygon, Mesh mesh) {
+		int baseVertex = mesh.numVertices();
+		for (int i = 0; i < polygon.numVertices(); i++)
+			mesh.addVertex(polygon.vertex(i));
+		Vertex prevVertex = mesh.vertex(baseVertex + polygon.numVertices() - 1);
+		for (int i = 0; i < polygon.numVertices(); i++) {
+			Vertex vertex = mesh.vertex(baseVertex + i);
+			mesh.addEdge(prevVertex, vertex).addFlags(Edge.FLAG_POLYGON);
+			prevVertex = vertex;
+		}
+	}
+
+	public void testEmbedMatchesIncremental() {
+		polygon(Polygon.TESTPOLY_DRAGON_X + 5);
+		embedPolygon();
+		Mesh mesh = new Mesh();
+		embedIncrementally(polygon(), mesh);
+		assertStringsMatch(mesh.dump(true, false), mesh().dump(true, false));
+
+		ArrayList<Edge> edges = mesh().constructListOfEdges();
+		ArrayList<Edge> expectedEdges = mesh.constructListOfEdges();
+		assertEquals(expectedEdges.size(), edges.size());
+		for (int i = 0; i < edges.size(); i++)
+			assertEquals(expectedEdges.get(i).flags(), edges.get(i).flags());
+	}
+
+	public void testAddVerticesAndEdgesDetectsDegeneracies() {
+		ArrayList<Point> locations = new ArrayList();
+		locations.add(new Point(0, 0));
+		locations.add(new Point(100, 0));
+		locations.add(new Point(200, 0));
+		IntArray edgeVertices = new IntArray();
+		edgeVertices.add(0);
+		edgeVertices.add(1);
+		edgeVertices.add(0);
+		edgeVertices.add(2);
+		try {
+			mesh().addVerticesAndEdges(locations, edgeVertices, null);
+			fail("expected exception");
+		} catch (GeometryException e) {
+		}
+		for (int i = 0; i < mesh().numVertices(); i++)
+			assertNull(mesh().vertex(i).edges());
+	}
+
+	public void testPooling() {
+		mesh().setPoolingEnabled(true);
+		triangulatePolygon();
+		int vertexCount = mesh().numVertices();
+		int edgeCount = mesh().numEdges();
+		assertEquals(mesh().constructListOfEdges(true).size(), edgeCount);
+
+		Vertex vertex = mesh().vertex(3);
+		int degree = vertex.degree();
+		ArrayList<Edge> edges = new ArrayList();
+		Edge edge = vertex.edges();
+		for (int i = 0; i < degree; i++) {
+			edges.add(edge);
+			edge = edge.nextEdge();
+		}
+		mesh().deleteVertex(vertex);
+		assertEquals(edgeCount - degree, mesh().numEdges());
+		assertEquals(1, mesh().pooledVertexCount());
+		assertEquals(degree, mesh().pooledEdgeCount());
+
+		// Deleted elements aren't reused until recycle() is called
+		Vertex v1 = mesh().addVertex(new Point(-1000, -1000));
+		assertNotSame(vertex, v1);
+		for (Edge e : edges)
+			assertTrue(e.deleted());
+		mesh().recycle();
+
+		Vertex v2 = mesh().addVertex(new Point(-1000, 1000));
+		assertSame(vertex, v2);
+		assertNull(v2.edges());
+		assertEquals(0, v2.degree());
+		Edge newEdge = mesh().addEdge(v1, v2);
+		assertTrue(edges.contains(newEdge) || edges.contains(newEdge.dual()));
+		assertFalse(newEdge.deleted());
+		assertEquals(degree - 1, mesh().pooledEdgeCount());
+		assertEquals(0, mesh().pooledVertexCount());
+
+		assertEquals(vertexCount + 1, mesh().vertexHighWaterMark());
+		assertEquals(edgeCount, mesh().edgeHighWaterMark());
+		mesh().compact();
+		assertEquals(0, mesh().pooledEdgeCount());
+		assertEquals(mesh().numVertices(), mesh().vertexHighWaterMark());
+		assertEquals(mesh().numEdges(), mesh().edgeHighWaterMark());
+	}
+
+	public void testStats() {
+		embedPolygon();
+		MeshStats stats = new MeshStats();
+		mesh().setStats(stats);
+		assertEquals(mesh().numVertices(), stats.liveVertices());
+		assertEquals(mesh().numEdges(), stats.liveEdges());
+
+		Vertex v0 = mesh().addVertex(new Point(-1000, -1000));
+		Vertex v1 = mesh().addVertex(new Point(-1000, 1000));
+		Vertex v2 = mesh().addVertex(new Point(-2000, 0));
+		mesh().addEdge(v0, v1);
+		mesh().addEdge(v1, v2);
+		mesh().addEdge(v2, v0);
+		assertEquals(3, stats.verticesAdded());
+		assertEquals(3, stats.edgesAdded());
+		assertEquals(3, stats.edgesAllocated());
+		assertEquals(1, stats.maxInsertionScan());
+		assertNotNull(mesh().edgeExistsBetween(v0, v1));
+		assertNull(mesh().edgeExistsBetween(v0, mesh().vertex(0)));
+		assertEquals(2, stats.edgeQueries());
+
+		try {
+			mesh().addEdge(v1, v0);
+			fail();
+		} catch (GeometryException e) {
+		}
+		assertEquals(1, stats.degeneracyRejections());
+
+		mesh().deleteVertex(v2);
+		assertEquals(1, stats.verticesDeleted());
+		assertEquals(2, stats.edgesDeleted());
+		assertEquals(mesh().numVertices(), stats.liveVertices());
+		assertEquals(mesh().numEdges(), stats.liveEdges());
+
+		// Clearing resets the operation counts, but not the live counts
+		stats.clear();
+		assertEquals(0, stats.edgesAdded());
+		assertEquals(0, stats.edgeQueries());
+		assertEquals(mesh().numEdges(), stats.liveEdges());
+	}
+
+	private void verifySnapshotRoundTrip(Mesh mesh) throws IOException {
+		File file = new File(tempDirectory(), "mesh.bin");
+		MeshSnapshot.write(mesh, file);
+		Mesh mesh2 = MeshSnapshot.read(file);
+
+		assertStringsMatch(mesh.dump(true, false), mesh2.dump(true, false));
+		assertEquals(mesh.numEdges(), mesh2.numEdges());
+		ArrayList<Edge> edges = mesh.constructListOfEdges();
+		ArrayList<Edge> edges2 = mesh2.constructListOfEdges();
+		assertEquals(edges.size(), edges2.size());
+		for (int i = 0; i < edges.size(); i++) {
+			Edge edge = edges.get(i);
+			Edge edge2 = edges2.get(i);
+			assertEquals(edge.flags(), edge2.flags());
+			assertEquals(edge.angle(), edge2.angle(), 0);
+			assertSame(edge2, edge2.dual().dual());
+			assertSame(edge2, edge2.nextEdge().prevEdge());
+		}
+		for (int i = 0; i < mesh.numVertices(); i++) {
+			assertEquals(mesh.vertex(i).flags(), mesh2.vertex(i).flags());
+			assertEquals(mesh.vertex(i).degree(), mesh2.vertex(i).degree());
+		}
+	}
+
+	public void testSnapshotRoundTrip() throws IOException {
+		triangulatePolygon();
+		mesh().vertex(2).addFlags(1 << 5);
+		// Include an isolated vertex
+		mesh().addVertex(new Point(-500, 30));
+		verifySnapshotRoundTrip(mesh());
+	}
+
+	public void testSnapshotReadCompact() throws IOException {
+		triangulatePolygon();
+		File file = new File(tempDirectory(), "mesh.bin");
+		MeshSnapshot.write(mesh(), file);
+		CompactMesh compactMesh = MeshSnapshot.readCompact(file);
+		assertStringsMatch(mesh(), compactMesh.toMesh());
+
+		// Verify that the mesh can still be modified
+		int v = compactMesh.addVertex(-500, 30);
+		compactMesh.addEdge(v, 0);
+		compactMesh.deleteVertex(1);
+	}
+
+	public void testSnapshotRoundTripEmptyMesh() throws IOException {
+		verifySnapshotRoundTrip(mesh());
+	}
+
+	public void testSnapshotRejectsOtherFiles() throws IOException {
+		File file = new File(tempDirectory(), "notamesh.bin");
+		Files.writeString(file, "This is not a mesh snapshot");
+		try {
+			MeshSnapshot.read(file);
+			failMissingException();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Verify that the mesh's face table agrees with the cycles formed by
+	 * following nextFaceEdge()
+	 */
+	private void verifyFaces() {
+		ArrayList<Edge> edges = mesh().constructListOfEdges();
+		mesh().clearMarks();
+		int cycles = 0;
+		ArrayList<Integer> faceIds = new ArrayList();
+		for (Edge edge : edges) {
+			if (mesh().isMarked(edge))
+				continue;
+			cycles++;
+			int face = mesh().faceOf(edge);
+			assertFalse(faceIds.contains(face));
+			faceIds.add(face);
+			assertEquals(face, mesh().faceOf(mesh().faceEdge(face)));
+			Edge faceEdge = edge;
+			do {
+				assertEquals(face, mesh().faceOf(faceEdge));
+				mesh().mark(faceEdge);
+				faceEdge = faceEdge.nextFaceEdge();
+			} while (faceEdge != edge);
+		}
+		assertEquals(cycles, mesh().numFaces());
+	}
+
+	public void testFaces() {
+		triangulatePolygon();
+		// Every face but the unbounded one is a triangle
+		assertEquals(polygon().numVertices() - 1, mesh().numFaces());
+		verifyFaces();
+
+		// Modify the mesh while the face table is maintained
+		ArrayList<Edge> edges = mesh().constructListOfEdges(true);
+		MyTestUtils.permute(random(), edges);
+		for (int i = 0; i < edges.size() / 2; i++) {
+			mesh().deleteEdge(edges.get(i));
+			verifyFaces();
+		}
+		for (int i = 0; i < edges.size() / 2; i++) {
+			Edge edge = edges.get(i);
+			mesh().addEdge(edge.sourceVertex(), edge.destVertex());
+			verifyFaces();
+		}
+		assertEquals(polygon().numVertices() - 1, mesh().numFaces());
+		mesh().deleteVertex(mesh().vertex(0));
+		verifyFaces();
+	}
+
 	private String dump(Edge edge) {
 		return dump(edge.sourceVertex()) + " --> " + dump(edge.destVertex());
 	}
@@ -0,0 +1,222 @@
+package com.js.geometrytest;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.js.geometry.EarClippingTriangulator;
+import com.js.geometry.IntArray;
+
+import com.js.geometry.Polygon;
+import com.js.geometry.PolygonMesh;
+import com.js.geometry.PolygonMeshCache;
+import com.js.geometry.VertexCacheOptimizer;
+import com.js.testUtils.MyTestCase;
+
+public class PolygonMeshTest extends MyTestCase {
+
+	private static float triangleArea(FloatBuffer vertices, int a, int b, int c) {
+		float ax = vertices.get(a * 2), ay = vertices.get(a * 2 + 1);
+		float bx = vertices.get(b * 2), by = vertices.get(b * 2 + 1);
+		float cx = vertices.get(c * 2), cy = vertices.get(c * 2 + 1);
+		return ((bx - ax) * (cy - ay) - (cx - ax) * (by - ay)) / 2;
+	}
+
+	/**
+	 * Verify that a polygon's indexed mesh contains each vertex once, and
+	 * describes the same triangles (by total area) as its unindexed mesh
+	 */
+	private void verifyIndexedMesh(int polygonIndex) {
+		Polygon polygon = Polygon.testPolygon(polygonIndex);
+		PolygonMesh indexed = PolygonMesh.indexedMeshForPolygon(polygon);
+		assertNull(indexed.getError());
+		assertEquals(polygon.numVertices(), indexed.getVertexCount());
+		assertEquals((polygon.numVertices() - 2) * 3, indexed.getIndexCount());
+
+		ShortBuffer indices = (ShortBuffer) indexed.getIndexBuffer();
+		FloatBuffer vertices = indexed.getVertexBuffer();
+		float indexedArea = 0;
+		for (int i = 0; i < indexed.getIndexCount(); i += 3) {
+			float area = triangleArea(vertices, indices.get(i),
+					indices.get(i + 1), indices.get(i + 2));
+			assertTrue(area > 0);
+			indexedArea += area;
+		}
+
+		PolygonMesh unindexed = PolygonMesh.meshForPolygon(polygon);
+		assertNull(unindexed.getIndexBuffer());
+		vertices = unindexed.getVertexBuffer();
+		float area = 0;
+		for (int i = 0; i < unindexed.getVertexCount(); i += 3)
+			area += triangleArea(vertices, i, i + 1, i + 2);
+		assertEquals(area, indexedArea, area * 1e-4f);
+	}
+
+	public void testIndexedMeshByEarClipping() {
+		verifyIndexedMesh(Polygon.TESTPOLY_DRAGON_X + 6);
+	}
+
+	public void testIndexedMeshBySweep() {
+		verifyIndexedMesh(Polygon.TESTPOLY_DRAGON_X + 9);
+	}
+
+	/**
+	 * A small polygon whose edges cross is handed to the sweep instead of
+	 * being ear clipped, so the problem is reported
+	 */
+	public void testCrossingEdgesReportError() {
+		Polygon polygon = new Polygon();
+		polygon.add(70, 40);
+		polygon.add(70, 50);
+		polygon.add(10, 90);
+		polygon.add(90, 20);
+		polygon.add(60, 90);
+		assertNotNull(PolygonMesh.meshForPolygon(polygon).getError());
+		assertNotNull(PolygonMesh.indexedMeshForPolygon(polygon).getError());
+	}
+
+	/**
+	 * Get a triangle list's triangles, each rotated to start with its lowest
+	 * index, in sorted order
+	 */
+	private static long[] canonicalTriangles(IntArray indices) {
+		long[] triangles = new long[indices.size() / 3];
+		for (int i = 0; i < triangles.length; i++) {
+			int a = indices.get(i * 3), b = indices.get(i * 3 + 1), c = indices
+					.get(i * 3 + 2);
+			while (a > b || a > c) {
+				int tmp = a;
+				a = b;
+				b = c;
+				c = tmp;
+			}
+			triangles[i] = ((long) a << 40) | ((long) b << 20) | c;
+		}
+		Arrays.sort(triangles);
+		return triangles;
+	}
+
+	public void testVertexCacheOptimizer() {
+		Polygon polygon = Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 7);
+		IntArray indices = new IntArray();
+		assertTrue(new EarClippingTriangulator().triangulate(polygon, indices));
+		int vertexCount = polygon.numVertices();
+		long[] original = canonicalTriangles(indices);
+		float acmrBefore = VertexCacheOptimizer.acmr(indices, vertexCount, 16);
+
+		VertexCacheOptimizer.optimize(indices, vertexCount);
+
+		assertTrue(Arrays.equals(original, canonicalTriangles(indices)));
+		float acmrAfter = VertexCacheOptimizer.acmr(indices, vertexCount, 16);
+		assertTrue(acmrAfter <= acmrBefore);
+		// Every vertex must be transformed at least once
+		assertTrue(acmrAfter >= vertexCount / (float) (indices.size() / 3));
+	}
+
+	public void testACMR() {
+		IntArray indices = new IntArray();
+		// A fan of four triangles around vertex 0
+		for (int i = 1; i <= 4; i++) {
+			indices.add(0);
+			indices.add(i);
+			indices.add(i + 1);
+		}
+		assertEquals(6 / 4f, VertexCacheOptimizer.acmr(indices, 6, 16), 1e-6f);
+		// With a cache of size 3, the fan's center is evicted after the second
+		// triangle
+		assertEquals(7 / 4f, VertexCacheOptimizer.acmr(indices, 6, 3), 1e-6f);
+	}
+
+	public void testMeshStatistics() {
+		Polygon polygon = Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 6);
+		int triangleCount = polygon.numVertices() - 2;
+		PolygonMesh strips = PolygonMesh.meshForPolygon(polygon, true);
+		assertEquals(triangleCount, strips.getTriangleCount());
+		assertTrue(strips.getStripCount() > 0
+				&& strips.getStripCount() < triangleCount / 2);
+
+		// Every nondegenerate triangle of the strip must be CCW, taking into
+		// account the reversed winding of odd triangles; and they must cover
+		// the polygon
+		FloatBuffer vertices = strips.getVertexBuffer();
+		float area = 0;
+		for (int i = 0; i + 2 < strips.getVertexCount(); i++) {
+			float triangleArea = triangleArea(vertices, i, i + 1, i + 2);
+			if (i % 2 != 0)
+				triangleArea = -triangleArea;
+			assertTrue(triangleArea >= 0);
+			area += triangleArea;
+		}
+		PolygonMesh triangles = PolygonMesh.meshForPolygon(polygon);
+		vertices = triangles.getVertexBuffer();
+		float expectedArea = 0;
+		for (int i = 0; i < triangles.getVertexCount(); i += 3)
+			expectedArea += triangleArea(vertices, i, i + 1, i + 2);
+		assertEquals(expectedArea, area, expectedArea * 1e-4f);
+
+		PolygonMesh indexed = PolygonMesh.indexedMeshForPolygon(polygon);
+		assertEquals(triangleCount, indexed.getTriangleCount());
+		assertEquals(0, indexed.getStripCount());
+		assertTrue(indexed.getACMR(16) < 3);
+	}
+
+	public void testMeshCache() {
+		PolygonMeshCache cache = new PolygonMeshCache(2);
+		Polygon a = Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 4);
+		Polygon b = Polygon.testPolygon(Polygon.TESTPOLY_CONCAVE_BLOB);
+		Polygon c = Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 5);
+
+		PolygonMesh meshA = cache.indexedMeshForPolygon(a);
+		assertEquals(a.numVertices(), meshA.getVertexCount());
+		// A distinct polygon with the same vertices shares the mesh
+		assertSame(meshA, cache.indexedMeshForPolygon(new Polygon(a)));
+		assertEquals(1, cache.misses());
+		assertEquals(1, cache.hits());
+
+		cache.indexedMeshForPolygon(b);
+		// Make b the least recently used, so it's evicted in favor of c
+		cache.indexedMeshForPolygon(a);
+		cache.indexedMeshForPolygon(c);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.evictions());
+		assertSame(meshA, cache.indexedMeshForPolygon(a));
+		assertEquals(3, cache.hits());
+
+		cache.indexedMeshForPolygon(b);
+		assertEquals(4, cache.misses());
+		assertEquals(2, cache.evictions());
+	}
+
+	public void testCompileIndexedMeshesInParallel() {
+		List<Polygon> polygons = new ArrayList();
+		for (int i = 0; i < 12; i++)
+			polygons.add(Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 3
+					+ (i % 7)));
+		polygons.add(Polygon.testPolygon(Polygon.TESTPOLY_CONCAVE_BLOB));
+
+		PolygonMesh[] meshes = PolygonMesh.compileIndexedMeshes(polygons);
+		assertEquals(polygons.size(), meshes.length);
+		for (int i = 0; i < meshes.length; i++) {
+			PolygonMesh expected = PolygonMesh.indexedMeshForPolygon(polygons
+					.get(i));
+			PolygonMesh mesh = meshes[i];
+			assertNull(mesh.getError());
+			assertEquals(expected.getVertexBuffer(), mesh.getVertexBuffer());
+			assertEquals(expected.getIndexBuffer(), mesh.getIndexBuffer());
+		}
+
+		// Preparing the meshes in a cache compiles each distinct one once
+		PolygonMeshCache cache = new PolygonMeshCache(16);
+		cache.prepare(polygons);
+		assertEquals(8, cache.misses());
+		assertEquals(8, cache.size());
+		for (int i = 0; i < meshes.length; i++)
+			assertEquals(meshes[i].getIndexBuffer(), cache
+					.indexedMeshForPolygon(polygons.get(i)).getIndexBuffer());
+		assertEquals(8, cache.misses());
+		assertEquals(meshes.length, cache.hits());
+	}
+
+}
@@ -1,7 +1,16 @@
 package com.js.geometrytest;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import java.nio.FloatBuffer;
+
+import com.js.basic.MyMath;
+import com.js.basic.Point;
+import com.js.geometry.BatchTriangulator;
 import com.js.geometry.Mesh;
 import com.js.geometry.Polygon;
+import com.js.geometry.PolygonMesh;
 import com.js.geometry.PolygonTriangulator;
 import com.js.testUtils.IOSnapshot;
 import com.js.testUtils.MyTestCase;
@@ -63,4 +72,181 @@ public class PolygonTriangulatorTest extends MyTestCase {
 		IOSnapshot.close();
 	}
 
+	private static Polygon ring(float x, float y, float radius,
+			int numVertices, float phase) {
+		Polygon polygon = new Polygon();
+		for (int i = 0; i < numVertices; i++)
+			polygon.add(MyMath.pointOnCircle(new Point(x, y), phase + i
+					* MyMath.PI * 2 / numVertices, radius));
+		return polygon;
+	}
+
+	/**
+	 * Triangulate some rings, and verify the number of triangles and their
+	 * total area
+	 */
+	private void verifyRingTriangulation(ArrayList<Polygon> rings,
+			int expectedTriangles) {
+		Polygon.orientRings(rings);
+		float expectedArea = 0;
+		for (Polygon ring : rings)
+			expectedArea += ring.area();
+
+		PolygonMesh mesh = PolygonMesh.meshForPolygons(rings, false);
+		assertNull(mesh.getError());
+		assertEquals(expectedTriangles * 3, mesh.getVertexCount());
+		FloatBuffer buffer = mesh.getVertexBuffer();
+		float area = 0;
+		for (int i = 0; i < expectedTriangles * 6; i += 6) {
+			Point a = new Point(buffer.get(i), buffer.get(i + 1));
+			Point b = new Point(buffer.get(i + 2), buffer.get(i + 3));
+			Point c = new Point(buffer.get(i + 4), buffer.get(i + 5));
+			float triangleArea = ((b.x - a.x) * (c.y - a.y) - (c.x - a.x)
+					* (b.y - a.y)) / 2;
+			assertTrue(triangleArea > 0);
+			area += triangleArea;
+		}
+		assertEquals(expectedArea, area, expectedArea * 1e-4f);
+	}
+
+	public void testTriangulateWithHoles() {
+		ArrayList<Polygon> rings = new ArrayList();
+		rings.add(ring(500, 500, 400, 23, .1f));
+		rings.add(ring(350, 480, 100, 7, .2f));
+		rings.add(ring(680, 530, 120, 9, .3f));
+		// A hole within a hole is an island, which is triangulated too
+		rings.add(ring(680, 530, 50, 5, .4f));
+		// Orientation is determined by nesting, not by the original order
+		rings.get(1).reverse();
+
+		// With v vertices and h holes, there are v - 2 + 2h triangles for
+		// each outer ring
+		verifyRingTriangulation(rings, (23 - 2 + 2 * 2) + (5 - 2) + 7 + 9);
+	}
+
+	public void testTriangulateDisjointPolygons() {
+		ArrayList<Polygon> rings = new ArrayList();
+		rings.add(ring(200, 200, 150, 11, .1f));
+		rings.add(ring(700, 300, 200, 13, .2f));
+		verifyRingTriangulation(rings, (11 - 2) + (13 - 2));
+	}
+
+	/**
+	 * A vertex source for a list of rings, whose vertices are numbered
+	 * consecutively
+	 */
+	private static class RingSource implements
+			PolygonTriangulator.VertexSource {
+
+		public RingSource(ArrayList<Polygon> rings) {
+			for (Polygon ring : rings) {
+				for (int i = 0; i < ring.numVertices(); i++) {
+					mPoints.add(ring.vertex(i));
+					mRingStarts.add(mPoints.size() - 1 - i);
+					mRingSizes.add(ring.numVertices());
+				}
+			}
+		}
+
+		public Point vertex(int vertex) {
+			return mPoints.get(vertex);
+		}
+
+		@Override
+		public int numVertices() {
+			return mPoints.size();
+		}
+
+		@Override
+		public float x(int vertex) {
+			return mPoints.get(vertex).x;
+		}
+
+		@Override
+		public float y(int vertex) {
+			return mPoints.get(vertex).y;
+		}
+
+		@Override
+		public int nextVertex(int vertex) {
+			int start = mRingStarts.get(vertex);
+			return start + (vertex - start + 1) % mRingSizes.get(vertex);
+		}
+
+		@Override
+		public int prevVertex(int vertex) {
+			int start = mRingStarts.get(vertex);
+			int size = mRingSizes.get(vertex);
+			return start + (vertex - start + size - 1) % size;
+		}
+
+		private ArrayList<Point> mPoints = new ArrayList();
+		private ArrayList<Integer> mRingStarts = new ArrayList();
+		private ArrayList<Integer> mRingSizes = new ArrayList();
+	}
+
+	public void testTriangulateVertexSource() {
+		ArrayList<Polygon> rings = new ArrayList();
+		rings.add(ring(500, 500, 400, 23, .1f));
+		rings.add(ring(350, 480, 100, 7, .2f));
+		rings.add(ring(680, 530, 120, 9, .3f));
+		Polygon.orientRings(rings);
+		float expectedArea = 0;
+		for (Polygon ring : rings)
+			expectedArea += ring.area();
+
+		final RingSource source = new RingSource(rings);
+		final int[] triangleCount = new int[1];
+		final float[] area = new float[1];
+		PolygonTriangulator.triangulate(source,
+				new PolygonTriangulator.TriangleSink() {
+					@Override
+					public void addTriangle(int a, int b, int c) {
+						Point pa = source.vertex(a);
+						Point pb = source.vertex(b);
+						Point pc = source.vertex(c);
+						float triangleArea = ((pb.x - pa.x) * (pc.y - pa.y)
+								- (pc.x - pa.x) * (pb.y - pa.y)) / 2;
+						assertTrue(triangleArea > 0);
+						area[0] += triangleArea;
+						triangleCount[0]++;
+					}
+				});
+		assertEquals((23 - 2 + 2 * 2) + 7 + 9, triangleCount[0]);
+		assertEquals(expectedArea, area[0], expectedArea * 1e-4f);
+	}
+
+	private static ArrayList<Polygon> batchPolygons() {
+		ArrayList<Polygon> polygons = new ArrayList();
+		for (int i = 0; i < 20; i++)
+			polygons.add(Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 1
+					+ (i % 7)));
+		return polygons;
+	}
+
+	public void testBatchTriangulation() {
+		ArrayList<Polygon> polygons = batchPolygons();
+		BatchTriangulator triangulator = new BatchTriangulator(3);
+		BatchTriangulator.Result result = triangulator.triangulate(polygons);
+		triangulator.shutdown();
+
+		assertEquals(polygons.size(), result.numPolygons());
+		for (int i = 0; i < polygons.size(); i++) {
+			Polygon polygon = polygons.get(i);
+			assertNull(result.error(i));
+			assertEquals(polygon.numVertices() - 2, result.numTriangles(i));
+			for (int j = result.triangleStart(i); j < result.triangleStart(i)
+					+ result.numTriangles(i) * 3; j++) {
+				int index = result.indices()[j];
+				assertTrue(index >= 0 && index < polygon.numVertices());
+			}
+		}
+
+		// The results shouldn't depend upon the number of threads
+		BatchTriangulator single = new BatchTriangulator(1);
+		BatchTriangulator.Result singleResult = single.triangulate(polygons);
+		single.shutdown();
+		assertTrue(Arrays.equals(result.indices(), singleResult.indices()));
+	}
+
 }
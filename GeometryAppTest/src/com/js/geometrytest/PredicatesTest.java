@@ -0,0 +1,102 @@
+package com.js.geometrytest;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import com.js.basic.Predicates;
+import com.js.testUtils.MyTestCase;
+
+public class PredicatesTest extends MyTestCase {
+
+	private static BigDecimal big(double value) {
+		return new BigDecimal(value);
+	}
+
+	private static int exactOrientation(double ax, double ay, double bx,
+			double by, double cx, double cy) {
+		BigDecimal acx = big(ax).subtract(big(cx));
+		BigDecimal acy = big(ay).subtract(big(cy));
+		BigDecimal bcx = big(bx).subtract(big(cx));
+		BigDecimal bcy = big(by).subtract(big(cy));
+		return acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+	}
+
+	private static int exactIncircle(double ax, double ay, double bx,
+			double by, double cx, double cy, double dx, double dy) {
+		BigDecimal adx = big(ax).subtract(big(dx));
+		BigDecimal ady = big(ay).subtract(big(dy));
+		BigDecimal bdx = big(bx).subtract(big(dx));
+		BigDecimal bdy = big(by).subtract(big(dy));
+		BigDecimal cdx = big(cx).subtract(big(dx));
+		BigDecimal cdy = big(cy).subtract(big(dy));
+		BigDecimal alift = adx.multiply(adx).add(ady.multiply(ady));
+		BigDecimal blift = bdx.multiply(bdx).add(bdy.multiply(bdy));
+		BigDecimal clift = cdx.multiply(cdx).add(cdy.multiply(cdy));
+		BigDecimal det = alift.multiply(
+				bdx.multiply(cdy).subtract(cdx.multiply(bdy))).add(
+				blift.multiply(cdx.multiply(ady).subtract(adx.multiply(cdy))))
+				.add(clift.multiply(adx.multiply(bdy).subtract(
+						bdx.multiply(ady))));
+		return det.signum();
+	}
+
+	private static int sign(double value) {
+		return (int) Math.signum(value);
+	}
+
+	public void testOrientationNearlyCollinear() {
+		// Points on (or within a few ulps of) the line y = x, where the naive
+		// calculation gives inconsistent results
+		double ulp = Math.ulp(.5);
+		int exactZeroCount = 0;
+		for (int i = 0; i < 64; i++) {
+			for (int j = 0; j < 64; j++) {
+				double ax = .5 + i * ulp;
+				double ay = .5 + j * ulp;
+				int expected = exactOrientation(ax, ay, 12, 12, 24, 24);
+				assertEquals(expected,
+						sign(Predicates.orient2d(ax, ay, 12, 12, 24, 24)));
+				if (expected == 0)
+					exactZeroCount++;
+			}
+		}
+		assertTrue(exactZeroCount > 0);
+	}
+
+	public void testOrientationRandom() {
+		Random r = new Random(1);
+		for (int i = 0; i < 1000; i++) {
+			float ax = r.nextFloat() * 1000, ay = r.nextFloat() * 1000;
+			float bx = r.nextFloat() * 1000, by = r.nextFloat() * 1000;
+			// Choose the third point close to the line through the others
+			float t = r.nextFloat();
+			float cx = ax + (bx - ax) * t, cy = ay + (by - ay) * t;
+			assertEquals(exactOrientation(ax, ay, bx, by, cx, cy),
+					sign(Predicates.orient2d(ax, ay, bx, by, cx, cy)));
+		}
+	}
+
+	public void testIncircleCocircular() {
+		// The corners of a square are exactly cocircular
+		assertTrue(Predicates.incircle(0, 0, 10, 0, 10, 10, 0, 10) == 0);
+		assertTrue(Predicates.incircle(0, 0, 10, 0, 10, 10, 5, 5) > 0);
+		assertTrue(Predicates.incircle(0, 0, 10, 0, 10, 10, 20, 20) < 0);
+
+		// Points on a circle, rounded to floats, are nearly cocircular
+		Random r = new Random(2);
+		for (int i = 0; i < 1000; i++) {
+			float[] coords = new float[8];
+			for (int k = 0; k < 4; k++) {
+				double angle = r.nextDouble() * Math.PI * 2;
+				coords[k * 2] = (float) (500 + 300 * Math.cos(angle));
+				coords[k * 2 + 1] = (float) (500 + 300 * Math.sin(angle));
+			}
+			int expected = exactIncircle(coords[0], coords[1], coords[2],
+					coords[3], coords[4], coords[5], coords[6], coords[7]);
+			assertEquals(expected, sign(Predicates.incircle(coords[0],
+					coords[1], coords[2], coords[3], coords[4], coords[5],
+					coords[6], coords[7])));
+		}
+	}
+
+}
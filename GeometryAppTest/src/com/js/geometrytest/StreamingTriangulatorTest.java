@@ -0,0 +1,112 @@
+package com.js.geometrytest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import com.js.basic.MyMath;
+import com.js.basic.Point;
+import com.js.geometry.PackedPolygon;
+import com.js.geometry.Polygon;
+import com.js.geometry.StreamingTriangulator;
+import com.js.testUtils.MyTestCase;
+
+public class StreamingTriangulatorTest extends MyTestCase {
+
+	private static PackedPolygon packed(Polygon polygon) {
+		FloatBuffer coordinates = FloatBuffer
+				.allocate(polygon.numVertices() * 2);
+		for (Point point : polygon) {
+			coordinates.put(point.x);
+			coordinates.put(point.y);
+		}
+		coordinates.flip();
+		return new PackedPolygon(coordinates);
+	}
+
+	/**
+	 * Triangulate a polygon, and verify that the triangles are CCW, and that
+	 * there are the expected number of them, with the expected total area
+	 */
+	private void verifyTriangulation(PackedPolygon polygon) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		long count = StreamingTriangulator.triangulate(polygon,
+				Channels.newChannel(stream));
+		assertEquals(polygon.numVertices() - 2, count);
+
+		IntBuffer triangles = ByteBuffer.wrap(stream.toByteArray())
+				.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+		assertEquals(count * 3, triangles.remaining());
+		double totalArea = 0;
+		for (int i = 0; i < count; i++) {
+			int a = triangles.get(), b = triangles.get(), c = triangles.get();
+			double area = ((double) polygon.x(b) - polygon.x(a))
+					* ((double) polygon.y(c) - polygon.y(a))
+					- ((double) polygon.x(c) - polygon.x(a))
+					* ((double) polygon.y(b) - polygon.y(a));
+			assertTrue(area > 0);
+			totalArea += area / 2;
+		}
+		double expectedArea = polygon.signedArea();
+		assertEquals(expectedArea, totalArea, expectedArea * 1e-6);
+	}
+
+	public void testTestPolygons() throws IOException {
+		int[] varieties = { Polygon.TESTPOLY_CONCAVE_BLOB,
+				Polygon.TESTPOLY_MERGESPLIT, Polygon.TESTPOLY_VULCAN_SYMBOL,
+				Polygon.TESTPOLY_LARGE_CONVEX, Polygon.TESTPOLY_DRAGON_X + 6,
+				Polygon.TESTPOLY_DRAGON_X + 9, };
+		for (int variety : varieties)
+			verifyTriangulation(packed(Polygon.testPolygon(variety)));
+	}
+
+	public void testHorizontalEdges() throws IOException {
+		// A comb, whose teeth are separated by horizontal edges, and whose
+		// tips all have the same y coordinate
+		Polygon comb = new Polygon();
+		int teeth = 50;
+		comb.add(new Point(teeth * 2, 0));
+		for (int i = teeth - 1; i >= 0; i--) {
+			comb.add(new Point(i * 2 + 2, 10));
+			comb.add(new Point(i * 2 + 1, 10));
+			comb.add(new Point(i * 2 + 1, 5));
+			comb.add(new Point(i * 2, 5));
+		}
+		comb.add(new Point(0, 0));
+		verifyTriangulation(packed(comb));
+	}
+
+	public void testLargeStarshapedPolygon() throws IOException {
+		Random r = new Random(1);
+		Polygon star = new Polygon();
+		int count = 20000;
+		for (int i = 0; i < count; i++)
+			star.add(MyMath.pointOnCircle(new Point(500, 500), i * MyMath.PI
+					* 2 / count, 100 + r.nextFloat() * 300));
+		verifyTriangulation(packed(star));
+	}
+
+	public void testReadFromFile() throws IOException {
+		Polygon polygon = Polygon.testPolygon(Polygon.TESTPOLY_DRAGON_X + 6);
+		File file = File.createTempFile("polygon", ".bin");
+		try {
+			PackedPolygon.write(polygon, file);
+			PackedPolygon packed = PackedPolygon.read(file);
+			assertEquals(polygon.numVertices(), packed.numVertices());
+			for (int i = 0; i < polygon.numVertices(); i++) {
+				assertEquals(polygon.vertex(i).x, packed.x(i));
+				assertEquals(polygon.vertex(i).y, packed.y(i));
+			}
+			verifyTriangulation(packed);
+		} finally {
+			file.delete();
+		}
+	}
+
+}
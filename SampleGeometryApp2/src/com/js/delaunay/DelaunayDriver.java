@@ -23,6 +23,8 @@ public class DelaunayDriver implements Algorithm {
 	private static final String BGND_ELEMENT_MESH = "50:mesh";
 	private static final String BGND_ELEMENT_VORONOI_CELLS = "60";
 	private static final String USE_EDITOR_POINTS = "Use editor points";
+	private static final String BULK_INSERTION = "Bulk insertion";
+	private static final String PARALLEL_CONSTRUCTION = "Parallel construction";
 
 	@Override
 	public String getAlgorithmName() {
@@ -38,7 +40,6 @@ public class DelaunayDriver implements Algorithm {
 		mOptions.addCheckBox("Deletions", "value", true);
 		mOptions.addCheckBox("Delete all");
 		mOptions.addCheckBox("Voronoi cells", "value", true);
-		mOptions.addSlider("Attempts", "min", 1, "max", 5);
 		ComboBoxWidget w = mOptions.addComboBox("Pattern");
 		w.addItem("Random");
 		w.addItem("Circle");
@@ -49,6 +50,8 @@ public class DelaunayDriver implements Algorithm {
 		mOptions.addCheckBox(Delaunay.DETAIL_FIND_TRIANGLE, "value", true);
 		mOptions.addCheckBox(Delaunay.DETAIL_TRIANGULATE_HOLE, "value", false);
 		mOptions.addCheckBox(USE_EDITOR_POINTS);
+		mOptions.addCheckBox(BULK_INSERTION);
+		mOptions.addCheckBox(PARALLEL_CONSTRUCTION);
 	}
 
 	@Override
@@ -85,31 +88,23 @@ public class DelaunayDriver implements Algorithm {
 			GeometryException.raise("no points");
 
 		mVertices = new ArrayList();
-		for (Point pt : inputPoints) {
-			int attempt = 0;
-			while (true) {
-				try {
-					mVertices.add(mDelaunay.add(pt));
-					break;
-				} catch (GeometryException e) {
-					attempt++;
-					pr("Problem adding " + pt + ", attempt #" + attempt);
-					if (s.step())
-						s.show("Problem adding " + pt + ", attempt #" + attempt);
-					if (attempt >= mOptions.getIntValue("Attempts")) {
-						pr("Failed several attempts at insertion");
-						throw e;
-					}
-					MyMath.perturb(mRandom, pt);
-				}
-			}
-
-			if (withDeletions) {
-				// Once in a while, remove a series of points
-				if (mRandom.nextInt(3) == 0) {
-					int rem = Math.min(mVertices.size(), mRandom.nextInt(5));
-					while (rem-- > 0) {
-						removeArbitraryVertex();
+		if (mOptions.getBooleanValue(PARALLEL_CONSTRUCTION)) {
+			// This is only done in parallel if the stepper is inactive
+			mVertices.addAll(mDelaunay.addInParallel(inputPoints));
+		} else if (mOptions.getBooleanValue(BULK_INSERTION)) {
+			mVertices.addAll(mDelaunay.add(inputPoints));
+		} else {
+			for (Point pt : inputPoints) {
+				mVertices.add(mDelaunay.add(pt));
+
+				if (withDeletions) {
+					// Once in a while, remove a series of points
+					if (mRandom.nextInt(3) == 0) {
+						int rem = Math.min(mVertices.size(),
+								mRandom.nextInt(5));
+						while (rem-- > 0) {
+							removeArbitraryVertex();
+						}
 					}
 				}
 			}
@@ -119,6 +114,8 @@ public class DelaunayDriver implements Algorithm {
 				removeArbitraryVertex();
 			s.setDoneMessage("Removed all vertices");
 		} else if (mOptions.getBooleanValue("Voronoi cells")) {
+			final VoronoiDiagram diagram = mDelaunay
+					.constructVoronoiDiagram(true);
 			s.addLayer(BGND_ELEMENT_VORONOI_CELLS, new Renderable() {
 				@Override
 				public void render(AlgorithmStepper s) {
@@ -127,7 +124,7 @@ public class DelaunayDriver implements Algorithm {
 					for (int i = 0; i < mDelaunay.nSites(); i++) {
 						Vertex v = mDelaunay.site(i);
             s.render(v);
-						Polygon p = mDelaunay.constructVoronoiPolygon(i);
+						Polygon p = diagram.cellPolygon(i);
 						s.render(p);
 					}
 				}
@@ -151,7 +148,6 @@ public class DelaunayDriver implements Algorithm {
 				else
 					pt = MyMath.pointOnCircle(center, (i * MyMath.PI * 2)
 							/ (numPoints - 1), .49f * mPointBounds.minDim());
-				MyMath.perturb(mRandom, pt);
 			} else {
 				if (mOptions.getBooleanValue("Random disc")) {
 					pt = MyMath.randomPointInDisc(mRandom,
@@ -1,5 +1,9 @@
 package com.js.triangulation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import com.js.geometry.AlgorithmStepper;
 import com.js.basic.GeometryException;
 import com.js.geometry.Mesh;
@@ -46,34 +50,38 @@ public class TriangulatePolygonDriver implements Algorithm {
 
 	@Override
 	public void run(AlgorithmStepper stepper, AlgorithmInput input) {
-		mEditorPolygon = input.getPolygon(null);
+		mEditorRings = input.rings;
 		mStepper = stepper;
 		prepareInput();
 
 		PolygonTriangulator t = PolygonTriangulator.triangulator(mStepper,
-				mMesh, mPolygon);
+				mMesh, mRings);
 
 		t.triangulate();
 	}
 
 	private void prepareInput() {
 		mMesh = new Mesh();
+		mRings = new ArrayList();
 		if (mOptions.getBooleanValue(USE_EDITOR_POLYGON)) {
-			mPolygon = mEditorPolygon;
+			// Triangulate all of the editor's polygons at once, treating
+			// those nested within others as holes
+			mRings.addAll(Arrays.asList(mEditorRings));
 		} else {
 			ComboBoxWidget w = mOptions.getWidget("Polygon");
 			int polygonName = (Integer) w.getSelectedValue();
-			mPolygon = Polygon.testPolygon(polygonName);
-			mPolygon.rotateBy(16 * MyMath.M_DEG);
-			mPolygon.transformToFitRect(mStepper.algorithmRect(), false);
+			Polygon polygon = Polygon.testPolygon(polygonName);
+			polygon.rotateBy(16 * MyMath.M_DEG);
+			polygon.transformToFitRect(mStepper.algorithmRect(), false);
+			mRings.add(polygon);
 		}
-		if (mPolygon == null)
+		if (mRings.isEmpty())
 			GeometryException.raise("no polygon");
 	}
 
 	private AlgorithmOptions mOptions;
 	private AlgorithmStepper mStepper;
 	private Mesh mMesh;
-	private Polygon mPolygon;
-	private Polygon mEditorPolygon;
+	private List<Polygon> mRings;
+	private Polygon[] mEditorRings;
 }